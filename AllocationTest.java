@@ -0,0 +1,220 @@
+package enigma;
+
+import java.io.CharArrayReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * Checks that converting messages allocates no memory per keystroke once
+ * warmed up, by measuring the bytes allocated by each thread involved
+ * (see com.sun.management.ThreadMXBean).  Work of size N and of size 4N
+ * must allocate the same, give or take SLACK bytes.
+ *
+ * @author Amy Stanley
+ */
+public class AllocationTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Allocation tolerated per measurement, in bytes. */
+    private static final long SLACK = 1024;
+
+    /** Number of keystrokes or lines in the smaller measured runs. */
+    private static final int N = 50000;
+
+    /** Settings line of the standard test machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** A message line. */
+    private static final String MESSAGE =
+        "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD";
+
+    /** Per-thread allocation counters. */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+
+    /** Return the number of bytes allocated so far by this thread. */
+    private static long allocated() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /** Assert that WHAT allocated SMALL bytes for N units of work and
+     *  LARGE for 4N, and so nothing per unit. */
+    private static void assertSteady(String what, long small, long large) {
+        assertTrue(what + " allocated " + (large - small)
+                   + " more bytes for four times the work",
+                   large - small <= SLACK);
+    }
+
+    /** Return the bytes allocated converting COUNT keystrokes on M. */
+    private static long convertKeys(Machine M, int count) {
+        long start = allocated();
+        int c = 0;
+        for (int i = 0; i < count; i += 1) {
+            c = M.convert((c + i) % M.alphabet().size());
+        }
+        return allocated() - start;
+    }
+
+    /** Return the bytes allocated converting COUNT keystrokes forward and
+     *  backward through rotor R at each of its settings in turn. */
+    private static long convertRotor(Rotor r, int count) {
+        long start = allocated();
+        int c = 0;
+        for (int i = 0; i < count; i += 1) {
+            r.set(i % r.size());
+            c = r.convertBackward(r.convertForward(c));
+        }
+        return allocated() - start;
+    }
+
+    /** Return input holding a settings line, LINES message lines, and a
+     *  final settings line. */
+    private static char[] input(int lines) {
+        StringBuilder result = new StringBuilder(SETTINGS).append('\n');
+        for (int i = 0; i < lines; i += 1) {
+            result.append(MESSAGE).append('\n');
+        }
+        return result.append(SETTINGS).append('\n').toString().toCharArray();
+    }
+
+    /** A Writer discarding its output that measures the bytes its caller
+     *  allocates from its first write to its last flush. */
+    private static final class CountingWriter extends Writer {
+        @Override
+        public void write(char[] buf, int off, int len) {
+            if (_first < 0) {
+                _first = allocated();
+            }
+        }
+
+        @Override
+        public void flush() {
+            _last = allocated();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Counter at the first write, or -1. */
+        private long _first = -1;
+        /** Counter at the last flush. */
+        private long _last;
+    }
+
+    /** A spec supplier that measures the bytes its caller allocates from
+     *  its first call to its last. */
+    private static final class CountingSpecs
+        implements Supplier<MachineSpec> {
+        @Override
+        public MachineSpec get() {
+            if (_first < 0) {
+                _first = allocated();
+            }
+            _last = allocated();
+            return _spec;
+        }
+
+        /** The spec supplied. */
+        private final MachineSpec _spec =
+            new MachineSpec(UPPER, 5, 3, navalRotors());
+        /** Counter at the first call, or -1. */
+        private long _first = -1;
+        /** Counter at the last call. */
+        private long _last;
+    }
+
+    /** Return the bytes allocated by the reader, converter and writer
+     *  threads of a pipeline processing INPUT, run serially iff SERIAL. */
+    private static long[] pipeline(char[] input, boolean serial) {
+        CountingSpecs specs = new CountingSpecs();
+        CountingWriter output = new CountingWriter();
+        Pipeline pipeline =
+            new Pipeline(specs, new CharArrayReader(input), output);
+        long start = allocated();
+        if (serial) {
+            pipeline.runSerially();
+        } else {
+            pipeline.run();
+        }
+        return new long[] { allocated() - start, specs._last - specs._first,
+                            output._last - output._first };
+    }
+
+    /** Return the bytes allocated setting SESSION up with SETTINGS and
+     *  converting MESSAGE with it COUNT times. */
+    private static long session(Session session, MachineSpec spec,
+                                int count) {
+        long start = allocated();
+        for (int i = 0; i < count; i += 1) {
+            session.setUp(spec, SETTINGS);
+            session.convert(MESSAGE);
+        }
+        return allocated() - start;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMachineConvert() {
+        Machine M = navalMachine();
+        convertKeys(M, 4 * N);
+        assertSteady("Machine.convert", convertKeys(M, N),
+                     convertKeys(M, 4 * N));
+    }
+
+    @Test
+    public void testRotorConvert() {
+        Rotor r = navalRotors().get(1);
+        convertRotor(r, 4 * N);
+        assertSteady("Rotor.convertForward/Backward", convertRotor(r, N),
+                     convertRotor(r, 4 * N));
+    }
+
+    @Test
+    public void testPipeline() {
+        char[] small = input(N / 10), large = input(4 * N / 10);
+        pipeline(large, false);
+        long[] smallBytes = pipeline(small, false);
+        long[] largeBytes = pipeline(large, false);
+        String[] stages = { "reader", "converter", "writer" };
+        for (int i = 0; i < stages.length; i += 1) {
+            assertSteady("Pipeline " + stages[i], smallBytes[i],
+                         largeBytes[i]);
+        }
+    }
+
+    @Test
+    public void testSerialPipeline() {
+        char[] small = input(N / 10), large = input(4 * N / 10);
+        pipeline(large, true);
+        assertSteady("Pipeline.runSerially", pipeline(small, true)[0],
+                     pipeline(large, true)[0]);
+    }
+
+    @Test
+    public void testSession() {
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        Session s = new Session();
+        session(s, spec, 4 * N / 10);
+        assertSteady("Session", session(s, spec, N / 10),
+                     session(s, spec, 4 * N / 10));
+    }
+}
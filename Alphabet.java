@@ -1,34 +1,52 @@
 package enigma;
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may include supplementary characters, which
+ *  occupy two chars of a String.
  *  @author Amy Stanley
  */
 class Alphabet {
 
-    /** A new alphabet containing CHARS. The K-th character has index
-     *  K (numbering from 0). No character may be duplicated. */
+    /** A new alphabet containing the code points of CHARS. The K-th
+     *  character has index K (numbering from 0). No character may be
+     *  duplicated. */
     Alphabet(String chars) {
         if (chars.length() < 1) {
             throw error("Invalid alphabet less than 0");
         }
 
-        letters = new char[chars.length()];
-        for (int i = 0; i < chars.length(); i++) {
-            letters[i] = chars.charAt(i);
-        }
+        letters = chars.codePoints().toArray();
 
+        int limit = 0;
+        int large = 0;
+        for (int cp : letters) {
+            if (cp < DIRECT_LIMIT) {
+                limit = Math.max(limit, cp + 1);
+            } else {
+                large += 1;
+            }
+        }
+        _direct = new int[limit];
+        Arrays.fill(_direct, -1);
+        if (large > 0) {
+            int capacity = Integer.highestOneBit(2 * large) << 1;
+            _hashKeys = new int[capacity];
+            _hashValues = new int[capacity];
+            Arrays.fill(_hashKeys, -1);
+            _hashShift = Integer.numberOfLeadingZeros(capacity) + 1;
+        }
         for (int i = 0; i < letters.length; i++) {
-            for (int j = i + 1; j < letters.length; j++) {
-                if (letters[i] == letters[j]) {
-                    throw error("Duplicate character in alphabet");
-                }
+            if (!addIndex(letters[i], i)) {
+                throw error("Duplicate character in alphabet");
             }
         }
     }
-    /** Char Array to keep track of Alphabet for the Machine. */
-    private char[] letters;
+    /** Code points of the Alphabet for the Machine, in order. */
+    private int[] letters;
 
     /** A default alphabet of all upper-case characters. */
     Alphabet() {
@@ -40,19 +58,42 @@ class Alphabet {
         return letters.length;
     }
 
+    /** Returns true iff OTHER has the same characters as this alphabet,
+     *  in the same order. */
+    boolean sameLetters(Alphabet other) {
+        return Arrays.equals(letters, other.letters);
+    }
+
+    /** Returns a hash code of my characters, consistent with
+     *  sameLetters. */
+    int lettersHash() {
+        return Arrays.hashCode(letters);
+    }
+
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < letters.length; i++) {
-            if (letters[i] == ch) {
-                return true;
-            }
-        }
-        return false;
+        return contains((int) ch);
+    }
+
+    /** Returns true if code point CP is in this alphabet. */
+    boolean contains(int cp) {
+        return indexOf(cp) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  It must not be a supplementary
+     *  character. */
     char toChar(int index) {
+        int cp = toCodePoint(index);
+        if (!Character.isBmpCodePoint(cp)) {
+            throw error("character %d is not a single char", index);
+        }
+        return (char) cp;
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
         if (index < 0 || index >= letters.length) {
             throw error("character index out of range");
         }
@@ -62,11 +103,76 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (letters[i] == ch) {
-                return i;
+        return toInt((int) ch);
+    }
+
+    /** Returns the index of code point CP, which must be in
+     *  the alphabet. This is the inverse of toCodePoint(). */
+    int toInt(int cp) {
+        int index = indexOf(cp);
+        if (index < 0) {
+            throw new EnigmaException("character not in alphabet");
+        }
+        return index;
+    }
+
+    /** Returns the index of code point CP, or -1 if it is not in the
+     *  alphabet. */
+    private int indexOf(int cp) {
+        if (cp >= 0 && cp < _direct.length) {
+            return _direct[cp];
+        }
+        if (_hashKeys == null) {
+            return -1;
+        }
+        int mask = _hashKeys.length - 1;
+        for (int h = hash(cp); ; h = (h + 1) & mask) {
+            if (_hashKeys[h] == cp) {
+                return _hashValues[h];
+            } else if (_hashKeys[h] == -1) {
+                return -1;
             }
         }
-        throw new EnigmaException("character not in alphabet");
     }
+
+    /** Record that code point CP has index INDEX, returning false if it
+     *  already has one. */
+    private boolean addIndex(int cp, int index) {
+        if (cp < _direct.length) {
+            if (_direct[cp] >= 0) {
+                return false;
+            }
+            _direct[cp] = index;
+            return true;
+        }
+        int mask = _hashKeys.length - 1;
+        int h = hash(cp);
+        while (_hashKeys[h] != -1) {
+            if (_hashKeys[h] == cp) {
+                return false;
+            }
+            h = (h + 1) & mask;
+        }
+        _hashKeys[h] = cp;
+        _hashValues[h] = index;
+        return true;
+    }
+
+    /** Returns the home bucket of code point CP in _hashKeys. */
+    private int hash(int cp) {
+        return (cp * 0x9E3779B9) >>> _hashShift;
+    }
+
+    /** Code points below this are indexed by a direct table. */
+    private static final int DIRECT_LIMIT = 1 << 12;
+
+    /** Index of each code point below _direct.length, or -1. */
+    private final int[] _direct;
+    /** Open-addressed table of the code points not in _direct, with -1
+     *  marking empty buckets, or null if there are none. */
+    private int[] _hashKeys;
+    /** Indices of the code points in _hashKeys. */
+    private int[] _hashValues;
+    /** Shift reducing a 32-bit hash to an index into _hashKeys. */
+    private int _hashShift;
 }
@@ -32,4 +32,38 @@ public class AlphabetTest {
         }
         assertFalse(test.contains('A'));
     }
+
+    @Test
+    public void testSupplementary() {
+        String testString = "A\uD83D\uDE00B\uD834\uDD1E";
+        Alphabet test = new Alphabet(testString);
+        assertEquals(4, test.size());
+        assertEquals(1, test.toInt(0x1F600));
+        assertEquals(2, test.toInt('B'));
+        assertEquals(0x1D11E, test.toCodePoint(3));
+        assertTrue(test.contains(0x1F600));
+        assertFalse(test.contains(0x1F601));
+        assertFalse(test.contains('\uD83D'));
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int cp = 0x20000; cp < 0x20000 + 5000; cp += 1) {
+            chars.appendCodePoint(cp);
+        }
+        chars.append("abc");
+        Alphabet test = new Alphabet(chars.toString());
+        assertEquals(5003, test.size());
+        for (int i = 0; i < 5000; i += 1) {
+            assertEquals(0x20000 + i, test.toCodePoint(i));
+            assertEquals(i, test.toInt(0x20000 + i));
+        }
+        assertEquals(5002, test.toInt('c'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateSupplementary() {
+        new Alphabet("\uD83D\uDE00A\uD83D\uDE00");
+    }
 }
@@ -0,0 +1,182 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Processes many input files against one parsed configuration, writing
+ * each file's output to a file of the same name in an output directory.
+ * Files are divided recursively among the workers of a fork/join pool, so
+ * that idle workers steal the remaining halves of busy workers' shares
+ * and a few large files do not hold up the small ones.  Each file is
+ * processed as Main processes its input, by a Pipeline run serially on
+ * its worker with a machine of its own; an error ends only the file in
+ * which it occurs, and is reported on the standard error.  Compressed
+ * inputs (see Main.GZIP_SUFFIX) give compressed outputs.
+ *
+ * @author Amy Stanley
+ */
+final class Batch {
+
+    /** Size of each file's output buffer. */
+    static final int BUFFER_SIZE = 1 << 14;
+
+    /**
+     * A batch applying machines built to the specs from SPECS to each of
+     * INPUTS, writing the results to files of the same names in OUTDIR.
+     */
+    Batch(Supplier<MachineSpec> specs, List<Path> inputs, Path outDir) {
+        this(specs, inputs, outDir, null);
+    }
+
+    /**
+     * A batch as for Batch(SPECS, INPUTS, OUTDIR) that looks message lines
+     * up in CACHE, if it is not null, before converting them, and records
+     * their conversions there.  The cache is shared by all files.
+     */
+    Batch(Supplier<MachineSpec> specs, List<Path> inputs, Path outDir,
+          ResultCache cache) {
+        _specs = specs;
+        _cache = cache;
+        _inputs = new ArrayList<>(inputs);
+        _outDir = outDir;
+        for (Path input : _inputs) {
+            Path parent = input.toAbsolutePath().normalize().getParent();
+            if (parent.equals(outDir.toAbsolutePath().normalize())) {
+                throw error("output directory %s holds input %s",
+                            outDir, input);
+            }
+        }
+    }
+
+    /**
+     * Return the input files named by PATTERN, in order of name: all
+     * regular files in PATTERN if it is a directory, and otherwise those
+     * in its parent directory whose names match its last component as a
+     * glob (as in "texts/*.in").
+     */
+    static List<Path> inputs(String pattern) {
+        Path path = Paths.get(pattern);
+        Path dir;
+        String glob;
+        if (Files.isDirectory(path)) {
+            dir = path;
+            glob = "*";
+        } else {
+            dir = path.getParent() == null ? Paths.get(".") : path.getParent();
+            glob = path.getFileName().toString();
+        }
+        ArrayList<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                                                                    glob)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    result.add(file);
+                }
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            throw error("could not list %s", pattern);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Process all my files on a pool with one worker per processor, and
+     * return the number that failed.
+     */
+    int run() {
+        if (_inputs.isEmpty()) {
+            return 0;
+        }
+        try {
+            Files.createDirectories(_outDir);
+        } catch (IOException excp) {
+            throw error("could not create %s", _outDir);
+        }
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return pool.invoke(new Share(0, _inputs.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Process INPUT into the file of the same name in my output
+     * directory, returning true if it succeeds and otherwise reporting
+     * the error and returning false.
+     */
+    boolean process(Path input) {
+        Path output = _outDir.resolve(input.getFileName());
+        Charset charset = Main.charset();
+        try (Reader in = new InputStreamReader(Main.openInput(input),
+                                               charset);
+             Writer out = new OutputStreamWriter(
+                 new BufferedOutputStream(Main.openOutput(output),
+                                          BUFFER_SIZE),
+                 charset)) {
+            new Pipeline(_specs, in, out, _cache).runSerially();
+            return true;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s: %s%n", input, excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s: could not process: %s%n", input,
+                              excp.getMessage());
+        }
+        return false;
+    }
+
+    /** The files from _inputs[LO] up to _inputs[HI], to be processed by
+     *  one worker unless another steals half of them. */
+    private final class Share extends RecursiveTask<Integer> {
+        /** The share of files in _inputs[LO .. HI-1]. */
+        Share(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (_hi - _lo == 1) {
+                return process(_inputs.get(_lo)) ? 0 : 1;
+            }
+            int mid = (_lo + _hi) >>> 1;
+            Share right = new Share(mid, _hi);
+            right.fork();
+            int failed = new Share(_lo, mid).compute();
+            return failed + right.join();
+        }
+
+        /** Index of my first file. */
+        private final int _lo;
+        /** Index just past my last file. */
+        private final int _hi;
+    }
+
+    /** Source of machine specs. */
+    private final Supplier<MachineSpec> _specs;
+    /** Files to process. */
+    private final List<Path> _inputs;
+    /** Directory receiving output files. */
+    private final Path _outDir;
+    /** Cache of conversions, or null. */
+    private final ResultCache _cache;
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the Batch class.
+ *
+ * @author Amy Stanley
+ */
+public class BatchTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings line of the standard test machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return a new temporary directory holding an input file named
+     *  I.in containing INPUTS[I] for each I. */
+    private Path inputDir(String... inputs) throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        dir.toFile().deleteOnExit();
+        for (int i = 0; i < inputs.length; i += 1) {
+            Path file = dir.resolve(i + ".in");
+            Files.write(file, inputs[i].getBytes());
+            file.toFile().deleteOnExit();
+        }
+        return dir;
+    }
+
+    /** Return the contents of FILE. */
+    private String contents(Path file) throws IOException {
+        file.toFile().deleteOnExit();
+        return new String(Files.readAllBytes(file));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testManyFiles() throws IOException {
+        String[] inputs = new String[40];
+        for (int i = 0; i < inputs.length; i += 1) {
+            inputs[i] = SETTINGS + "\nFROM HIS\n";
+        }
+        inputs[7] = SETTINGS + "\nFROM\nfrom\nFROM\n";
+        Path in = inputDir(inputs);
+        Path out = in.resolveSibling(in.getFileName() + ".out");
+        out.toFile().deleteOnExit();
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        List<Path> files = Batch.inputs(in.toString());
+        assertEquals(inputs.length, files.size());
+        assertEquals(1, new Batch(() -> spec, files, out).run());
+        assertEquals("QVPQS OK\n", contents(out.resolve("0.in")));
+        assertEquals("QVPQS OK\n", contents(out.resolve("39.in")));
+        assertEquals("QVPQ\n", contents(out.resolve("7.in")));
+    }
+
+    @Test
+    public void testGlob() throws IOException {
+        Path in = inputDir("A", "B", "C");
+        Files.write(in.resolve("x.txt"), "D".getBytes());
+        in.resolve("x.txt").toFile().deleteOnExit();
+        assertEquals(4, Batch.inputs(in.toString()).size());
+        assertEquals(3, Batch.inputs(in.resolve("*.in").toString()).size());
+    }
+
+    @Test
+    public void testCompressed() throws IOException {
+        Path in = Files.createTempDirectory("enigma");
+        in.toFile().deleteOnExit();
+        Path file = in.resolve("msg.in.gz");
+        file.toFile().deleteOnExit();
+        try (OutputStream out = Main.openOutput(file)) {
+            out.write((SETTINGS + "\nFROM HIS\n").getBytes());
+        }
+        Path out = in.resolveSibling(in.getFileName() + ".out");
+        out.toFile().deleteOnExit();
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        assertEquals(0, new Batch(() -> spec, Batch.inputs(in.toString()),
+                                  out).run());
+        Path result = out.resolve("msg.in.gz");
+        result.toFile().deleteOnExit();
+        try (InputStream text = Main.openInput(result)) {
+            assertEquals("QVPQS OK\n", new String(text.readAllBytes()));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOutputOverInput() throws IOException {
+        Path in = inputDir("A");
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        new Batch(() -> spec, Batch.inputs(in.toString()), in);
+    }
+}
@@ -0,0 +1,589 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Processes an input file as Main does, memory-mapped and in parallel.
+ * Main reads its input front to back because it finds settings lines
+ * only as it comes to them, but each settings line starts afresh, so the
+ * run of lines from one settings line to the next, a block, can be
+ * converted without the others.  The file is mapped once, in regions of
+ * at most MAP_LIMIT bytes, and a pre-pass scans the regions in parallel
+ * for the "*" that begins each settings line, giving the
+ * offset and length of every block; a second measures each block's
+ * output, which for an alphabet of ASCII characters is fixed by the
+ * number of characters in each message line, giving the offset at which
+ * each block's output goes.  The blocks are then converted on a pool of
+ * workers, in any order, each written at its own offset in the output
+ * file.  Every pass reads the blocks through the regions' mappings,
+ * stepping from one region to the next where a block crosses between
+ * them, so that the number of mappings does not grow with the number of
+ * blocks.  An error ends the output where Main's would have ended, just
+ * before the output of the line in error, and is then reported.  The
+ * input and output must be uncompressed files, and the alphabet's
+ * characters ASCII, encoded one byte each by the default charset (see
+ * fits); a single block is converted serially however long it is.
+ *
+ * @author Amy Stanley
+ */
+final class Blocks {
+
+    /** Most bytes in one mapped region of the input. */
+    static final int MAP_LIMIT = 1 << 28;
+
+    /** Fewest bytes in a region scanned for settings lines. */
+    static final int MIN_REGION = 1 << 20;
+
+    /** Regions scanned per worker, so that a slow one holds up little. */
+    static final int REGIONS_PER_WORKER = 4;
+
+    /** Number of characters of a message line converted at once, as in
+     *  Pipeline, whose partial output on an error this reproduces. */
+    static final int WINDOW = Pipeline.WINDOW;
+
+    /** Size of each worker's output buffer, in bytes. */
+    static final int OUT_BUFFER = 1 << 16;
+
+    /**
+     * Return true iff input for machines built to SPEC can be processed
+     * as blocks: its characters are ASCII, none of them whitespace, the
+     * default charset encodes them as single bytes, and Main is not
+     * verbose.
+     */
+    static boolean fits(MachineSpec spec) {
+        Charset charset = Main.charset();
+        if (Main.verbose() || !(charset.equals(StandardCharsets.UTF_8)
+                                || charset.equals(StandardCharsets.US_ASCII)
+                                || charset.equals(
+                                    StandardCharsets.ISO_8859_1))) {
+            return false;
+        }
+        Alphabet alpha = spec.alphabet();
+        for (int i = 0; i < alpha.size(); i += 1) {
+            int c = alpha.toCodePoint(i);
+            if (c >= ASCII || Machine.isSpace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Blocks of the file INPUT, to be converted by machines built to
+     * SPEC, which must fit, into the file OUTPUT.
+     */
+    Blocks(MachineSpec spec, Path input, Path output) {
+        _spec = spec;
+        _inputName = input;
+        _outputName = output;
+        Alphabet alpha = spec.alphabet();
+        Arrays.fill(_indices, -1);
+        for (int i = 0; i < alpha.size(); i += 1) {
+            int c = alpha.toCodePoint(i);
+            _indices[c] = i;
+            _chars[i] = (byte) c;
+        }
+    }
+
+    /**
+     * Convert my input into my output, on a pool with one worker per
+     * processor.
+     */
+    void run() {
+        ForkJoinPool pool = new ForkJoinPool();
+        try (FileChannel in = FileChannel.open(_inputName,
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(
+                 _outputName, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            _in = in;
+            _out = out;
+            index(pool);
+            measure(pool);
+            convert(pool);
+            int failed = _failed.get();
+            out.truncate(failed == NONE ? _outStarts[_starts.length - 1]
+                         : _errorOffsets[failed]);
+            if (failed != NONE) {
+                throw _errors[failed];
+            }
+        } catch (IOException excp) {
+            throw error("could not process %s: %s", _inputName,
+                        excp.getMessage());
+        } finally {
+            pool.shutdown();
+            _in = null;
+            _out = null;
+            _regions = null;
+        }
+    }
+
+    /**
+     * Return the offsets of my blocks in the input, followed by its
+     * length, as found by run().
+     */
+    long[] starts() {
+        return _starts;
+    }
+
+    /**
+     * Return the offsets of my blocks' output, followed by the length of
+     * the whole, as found by run().
+     */
+    long[] outputStarts() {
+        return _outStarts;
+    }
+
+    /**
+     * Map the input in regions, setting _regions, and find the offsets
+     * of all settings lines, scanning the regions in parallel on POOL,
+     * and set _starts.  An input that does not begin with a settings
+     * line has a first block without one.
+     */
+    private void index(ForkJoinPool pool) throws IOException {
+        long size = _in.size();
+        if (size == 0) {
+            _regions = new MappedByteBuffer[0];
+            _starts = new long[] {0};
+            return;
+        }
+        long regions = Math.max(1, Math.min(pool.getParallelism()
+                                            * REGIONS_PER_WORKER,
+                                            size / MIN_REGION));
+        long length = Math.min(MAP_LIMIT, (size + regions - 1) / regions);
+        int count = (int) ((size + length - 1) / length);
+        _regionLength = length;
+        _regions = new MappedByteBuffer[count];
+        for (int r = 0; r < count; r += 1) {
+            _regions[r] = map(r * length, Math.min(size, (r + 1) * length));
+        }
+        long[][] found = new long[count][];
+        forEach(pool, count, r -> found[r] = settingsLines(r));
+        long[] starts = new long[1];
+        int n = 0;
+        if (found[0][0] != 0) {
+            n = 1;
+        }
+        for (long[] offsets : found) {
+            if (n + offsets.length + 1 > starts.length) {
+                starts = Arrays.copyOf(starts, Math.max(
+                    n + offsets.length + 1, 2 * starts.length));
+            }
+            for (long offset : offsets) {
+                if (offset < 0) {
+                    break;
+                }
+                starts[n++] = offset;
+            }
+        }
+        starts[n++] = size;
+        _starts = Arrays.copyOf(starts, n);
+    }
+
+    /**
+     * Return the offsets in region #R of the input that begin settings
+     * lines, in order, possibly followed by -1s.
+     */
+    private long[] settingsLines(int r) {
+        MappedByteBuffer map = _regions[r];
+        long base = r * _regionLength;
+        long[] result = new long[16];
+        int n = 0;
+        int prev = r == 0 ? '\n' : byteAt(base - 1);
+        for (int i = 0, end = map.limit(); i < end; i += 1) {
+            int b = map.get(i);
+            if (b == '*' && (prev == '\n' || prev == '\r')) {
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, 2 * n);
+                }
+                result[n++] = base + i;
+            }
+            prev = b;
+        }
+        Arrays.fill(result, n, result.length, -1);
+        return result;
+    }
+
+    /**
+     * Find the length of every block's output, in parallel on POOL, and
+     * set _outStarts to their offsets.
+     */
+    private void measure(ForkJoinPool pool) {
+        int count = _starts.length - 1;
+        long[] lengths = new long[count];
+        forEach(pool, count, k -> lengths[k] = measure(k));
+        _outStarts = new long[count + 1];
+        for (int k = 0; k < count; k += 1) {
+            _outStarts[k + 1] = _outStarts[k] + lengths[k];
+        }
+    }
+
+    /**
+     * Return the number of bytes of output of block #K if it converts
+     * without error: each message line gives its characters, a space
+     * after each fifth, and a line end.
+     */
+    private long measure(int k) {
+        long result = 0;
+        boolean settings = startsWithSettings(k);
+        boolean inLine = false;
+        boolean afterCR = false;
+        long chars = 0;
+        long end = _starts[k + 1];
+        for (long pos = _starts[k]; pos < end; pos = regionEnd(pos)) {
+            MappedByteBuffer map = region(pos);
+            int limit = (int) (Math.min(end, regionEnd(pos)) - pos);
+            for (int i = offset(pos), stop = i + limit; i < stop; i += 1) {
+                int b = map.get(i);
+                if (b == '\n' && afterCR) {
+                    afterCR = false;
+                    continue;
+                }
+                afterCR = b == '\r';
+                if (b == '\n' || b == '\r') {
+                    if (!settings) {
+                        result += chars + chars / 5 + 1;
+                    }
+                    settings = false;
+                    inLine = false;
+                    chars = 0;
+                } else {
+                    inLine = true;
+                    chars += Machine.isSpace(b) ? 0 : 1;
+                }
+            }
+        }
+        if (inLine && !settings) {
+            result += chars + chars / 5 + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Convert every block, in parallel on POOL, recording the first
+     * block to fail in _failed.
+     */
+    private void convert(ForkJoinPool pool) {
+        int count = _starts.length - 1;
+        _errors = new EnigmaException[count];
+        _errorOffsets = new long[count];
+        ThreadLocal<Converter> converters =
+            ThreadLocal.withInitial(Converter::new);
+        forEach(pool, count, k -> {
+            if (k < _failed.get()) {
+                converters.get().convert(k);
+            }
+        });
+    }
+
+    /** Return true iff block #K begins with a settings line. */
+    private boolean startsWithSettings(int k) {
+        return k > 0 || _starts[0] == 0 && _starts.length > 1
+            && byteAt(0) == '*';
+    }
+
+    /** Return the mapped region holding input offset POS. */
+    private MappedByteBuffer region(long pos) {
+        return _regions[(int) (pos / _regionLength)];
+    }
+
+    /** Return the index of input offset POS in region(POS). */
+    private int offset(long pos) {
+        return (int) (pos % _regionLength);
+    }
+
+    /** Return the input offset just past the end of region(POS). */
+    private long regionEnd(long pos) {
+        return pos - offset(pos) + region(pos).limit();
+    }
+
+    /** Return the input byte at offset POS. */
+    private int byteAt(long pos) {
+        return region(pos).get(offset(pos));
+    }
+
+    /**
+     * Record that block #K fails with ERR, whose line's output would
+     * begin at OFFSET.
+     */
+    private void fail(int k, EnigmaException err, long offset) {
+        _errors[k] = err;
+        _errorOffsets[k] = offset;
+        _failed.accumulateAndGet(k, Math::min);
+    }
+
+    /** Return the input from offset LO to HI, mapped. */
+    private MappedByteBuffer map(long lo, long hi) {
+        try {
+            return _in.map(FileChannel.MapMode.READ_ONLY, lo, hi - lo);
+        } catch (IOException excp) {
+            throw error("could not map %s: %s", _inputName,
+                        excp.getMessage());
+        }
+    }
+
+    /** Run ACTION on 0 .. COUNT-1 on POOL, in parallel. */
+    private static void forEach(ForkJoinPool pool, int count,
+                                IntConsumer action) {
+        if (count > 0) {
+            pool.invoke(new Range(action, 0, count));
+        }
+    }
+
+    /** The integers LO up to HI, each to be given to an action. */
+    private static final class Range extends RecursiveAction {
+        /** The range for ACTION of LO .. HI-1. */
+        Range(IntConsumer action, int lo, int hi) {
+            _action = action;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                _action.accept(_lo);
+                return;
+            }
+            int mid = (_lo + _hi) >>> 1;
+            invokeAll(new Range(_action, _lo, mid),
+                      new Range(_action, mid, _hi));
+        }
+
+        /** The action. */
+        private final IntConsumer _action;
+        /** First integer. */
+        private final int _lo;
+        /** Integer just past the last. */
+        private final int _hi;
+    }
+
+    /**
+     * Converts blocks with a machine of its own, for one worker at a
+     * time.
+     */
+    private final class Converter {
+
+        /**
+         * Convert block #K, writing its output at its offset, or record
+         * its failure.
+         */
+        void convert(int k) {
+            _written = _outStarts[k];
+            _filled = 0;
+            _lineStart = _written;
+            _settings = startsWithSettings(k) ? new ByteArrayOutputStream()
+                : null;
+            _configured = false;
+            _length = 0;
+            _raw = 0;
+            _grouped = 0;
+            try {
+                try {
+                    scan(k);
+                } catch (EnigmaException excp) {
+                    fail(k, excp, _lineStart);
+                }
+                flush();
+            } catch (IOException excp) {
+                fail(k, error("could not write %s: %s", _outputName,
+                              excp.getMessage()), _lineStart);
+            }
+        }
+
+        /** Convert the lines of block #K. */
+        private void scan(int k) throws IOException {
+            boolean inLine = false;
+            boolean afterCR = false;
+            long end = _starts[k + 1];
+            for (long pos = _starts[k]; pos < end; pos = regionEnd(pos)) {
+                MappedByteBuffer map = region(pos);
+                int limit = (int) (Math.min(end, regionEnd(pos)) - pos);
+                for (int i = offset(pos), stop = i + limit; i < stop;
+                     i += 1) {
+                    int b = map.get(i);
+                    if (b == '\n' && afterCR) {
+                        afterCR = false;
+                        continue;
+                    }
+                    afterCR = b == '\r';
+                    if (b == '\n' || b == '\r') {
+                        endLine();
+                        inLine = false;
+                    } else {
+                        inLine = true;
+                        add(b);
+                    }
+                }
+            }
+            if (inLine) {
+                endLine();
+            }
+        }
+
+        /** Add byte B to the current line. */
+        private void add(int b) throws IOException {
+            if (_settings != null) {
+                _settings.write(b);
+                return;
+            }
+            if (_raw == WINDOW) {
+                convertWindow(true);
+            }
+            _raw += 1;
+            if (Machine.isSpace(b)) {
+                return;
+            }
+            int index = _indices[b & MASK];
+            if (index < 0) {
+                /* Throws the error Pipeline would. */
+                index = _spec.alphabet().toInt(b & MASK);
+            }
+            _line[_length++] = index;
+        }
+
+        /** End the current line. */
+        private void endLine() throws IOException {
+            if (_settings != null) {
+                Main.setUp(machine(),
+                           _settings.toString(Main.charset()));
+                _settings = null;
+                _configured = true;
+                return;
+            }
+            convertWindow(false);
+        }
+
+        /**
+         * Convert the characters of the current line collected so far,
+         * as a window of a line that continues iff MORE.
+         */
+        private void convertWindow(boolean more) throws IOException {
+            if (!_configured) {
+                throw error("Invalid Config");
+            }
+            int[] line = _line;
+            int len = _length;
+            if (_filled + 2 * len + 2 > _buffer.length) {
+                flush();
+            }
+            _machine.convert(line, len);
+            byte[] buffer = _buffer;
+            byte[] chars = _chars;
+            int k = _filled;
+            int count = _grouped;
+            for (int i = 0; i < len; i += 1) {
+                buffer[k++] = chars[line[i]];
+                count += 1;
+                if (count == 5) {
+                    buffer[k++] = ' ';
+                    count = 0;
+                }
+            }
+            if (more) {
+                _grouped = count;
+            } else {
+                buffer[k++] = '\n';
+                _grouped = 0;
+            }
+            _filled = k;
+            _length = 0;
+            _raw = 0;
+            _lineStart = _written + _filled;
+        }
+
+        /** Write my buffered output at its offset. */
+        private void flush() throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(_buffer, 0, _filled);
+            while (buffer.hasRemaining()) {
+                _written += _out.write(buffer, _written);
+            }
+            _filled = 0;
+        }
+
+        /** Return my machine, made the first time it is needed. */
+        private Machine machine() {
+            if (_machine == null) {
+                _machine = _spec.newMachine();
+            }
+            return _machine;
+        }
+
+        /** My machine, or null. */
+        private Machine _machine;
+        /** The settings line being collected, or null once it is done. */
+        private ByteArrayOutputStream _settings;
+        /** True once the block's settings line has been applied. */
+        private boolean _configured;
+        /** Alphabet indices of the current window of the current line. */
+        private final int[] _line = new int[WINDOW];
+        /** Number of valid entries of _line. */
+        private int _length;
+        /** Number of characters in the current window, spaces included. */
+        private int _raw;
+        /** Characters in the last, incomplete output group of the
+         *  previous window of the current line. */
+        private int _grouped;
+        /** Output buffer. */
+        private final byte[] _buffer = new byte[OUT_BUFFER + 3 * WINDOW];
+        /** Number of valid bytes in _buffer. */
+        private int _filled;
+        /** Output offset of the start of _buffer. */
+        private long _written;
+        /** Output offset of the current line's output (or of the output
+         *  of the current window of a long line). */
+        private long _lineStart;
+    }
+
+    /** Bound on ASCII characters. */
+    private static final int ASCII = 0x80;
+    /** Mask recovering an unsigned byte. */
+    private static final int MASK = 0xFF;
+    /** Value of _failed while no block has failed. */
+    private static final int NONE = Integer.MAX_VALUE;
+
+    /** Spec of the machines converting. */
+    private final MachineSpec _spec;
+    /** The input file. */
+    private final Path _inputName;
+    /** The output file. */
+    private final Path _outputName;
+    /** Entry B is the alphabet index of byte B, or -1. */
+    private final int[] _indices = new int[MASK + 1];
+    /** Entry I is the byte of alphabet index I. */
+    private final byte[] _chars = new byte[ASCII];
+    /** The input, while running. */
+    private FileChannel _in;
+    /** The output, while running. */
+    private FileChannel _out;
+    /** The input, mapped in consecutive regions, while running. */
+    private MappedByteBuffer[] _regions;
+    /** Length of each region but the last. */
+    private long _regionLength;
+    /** Offsets of the blocks, followed by the input's length. */
+    private long[] _starts;
+    /** Offsets of the blocks' output, followed by its length. */
+    private long[] _outStarts;
+    /** Error of each failed block, or null. */
+    private EnigmaException[] _errors;
+    /** Output offset of the line in error of each failed block. */
+    private long[] _errorOffsets;
+    /** First block to fail, or NONE. */
+    private final AtomicInteger _failed = new AtomicInteger(NONE);
+}
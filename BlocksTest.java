@@ -0,0 +1,192 @@
+package enigma;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for processing by blocks, Blocks.
+ *
+ * @author Amy Stanley
+ */
+public class BlocksTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A settings line of the test machine. */
+    private static final String KEY1 =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Another settings line of the test machine. */
+    private static final String KEY2 = "* C Gamma V II VIII QRST (AZ)";
+
+    /** Return a configuration of the naval rotors over UPPER. */
+    private static String config() {
+        StringBuilder result = new StringBuilder(UPPER_STRING + "\n5 3\n");
+        for (String name : NAVALA.keySet()) {
+            String type;
+            if (name.equals("B") || name.equals("C")) {
+                type = "R";
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                type = "M" + NAVAL_NOTCHES.get(name);
+            } else {
+                type = "N";
+            }
+            result.append(String.format(" %s %s %s%n", name, type,
+                                        NAVALA.get(name)));
+        }
+        return result.toString();
+    }
+
+    /** Return the output Pipeline gives for INPUT, followed by the
+     *  message of its error, if any. */
+    private static String expected(MachineSpec spec, String input) {
+        StringWriter out = new StringWriter();
+        try {
+            new Pipeline(() -> spec, new StringReader(input), out)
+                .runSerially();
+            return out.toString();
+        } catch (EnigmaException excp) {
+            return out.toString() + "Error: " + excp.getMessage();
+        }
+    }
+
+    /** Return the output Blocks gives for INPUT, followed by the message
+     *  of its error, if any. */
+    private static String actual(MachineSpec spec, String input)
+        throws Exception {
+        Path in = Files.createTempFile("blocks", ".in");
+        Path out = Files.createTempFile("blocks", ".out");
+        try {
+            Files.write(in, input.getBytes(StandardCharsets.UTF_8));
+            String error = "";
+            try {
+                new Blocks(spec, in, out).run();
+            } catch (EnigmaException excp) {
+                error = "Error: " + excp.getMessage();
+            }
+            return new String(Files.readAllBytes(out),
+                              StandardCharsets.UTF_8) + error;
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    /** Check that Blocks processes INPUT as Pipeline does. */
+    private static void check(String input) throws Exception {
+        MachineSpec spec = Main.readConfig(config());
+        assertTrue(Blocks.fits(spec));
+        assertEquals(msg("check", "input %s", input),
+                     expected(spec, input), actual(spec, input));
+    }
+
+    /** Return a message line of LEN random characters of UPPER and
+     *  spaces drawn from RANDOM. */
+    private static String message(Random random, int len) {
+        StringBuilder result = new StringBuilder(len);
+        for (int i = 0; i < len; i += 1) {
+            result.append(random.nextInt(6) == 0 ? ' '
+                          : (char) ('A' + random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testIndex() throws Exception {
+        MachineSpec spec = Main.readConfig(config());
+        String input = KEY1 + "\nHELLO WORLD\n" + KEY2 + "\r\nABC\r\n"
+            + KEY1 + "\r" + "X\n";
+        Path in = Files.createTempFile("blocks", ".in");
+        Path out = Files.createTempFile("blocks", ".out");
+        Files.write(in, input.getBytes(StandardCharsets.US_ASCII));
+        Blocks blocks = new Blocks(spec, in, out);
+        blocks.run();
+        int second = input.indexOf(KEY2);
+        int third = input.lastIndexOf(KEY1);
+        assertEquals(Arrays.toString(new long[] {0, second, third,
+                                                 input.length()}),
+                     Arrays.toString(blocks.starts()));
+        assertEquals("[0, 13, 17, 19]",
+                     Arrays.toString(blocks.outputStarts()));
+        assertEquals(19, Files.size(out));
+        Files.delete(in);
+        Files.delete(out);
+    }
+
+    @Test
+    public void testLikePipeline() throws Exception {
+        check("");
+        check(KEY1 + "\n");
+        check(KEY1 + "\nFROM HIS SHOULDER HIAWATHA\n\n  \n" + KEY2
+              + "\nTOOK THE CAMERA\n" + KEY1 + "\nOF ROSEWOOD");
+        check(KEY1 + "\r\nA B C D E F\r\r\n" + KEY2 + "\rXYZ\r\n\r\n");
+        check(KEY1 + "\n*NOT A LINE START " + KEY2 + "\nABC\n");
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        check("HELLO\n" + KEY1 + "\nABC\n");
+        check("\n" + KEY1 + "\nABC\n");
+        check(KEY1 + "\nABC\n" + KEY2 + "\nDEF\nGHi\nJKL\n" + KEY1
+              + "\nMNO\n");
+        check(KEY1 + "\nABC\n* B Beta III IV XX AXLE\nDEF\n" + KEY2
+              + "\nGHI\n");
+        check(KEY1 + "\nABC\n" + KEY2 + "\nDEF\u00e9\n");
+    }
+
+    @Test
+    public void testLongLines() throws Exception {
+        Random random = new Random(7);
+        int window = Blocks.WINDOW;
+        check(KEY1 + "\n" + message(random, 2 * window + 17) + "\n"
+              + KEY2 + "\n" + message(random, window) + "\n"
+              + message(random, window + 1));
+        check(KEY1 + "\n" + message(random, window + 100) + "1"
+              + message(random, 10) + "\n" + KEY2 + "\nABC\n");
+    }
+
+    @Test
+    public void testManyBlocks() throws Exception {
+        Random random = new Random(11);
+        StringBuilder input = new StringBuilder();
+        for (int b = 0; b < 500; b += 1) {
+            input.append(random.nextBoolean() ? KEY1 : KEY2).append('\n');
+            for (int j = random.nextInt(5); j > 0; j -= 1) {
+                input.append(message(random, random.nextInt(80)))
+                    .append(random.nextBoolean() ? "\n" : "\r\n");
+            }
+        }
+        check(input.toString());
+    }
+
+    @Test
+    public void testMoreBlocksThanMappings() throws Exception {
+        Random random = new Random(13);
+        StringBuilder input = new StringBuilder();
+        for (int b = 0; b < 100_000; b += 1) {
+            input.append(KEY2).append('\n').append(message(random, 20))
+                .append('\n');
+        }
+        check(input.toString());
+    }
+}
@@ -0,0 +1,61 @@
+package enigma;
+
+/**
+ * An Engine for alphabets of at most 256 characters, whose tables hold
+ * one byte per entry.  Each rotor has a table for every setting, so that
+ * a rotor pass is a single lookup with no wrapping; a five-rotor machine
+ * over 26 letters then needs under 7 kilobytes of tables.
+ *
+ * @author Amy Stanley
+ */
+final class ByteEngine extends Engine {
+
+    /**
+     * An engine applying PLUGBOARD and ROTORS, whose alphabet has at most
+     * BYTE_LIMIT characters.
+     */
+    ByteEngine(Permutation plugboard, Rotor[] rotors) {
+        super(rotors);
+        _size = plugboard.size();
+        _last = rotors.length - 1;
+        _plugboard = narrow(plugboardTable(plugboard));
+        _forward = settingTables(rotors, false);
+        _backward = settingTables(rotors, true);
+    }
+
+    @Override
+    int convert(int c, int[] posns) {
+        final int n = _size;
+        c = _plugboard[c] & MASK;
+        for (int k = _last; k >= 0; k -= 1) {
+            c = _forward[(k * n + posns[k]) * n + c] & MASK;
+        }
+        for (int k = 1; k <= _last; k += 1) {
+            c = _backward[(k * n + posns[k]) * n + c] & MASK;
+        }
+        return _plugboard[c] & MASK;
+    }
+
+    /** Return TABLE with each entry stored in a byte. */
+    private static byte[] narrow(int[] table) {
+        byte[] result = new byte[table.length];
+        for (int i = 0; i < table.length; i += 1) {
+            result[i] = (byte) table[i];
+        }
+        return result;
+    }
+
+    /** Mask recovering an unsigned entry. */
+    private static final int MASK = 0xFF;
+
+    /** Size of my alphabet. */
+    private final int _size;
+    /** Index of my last (fast) rotor. */
+    private final int _last;
+    /** Plugboard table. */
+    private final byte[] _plugboard;
+    /** Concatenated forward rotor tables for each setting. */
+    private final byte[] _forward;
+    /** Concatenated backward rotor tables for each setting. */
+    private final byte[] _backward;
+}
@@ -0,0 +1,189 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The substitutions a machine makes in the keystrokes after it is set to
+ * a particular key.  The rotors step the same way whatever is typed, so
+ * keystroke I after the key always applies the same substitution, and a
+ * codebook holds those substitutions as a table: converting under a key
+ * that recurs then costs one lookup per character instead of a pass
+ * through the rotors.  It also keeps the rotor positions every SNAPSHOT
+ * keystrokes, from which the positions after any keystroke it covers are
+ * recovered in a few steps.  Codebooks are only built for alphabets whose
+ * indices fit in a byte.
+ *
+ * @author Amy Stanley
+ */
+final class Codebook {
+
+    /** Most keystrokes a codebook covers. */
+    static final int LIMIT = 1 << 12;
+
+    /** Keystrokes between the saved rotor positions. */
+    static final int SNAPSHOT = 1 << 6;
+
+    /**
+     * Return the number of keystrokes a codebook should cover to convert
+     * the first LENGTH > 0 keystrokes after its key: LENGTH rounded up to
+     * a multiple of SNAPSHOT, but at most LIMIT.
+     */
+    static int length(int length) {
+        return Math.min(LIMIT, (length + SNAPSHOT - 1) / SNAPSHOT * SNAPSHOT);
+    }
+
+    /**
+     * The codebook of ENGINE for the LENGTH keystrokes (a multiple of
+     * SNAPSHOT) after its rotors are at POSNS, which is not modified.
+     * The alphabet must have at most Engine.BYTE_LIMIT characters.
+     */
+    Codebook(Engine engine, int[] posns, int length) {
+        int n = engine.size();
+        int r = posns.length;
+        _engine = engine;
+        _size = n;
+        _length = length;
+        _table = new byte[length * n];
+        _snapshots = new int[(length / SNAPSHOT + 1) * r];
+        int[] p = posns.clone();
+        for (int i = 0; i < length; i += 1) {
+            if (i % SNAPSHOT == 0) {
+                System.arraycopy(p, 0, _snapshots, i / SNAPSHOT * r, r);
+            }
+            engine.advance(p);
+            for (int c = 0; c < n; c += 1) {
+                _table[i * n + c] = (byte) engine.convert(c, p);
+            }
+        }
+        System.arraycopy(p, 0, _snapshots, length / SNAPSHOT * r, r);
+    }
+
+    /** Return the number of keystrokes I cover. */
+    int length() {
+        return _length;
+    }
+
+    /**
+     * Convert the alphabet indices MSG[FROM .. TO-1] in place, as the
+     * keystrokes OFFSET onwards after my key, where
+     * OFFSET + TO - FROM <= length().
+     */
+    void convert(int[] msg, int from, int to, int offset) {
+        final byte[] table = _table;
+        final int n = _size;
+        int row = offset * n;
+        for (int i = from; i < to; i += 1, row += n) {
+            msg[i] = table[row + msg[i]] & 0xff;
+        }
+    }
+
+    /**
+     * Set POSNS to the rotor positions after the first OFFSET <= length()
+     * keystrokes after my key.
+     */
+    void positions(int offset, int[] posns) {
+        int r = posns.length;
+        System.arraycopy(_snapshots, offset / SNAPSHOT * r, posns, 0, r);
+        for (int i = offset % SNAPSHOT; i > 0; i -= 1) {
+            _engine.advance(posns);
+        }
+    }
+
+    /**
+     * The keys a machine has recently been set to, how often each, and
+     * the codebooks built for them.  A key is the machine's rotors and
+     * plugboard, identified by PARTS whose elements compare with equals,
+     * together with the rotor positions.  Only the CAPACITY most recently
+     * seen keys are kept.
+     */
+    static final class Shelf {
+        /** Most keys remembered. */
+        static final int CAPACITY = 16;
+
+        /**
+         * Return the entry for the key of PARTS and POSNS, recording one
+         * more setting to it.  POSNS is not modified.
+         */
+        Entry sight(Object[] parts, int[] posns) {
+            Key key = new Key(parts, posns);
+            Entry entry = _entries.get(key);
+            if (entry == null) {
+                entry = new Entry(posns.clone());
+                _entries.put(key, entry);
+            }
+            entry.sightings += 1;
+            return entry;
+        }
+
+        /** Entries, least recently seen first. */
+        private final LinkedHashMap<Key, Entry> _entries =
+            new LinkedHashMap<>(CAPACITY, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> e) {
+                    return size() > CAPACITY;
+                }
+            };
+    }
+
+    /** What a Shelf knows of a key. */
+    static final class Entry {
+        /** An entry for the key with rotor positions POSITIONS. */
+        Entry(int[] positions) {
+            this.positions = positions;
+        }
+
+        /** Rotor positions of the key. */
+        final int[] positions;
+        /** Number of times a machine has been set to the key. */
+        int sightings;
+        /** Codebook for the key, once built. */
+        Codebook book;
+    }
+
+    /** A machine's rotors, plugboard and rotor positions. */
+    private static final class Key {
+        /** The key of PARTS and POSNS. */
+        Key(Object[] parts, int[] posns) {
+            _parts = parts;
+            _posns = posns.clone();
+            _hash = Arrays.hashCode(parts) * 31 + Arrays.hashCode(posns);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return _hash == other._hash && Arrays.equals(_posns, other._posns)
+                && Arrays.equals(_parts, other._parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The rotors and plugboard. */
+        private final Object[] _parts;
+        /** The rotor positions. */
+        private final int[] _posns;
+        /** My hash code. */
+        private final int _hash;
+    }
+
+    /** Engine whose conversions I record. */
+    private final Engine _engine;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of keystrokes covered. */
+    private final int _length;
+    /** Entry I * _size + C is the conversion of index C at keystroke I
+     *  after the key, as an unsigned byte. */
+    private final byte[] _table;
+    /** Entries J * numRotors to (J + 1) * numRotors - 1 are the rotor
+     *  positions after J * SNAPSHOT keystrokes. */
+    private final int[] _snapshots;
+}
@@ -0,0 +1,139 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Supplies the machine spec described by a configuration file, and once
+ * started, re-reads the file in the background whenever it changes.  A
+ * new spec is published atomically, and only if the file parses and
+ * every rotor in it compiles; an invalid file is reported on the
+ * standard error and the previous spec stays in force.  Users fetch
+ * the current spec when they begin a new settings block, so work in
+ * progress always finishes on the spec it started with.
+ *
+ * @author Amy Stanley
+ */
+final class ConfigWatcher implements Supplier<MachineSpec>, Closeable {
+
+    /**
+     * A watcher for the configuration file FILE, which is read at once.
+     */
+    ConfigWatcher(Path file) {
+        this(file, null);
+    }
+
+    /**
+     * A watcher for the configuration file FILE, which is read at once,
+     * whose specs' machines use STRATEGY (see MachineSpec.withStrategy).
+     */
+    ConfigWatcher(Path file, Strategy strategy) {
+        _file = file.toAbsolutePath();
+        _strategy = strategy;
+        _current.set(read());
+    }
+
+    /**
+     * Return the most recently published spec.
+     */
+    @Override
+    public MachineSpec get() {
+        return _current.get();
+    }
+
+    /**
+     * Start watching my file for changes.
+     */
+    void start() throws IOException {
+        _watcher = FileSystems.getDefault().newWatchService();
+        _file.getParent().register(_watcher,
+                                   StandardWatchEventKinds.ENTRY_CREATE,
+                                   StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(this::watch, "enigma-config");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Re-read my file now, publishing its spec and returning true if it
+     * is valid, and otherwise reporting the error and returning false.
+     */
+    boolean reload() {
+        try {
+            _current.set(read());
+            return true;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s not reloaded: %s%n", _file,
+                              excp.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_watcher != null) {
+            _watcher.close();
+        }
+    }
+
+    /**
+     * Return the spec in my file, with all of its rotors checked.
+     */
+    private MachineSpec read() {
+        try {
+            MachineSpec spec =
+                Main.readConfig(new String(Files.readAllBytes(_file),
+                                           Main.charset()));
+            spec.rotors().check();
+            return spec.withStrategy(_strategy);
+        } catch (IOException excp) {
+            throw error("could not open %s", _file);
+        }
+    }
+
+    /**
+     * Reload whenever my file is created or modified, until closed.
+     */
+    private void watch() {
+        Path name = _file.getFileName();
+        try {
+            while (true) {
+                WatchKey key = _watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= name.equals(event.context());
+                }
+                if (changed) {
+                    reload();
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            return;
+        }
+    }
+
+    /** The configuration file. */
+    private final Path _file;
+    /** Strategy of my specs' machines, or null. */
+    private final Strategy _strategy;
+    /** The current spec. */
+    private final AtomicReference<MachineSpec> _current =
+        new AtomicReference<>();
+    /** Service notifying me of changes, once started. */
+    private WatchService _watcher;
+}
@@ -0,0 +1,100 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the ConfigWatcher class.
+ *
+ * @author Amy Stanley
+ */
+public class ConfigWatcherTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration with two rotor slots. */
+    private static final String CONFIG1 =
+        "ABCD 2 1\n R R (AB) (CD)\n M MA (ABCD)\n";
+
+    /** A small configuration with three rotor slots. */
+    private static final String CONFIG2 =
+        "ABCD 3 2\n R R (AB) (CD)\n M MA (ABCD)\n N MB (ACBD)\n";
+
+    /** Return a new temporary file containing CONTENTS. */
+    private Path tempConfig(String contents) throws IOException {
+        Path file = Files.createTempFile("enigma", ".conf");
+        file.toFile().deleteOnExit();
+        Files.write(file, contents.getBytes(UTF_8));
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReload() throws IOException {
+        Path file = tempConfig(CONFIG1);
+        ConfigWatcher watcher = new ConfigWatcher(file);
+        MachineSpec first = watcher.get();
+        assertEquals(2, first.numRotors());
+        Files.write(file, CONFIG2.getBytes(UTF_8));
+        assertSame(first, watcher.get());
+        assertTrue(watcher.reload());
+        assertEquals(3, watcher.get().numRotors());
+        assertEquals(2, first.numRotors());
+    }
+
+    @Test
+    public void testInvalidReloadKeepsSpec() throws IOException {
+        Path file = tempConfig(CONFIG1);
+        ConfigWatcher watcher = new ConfigWatcher(file);
+        MachineSpec first = watcher.get();
+        Files.write(file, "ABCD 2 1\n R Q (AB) (CD)\n".getBytes(UTF_8));
+        assertFalse(watcher.reload());
+        assertSame(first, watcher.get());
+    }
+
+    @Test
+    public void testBadRotorReloadKeepsSpec() throws IOException {
+        String[] bad = {
+            "ABCD 3 2\n R R (AB) (CD)\n M MA (ABCD)\n N MB (A(C)\n",
+            "ABCD 3 2\n R R (AB) (CD)\n M MA (ABCD)\n N MB (AXBD)\n",
+            "ABCD 3 2\n R R (AB) (CD)\n M MA (ABCD)\n N MB (ACAD)\n",
+        };
+        Path file = tempConfig(CONFIG1);
+        ConfigWatcher watcher = new ConfigWatcher(file);
+        MachineSpec first = watcher.get();
+        for (String config : bad) {
+            Files.write(file, config.getBytes(UTF_8));
+            assertFalse(config, watcher.reload());
+            assertSame(first, watcher.get());
+        }
+    }
+
+    @Test
+    public void testWatchPicksUpChange() throws Exception {
+        Path file = tempConfig(CONFIG1);
+        try (ConfigWatcher watcher = new ConfigWatcher(file)) {
+            watcher.start();
+            Files.write(file, CONFIG2.getBytes(UTF_8));
+            for (int i = 0; i < 150 && watcher.get().numRotors() != 3;
+                 i += 1) {
+                Thread.sleep(100);
+            }
+            assertEquals(3, watcher.get().numRotors());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package enigma;
+
+/**
+ * The compiled form of a machine's plugboard and inserted rotors, which
+ * advances the rotor positions and converts one alphabet index.  The
+ * rotors are flattened into parallel arrays (which rotors move, where
+ * their notches are, and their conversion tables), and the positions are
+ * a plain int array, so that a whole keystroke runs as straight-line
+ * array code with no calls on the Rotor classes.  There are three final
+ * implementations, chosen by alphabet size when a machine is compiled so
+ * that small alphabets get the smallest tables: ByteEngine, whose byte
+ * tables are indexed by rotor setting as well as by input, and
+ * ShortEngine and IntEngine, which differ only in the width of their
+ * table entries.
+ *
+ * @author Amy Stanley
+ */
+abstract class Engine {
+
+    /** Largest alphabet whose indices fit in a byte table entry. */
+    static final int BYTE_LIMIT = 1 << 8;
+
+    /** Largest alphabet whose indices fit in a 16-bit table entry. */
+    static final int SHORT_LIMIT = 1 << 16;
+
+    /**
+     * Return an engine applying PLUGBOARD and ROTORS (ROTORS[0] being the
+     * reflector), using the narrowest table entries that can hold an
+     * index of their alphabet.
+     */
+    static Engine compile(Permutation plugboard, Rotor[] rotors) {
+        int size = plugboard.size();
+        if (size <= BYTE_LIMIT) {
+            return new ByteEngine(plugboard, rotors);
+        } else if (size <= SHORT_LIMIT) {
+            return new ShortEngine(plugboard, rotors);
+        } else {
+            return new IntEngine(plugboard, rotors);
+        }
+    }
+
+    /**
+     * An engine for ROTORS, recording their movement and notches.
+     */
+    Engine(Rotor[] rotors) {
+        int size = rotors[0].size();
+        _size = size;
+        _moving = new boolean[rotors.length];
+        _notches = new boolean[rotors.length * size];
+        for (int k = 0; k < rotors.length; k += 1) {
+            _moving[k] = rotors[k].rotates();
+            for (int p = 0; p < size && _moving[k]; p += 1) {
+                _notches[k * size + p] = rotors[k].atNotch(p);
+            }
+        }
+    }
+
+    /**
+     * Return the size of my alphabet.
+     */
+    final int size() {
+        return _size;
+    }
+
+    /**
+     * Advance the rotor positions POSNS (POSNS[k] being the setting of
+     * rotor #k) as one keystroke advances the rotors, and return the
+     * conversion of index C at the new positions.
+     */
+    final int step(int c, int[] posns) {
+        advance(posns);
+        return convert(c, posns);
+    }
+
+    /**
+     * Advance the rotor positions POSNS one keystroke: the fast rotor
+     * moves, and so does every moving rotor whose right neighbour is at a
+     * notch, and every rotor at a notch whose left neighbour moves.
+     * Each rotor is decided on the positions before any has moved.
+     */
+    final void advance(int[] posns) {
+        final int n = _size;
+        final int last = posns.length - 1;
+        final boolean[] moving = _moving;
+        final boolean[] notches = _notches;
+        for (int k = 0; k <= last; k += 1) {
+            if (!moving[k]) {
+                continue;
+            }
+            if (k == last || notches[(k + 1) * n + posns[k + 1]]
+                || (k > 0 && moving[k - 1] && notches[k * n + posns[k]])) {
+                int p = posns[k] + 1;
+                posns[k] = p == n ? 0 : p;
+            }
+        }
+    }
+
+    /**
+     * Return the result of converting index C (in the range 0..alphabet
+     * size - 1) through the plugboard, the rotors at positions POSNS
+     * (POSNS[k] being the setting of rotor #k), and back.  Does not
+     * advance anything.
+     */
+    abstract int convert(int c, int[] posns);
+
+    /**
+     * Return the table of PLUGBOARD: entry P is the image of index P.
+     */
+    static int[] plugboardTable(Permutation plugboard) {
+        int[] table = new int[plugboard.size()];
+        for (int p = 0; p < table.length; p += 1) {
+            table[p] = plugboard.permute(p);
+        }
+        return table;
+    }
+
+    /**
+     * Return the forward tables of ROTORS at setting 0, concatenated:
+     * entry K * size + P is the image of index P under rotor #K's
+     * permutation.
+     */
+    static int[] forwardTables(Rotor[] rotors) {
+        int size = rotors[0].size();
+        int[] table = new int[rotors.length * size];
+        for (int k = 0; k < rotors.length; k += 1) {
+            Permutation perm = rotors[k].permutation();
+            for (int p = 0; p < size; p += 1) {
+                table[k * size + p] = perm.permute(p);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Return the backward tables of ROTORS at setting 0, laid out as for
+     * forwardTables, using the inverse permutations.
+     */
+    static int[] backwardTables(Rotor[] rotors) {
+        int size = rotors[0].size();
+        int[] table = new int[rotors.length * size];
+        for (int k = 0; k < rotors.length; k += 1) {
+            Permutation perm = rotors[k].permutation();
+            for (int p = 0; p < size; p += 1) {
+                table[k * size + p] = perm.invert(p);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Return the setting-indexed tables of ROTORS, forward or, iff
+     * BACKWARD, backward, concatenated: entry (K * size + S) * size + P is
+     * the conversion of index P by rotor #K at setting S, as an unsigned
+     * byte.  Each rotor must have such tables (see Rotor.forwardTable).
+     */
+    static byte[] settingTables(Rotor[] rotors, boolean backward) {
+        int size = rotors[0].size();
+        byte[] table = new byte[rotors.length * size * size];
+        for (int k = 0; k < rotors.length; k += 1) {
+            byte[] rotor = backward ? rotors[k].backwardTable()
+                : rotors[k].forwardTable();
+            System.arraycopy(rotor, 0, table, k * size * size,
+                             size * size);
+        }
+        return table;
+    }
+
+    /** Size of my alphabet. */
+    private final int _size;
+    /** Whether each rotor moves. */
+    private final boolean[] _moving;
+    /** Entry K * size + P is true iff rotor #K moves and has a notch at
+     *  setting P. */
+    private final boolean[] _notches;
+}
@@ -0,0 +1,147 @@
+package enigma;
+
+/**
+ * Times one of the byte-, short- and int-table engines on the standard
+ * naval test machine (rotors B Beta III IV I at AXLE, with plugboard
+ * (HQ) (EX) (IP) (TR) (BY)), or with "lanes", Lanes.WIDTH standard
+ * machines at different settings converting in lockstep against the
+ * same machines converting one after another.  Run with
+ *     java -cp .. enigma.EngineBenchmark byte|short|int|lanes [KEYSTROKES]
+ * Each kind should be timed in its own JVM, so that the engine call in
+ * the timing loop sees a single class, as it does in a machine.  This is
+ * a measurement, not a test, and is not part of UnitTest.
+ *
+ * @author Amy Stanley
+ */
+public class EngineBenchmark {
+
+    /** Default number of keystrokes per timed run. */
+    private static final int KEYSTROKES = 50_000_000;
+
+    /** Number of timed runs, after as many warm-up runs. */
+    private static final int RUNS = 5;
+
+    /** The upper-case alphabet of the naval machines. */
+    private static final Alphabet UPPER = new Alphabet();
+
+    /** Configuration of the naval machine's rotors. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n";
+
+    /** Settings of the standard naval test machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Time the engine of kind ARGS[0] over ARGS[1] (optional)
+     *  keystrokes. */
+    public static void main(String... args) {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("no engine kind given");
+        }
+        int keystrokes =
+            args.length > 1 ? Integer.parseInt(args[1]) : KEYSTROKES;
+        if (args[0].equals("lanes")) {
+            timeLanes(keystrokes);
+            return;
+        }
+        Machine mach = navalMachine();
+        Rotor[] rotors = new Rotor[mach.numRotors()];
+        for (int k = 0; k < rotors.length; k += 1) {
+            rotors[k] = mach.getRotor(k);
+        }
+        Engine engine;
+        switch (args[0]) {
+        case "byte":
+            engine = new ByteEngine(mach.plugboard(), rotors);
+            break;
+        case "short":
+            engine = new ShortEngine(mach.plugboard(), rotors);
+            break;
+        case "int":
+            engine = new IntEngine(mach.plugboard(), rotors);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown engine " + args[0]);
+        }
+        for (int run = 0; run < 2 * RUNS; run += 1) {
+            long start = System.nanoTime();
+            int check = drive(engine, rotors.length, keystrokes);
+            long elapsed = System.nanoTime() - start;
+            if (run >= RUNS) {
+                System.out.printf("%-12s %6.2f ns/char  (%d)%n",
+                                  engine.getClass().getSimpleName(),
+                                  (double) elapsed / keystrokes, check);
+            }
+        }
+    }
+
+    /** Time converting KEYSTROKES keystrokes in Lanes.WIDTH messages of
+     *  equal length, each by its own machine, in lanes and one by one. */
+    private static void timeLanes(int keystrokes) {
+        int width = Lanes.WIDTH;
+        int len = keystrokes / width;
+        int[][] msgs = new int[width][len];
+        int[] lens = new int[width];
+        Machine[] machines = new Machine[width];
+        for (int j = 0; j < width; j += 1) {
+            lens[j] = len;
+            for (int i = 0; i < len; i += 1) {
+                msgs[j][i] = (i * 7 + j) % UPPER.size();
+            }
+            machines[j] = navalMachine();
+            machines[j].setRotors(String.format("A%c%c%c",
+                                                UPPER.toChar(j % 26),
+                                                UPPER.toChar(j / 26),
+                                                UPPER.toChar(j % 7)));
+        }
+        for (int run = 0; run < 2 * RUNS; run += 1) {
+            long start = System.nanoTime();
+            Lanes.convert(machines, msgs, lens);
+            long lanes = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int j = 0; j < width; j += 1) {
+                machines[j].convert(msgs[j], len, Strategy.FUSED);
+            }
+            long alone = System.nanoTime() - start;
+            if (run >= RUNS) {
+                System.out.printf("Lanes %6.2f ns/char, one by one %6.2f "
+                                  + "ns/char%n",
+                                  (double) lanes / (width * len),
+                                  (double) alone / (width * len));
+            }
+        }
+    }
+
+    /** Return a new standard naval test machine. */
+    private static Machine navalMachine() {
+        Machine mach = Main.readConfig(CONFIG).newMachine();
+        Main.setUp(mach, SETTINGS);
+        return mach;
+    }
+
+    /** Run ENGINE, whose machine has NUMROTORS rotors, for KEYSTROKES
+     *  keystrokes, stepping the rotors as an odometer over a repeating
+     *  input, and return a checksum of the output. */
+    private static int drive(Engine engine, int numRotors, int keystrokes) {
+        int[] posns = new int[numRotors];
+        int size = UPPER.size();
+        int sum = 0;
+        for (int i = 0; i < keystrokes; i += 1) {
+            for (int k = numRotors - 1; k > 1; k -= 1) {
+                posns[k] += 1;
+                if (posns[k] < size) {
+                    break;
+                }
+                posns[k] = 0;
+            }
+            sum += engine.convert(i % size, posns);
+        }
+        return sum;
+    }
+}
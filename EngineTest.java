@@ -0,0 +1,152 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the Engine classes.
+ *
+ * @author Amy Stanley
+ */
+public class EngineTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the result of converting C through PLUGBOARD and ROTORS at
+     *  POSNS one rotor at a time, as Machine does without an engine. */
+    private int reference(int c, Permutation plugboard, Rotor[] rotors,
+                          int[] posns) {
+        for (int k = 1; k < rotors.length; k += 1) {
+            rotors[k].set(posns[k]);
+        }
+        c = plugboard.permute(c);
+        for (int k = rotors.length - 1; k >= 0; k -= 1) {
+            c = rotors[k].convertForward(c);
+        }
+        for (int k = 1; k < rotors.length; k += 1) {
+            c = rotors[k].convertBackward(c);
+        }
+        return plugboard.permute(c);
+    }
+
+    /** Check that ENGINE agrees with the rotor-by-rotor conversion
+     *  through PLUGBOARD and ROTORS at positions of the two fast rotors
+     *  spread over the alphabet (all of them for 26 letters). */
+    private void checkEngine(Engine engine, Permutation plugboard,
+                             Rotor[] rotors) {
+        int size = plugboard.size();
+        int step = Math.max(1, size / 26);
+        int[] posns = new int[rotors.length];
+        posns[1] = size / 3;
+        for (int a = 0; a < size; a += step) {
+            for (int b = 0; b < size; b += step) {
+                if (rotors.length > 2) {
+                    posns[rotors.length - 2] = a;
+                }
+                posns[rotors.length - 1] = b;
+                for (int c = 0; c < size; c += 1) {
+                    assertEquals(reference(c, plugboard, rotors, posns),
+                                 engine.convert(c, posns));
+                }
+            }
+        }
+    }
+
+    /** Return the rotors named NAMES of the naval machine. */
+    private Rotor[] navalSlots(String... names) {
+        Rotor[] result = new Rotor[names.length];
+        ArrayList<Rotor> all = navalRotors();
+        for (int k = 0; k < names.length; k += 1) {
+            for (Rotor r : all) {
+                if (r.name().equals(names[k])) {
+                    result[k] = r;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Advance ROTORS one keystroke with the rotors' own methods, by the
+     *  rules Machine follows in verbose mode. */
+    private void referenceAdvance(Rotor[] rotors) {
+        boolean[] canMove = new boolean[rotors.length];
+        for (int i = 1; i < rotors.length; i += 1) {
+            if (rotors[i].rotates() && rotors[i].atNotch()
+                && rotors[i - 1].rotates()) {
+                canMove[i - 1] = canMove[i] = true;
+            }
+        }
+        canMove[rotors.length - 1] = true;
+        for (int i = 0; i < rotors.length; i += 1) {
+            if (canMove[i]) {
+                rotors[i].advance();
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testAdvanceMatchesRotors() {
+        Rotor[] rotors = navalSlots("B", "Beta", "III", "IV", "I");
+        Engine engine = Engine.compile(new Permutation("", UPPER), rotors);
+        String[] starts = { "AAAA", "AXLE", "AUIP", "AVJQ", "AUJQ" };
+        for (String start : starts) {
+            int[] posns = new int[rotors.length];
+            for (int k = 1; k < rotors.length; k += 1) {
+                posns[k] = UPPER.toInt(start.charAt(k - 1));
+                rotors[k].set(posns[k]);
+            }
+            for (int i = 0; i < 20000; i += 1) {
+                referenceAdvance(rotors);
+                engine.advance(posns);
+                for (int k = 0; k < rotors.length; k += 1) {
+                    assertEquals(start + " step " + i, rotors[k].setting(),
+                                 posns[k]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAllWidthsAgree() {
+        Rotor[] rotors = navalSlots("B", "Beta", "III", "IV", "I");
+        Permutation plugboard = new Permutation("(HQ) (EX) (IP)", UPPER);
+        checkEngine(new ByteEngine(plugboard, rotors), plugboard, rotors);
+        checkEngine(new ShortEngine(plugboard, rotors), plugboard, rotors);
+        checkEngine(new IntEngine(plugboard, rotors), plugboard, rotors);
+    }
+
+    @Test
+    public void testWidthChosenBySize() {
+        Rotor[] rotors = navalSlots("B", "Beta", "III", "IV", "I");
+        Permutation plugboard = new Permutation("", UPPER);
+        assertTrue(Engine.compile(plugboard, rotors) instanceof ByteEngine);
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < 300; i += 1) {
+            chars.appendCodePoint(0x100 + i);
+        }
+        Alphabet large = new Alphabet(chars.toString());
+        Rotor[] wide = {
+            new Reflector("R", new Permutation(
+                "(" + chars.substring(0, 2) + ")", large)),
+            new MovingRotor("M", new Permutation(
+                "(" + chars.substring(0, 299) + ")", large), ""),
+        };
+        Permutation widePlug = new Permutation("", large);
+        assertTrue(Engine.compile(widePlug, wide) instanceof ShortEngine);
+        checkEngine(new ShortEngine(widePlug, wide), widePlug, wide);
+    }
+}
@@ -0,0 +1,357 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A machine configuration, for converting messages in-process rather
+ * than by running Main.  A configuration is read from text in the format
+ * of Main's configuration files, and messages are converted under
+ * Settings, the contents of a settings line, each conversion starting
+ * afresh from its settings, just as a message line that follows the
+ * settings line in an input file would be.  For example,
+ * <pre>
+ *     Enigma enigma = Enigma.read(Paths.get("default.conf"));
+ *     Enigma.Settings key = Enigma.Settings.builder()
+ *         .rotors("B", "Beta", "III", "IV", "I").positions("AXLE")
+ *         .plug('H', 'Q').plug('E', 'X').build();
+ *     String secret = enigma.convert(key, "FROM HIS SHOULDER");
+ * </pre>
+ * Whitespace in messages is ignored, and converted messages are not
+ * grouped.  An Enigma is immutable, and may be used by any number of
+ * threads at once: each conversion borrows one of a pool of Sessions,
+ * which remember the compiled form of recent settings, so that repeated
+ * settings cost little to apply.  Errors in configurations, settings and
+ * messages are reported by throwing EnigmaException.
+ *
+ * @author Amy Stanley
+ */
+public final class Enigma {
+
+    /** Most idle sessions kept for reuse by one configuration. */
+    static final int POOL_SIZE = 64;
+
+    /**
+     * Return the configuration given by the text CONFIG.
+     */
+    public static Enigma parse(String config) {
+        return new Enigma(Main.readConfig(config));
+    }
+
+    /**
+     * Return the configuration given by the UTF-8 text read from IN,
+     * which is read to its end but not closed.
+     */
+    public static Enigma read(InputStream in) throws IOException {
+        return parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Return the configuration in FILE, decompressing it if its name
+     * ends in ".gz".
+     */
+    public static Enigma read(Path file) throws IOException {
+        try (InputStream in = Main.openInput(file)) {
+            return read(in);
+        }
+    }
+
+    /** A configuration for machines built to SPEC. */
+    private Enigma(MachineSpec spec) {
+        _spec = spec;
+    }
+
+    /**
+     * Return the number of rotor slots of my machines.
+     */
+    public int numRotors() {
+        return _spec.numRotors();
+    }
+
+    /**
+     * Return the number of pawls of my machines.
+     */
+    public int numPawls() {
+        return _spec.numPawls();
+    }
+
+    /**
+     * Return the conversion of MESSAGE under SETTINGS.
+     */
+    public String convert(Settings settings, CharSequence message) {
+        Session session = _sessions.acquire();
+        try {
+            int len = convertIndices(session, settings, message);
+            int[] indices = session.indices(len);
+            StringBuilder result = new StringBuilder(len);
+            for (int i = 0; i < len; i += 1) {
+                result.appendCodePoint(_spec.alphabet()
+                                       .toCodePoint(indices[i]));
+            }
+            return result.toString();
+        } finally {
+            _sessions.release(session);
+        }
+    }
+
+    /**
+     * Convert the characters MESSAGE[FROM .. TO-1] under SETTINGS into
+     * OUT, starting at OFFSET, and return the number of characters
+     * written, which is at most 2 * (TO - FROM).
+     */
+    public int convert(Settings settings, char[] message, int from, int to,
+                       char[] out, int offset) {
+        Session session = _sessions.acquire();
+        try {
+            int len = convertIndices(session, settings,
+                              CharBuffer.wrap(message, from, to - from));
+            int[] indices = session.indices(len);
+            int k = offset;
+            for (int i = 0; i < len; i += 1) {
+                k += Character.toChars(_spec.alphabet()
+                                       .toCodePoint(indices[i]), out, k);
+            }
+            return k - offset;
+        } finally {
+            _sessions.release(session);
+        }
+    }
+
+    /**
+     * Convert the UTF-8 text remaining in IN under SETTINGS, writing its
+     * conversion in UTF-8 to OUT.  IN is read to its limit.  If OUT has
+     * too little room, BufferOverflowException is thrown and neither
+     * buffer is changed.
+     */
+    public void convert(Settings settings, ByteBuffer in, ByteBuffer out) {
+        Session session = _sessions.acquire();
+        try {
+            int len = convertIndices(session, settings, utf8(in.duplicate()));
+            int[] indices = session.indices(len);
+            Alphabet alpha = _spec.alphabet();
+            int size = 0;
+            for (int i = 0; i < len; i += 1) {
+                size += utf8Length(alpha.toCodePoint(indices[i]));
+            }
+            if (out.remaining() < size) {
+                throw new BufferOverflowException();
+            }
+            for (int i = 0; i < len; i += 1) {
+                putUtf8(out, alpha.toCodePoint(indices[i]));
+            }
+            in.position(in.limit());
+        } finally {
+            _sessions.release(session);
+        }
+    }
+
+    /**
+     * Set SESSION up from SETTINGS, and convert the non-whitespace
+     * characters of MESSAGE into its scratch indices, returning their
+     * number.
+     */
+    private int convertIndices(Session session, Settings settings,
+                               CharSequence message) {
+        session.setUp(_spec, settings.toString());
+        Alphabet alpha = _spec.alphabet();
+        int[] indices = session.indices(message.length());
+        int len = 0;
+        for (int i = 0; i < message.length(); ) {
+            int c = Character.codePointAt(message, i);
+            i += Character.charCount(c);
+            if (!Machine.isSpace(c)) {
+                indices[len++] = alpha.toInt(c);
+            }
+        }
+        session.convert(indices, len);
+        return len;
+    }
+
+    /** Return the UTF-8 text remaining in IN, which is consumed.  Overlong
+     *  encodings, encoded surrogates and other malformed input are
+     *  errors. */
+    private static CharSequence utf8(ByteBuffer in) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(in);
+        } catch (CharacterCodingException excp) {
+            throw error("malformed UTF-8 input");
+        }
+    }
+
+    /** Return the number of bytes encoding code point CP in UTF-8. */
+    private static int utf8Length(int cp) {
+        return cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+    }
+
+    /** Write code point CP to OUT in UTF-8. */
+    private static void putUtf8(ByteBuffer out, int cp) {
+        int len = utf8Length(cp);
+        if (len == 1) {
+            out.put((byte) cp);
+            return;
+        }
+        out.put((byte) ((0xF00 >> len) | (cp >> (6 * (len - 1)))));
+        for (int j = len - 2; j >= 0; j -= 1) {
+            out.put((byte) (0x80 | ((cp >> (6 * j)) & 0x3F)));
+        }
+    }
+
+    /**
+     * The contents of a settings line: the rotors to insert, their
+     * initial positions, and the plugboard's cycles.  Settings are
+     * checked against a configuration only when they are used.
+     */
+    public static final class Settings {
+
+        /**
+         * Return the settings given by LINE, a settings line as in
+         * Main's input files, beginning with "*".
+         */
+        public static Settings parse(String line) {
+            String text = line.strip();
+            if (!text.startsWith("*")) {
+                throw error("settings line must begin with *");
+            }
+            return new Settings(text);
+        }
+
+        /**
+         * Return a builder for new settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        /** The settings of the settings line LINE. */
+        private Settings(String line) {
+            _line = line;
+        }
+
+        /**
+         * Return my settings line.
+         */
+        @Override
+        public String toString() {
+            return _line;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Settings
+                && ((Settings) obj)._line.equals(_line);
+        }
+
+        @Override
+        public int hashCode() {
+            return _line.hashCode();
+        }
+
+        /**
+         * Builds Settings from their parts.  The rotors and positions
+         * must be given; the plugboard is empty unless plugs are added.
+         */
+        public static final class Builder {
+
+            /**
+             * Insert the rotors named NAMES, reflector first.
+             */
+            public Builder rotors(String... names) {
+                for (String name : names) {
+                    checkToken(name);
+                }
+                _rotors = Arrays.asList(names.clone());
+                return this;
+            }
+
+            /**
+             * Set the initial positions of the rotors after the
+             * reflector to the characters of POSITIONS, in order.
+             */
+            public Builder positions(String positions) {
+                checkToken(positions);
+                _positions = positions;
+                return this;
+            }
+
+            /**
+             * Add a plug joining characters A and B.
+             */
+            public Builder plug(char a, char b) {
+                return plugboard("(" + a + b + ")");
+            }
+
+            /**
+             * Add the plugboard cycles CYCLES, written as in a settings
+             * line, such as "(HQ) (EX)".
+             */
+            public Builder plugboard(String cycles) {
+                String text = cycles.strip();
+                if (!text.isEmpty()) {
+                    if (!text.startsWith("(") || !text.endsWith(")")) {
+                        throw error("bad plugboard cycles: %s", cycles);
+                    }
+                    _plugboard.add(text);
+                }
+                return this;
+            }
+
+            /**
+             * Return the settings built.
+             */
+            public Settings build() {
+                if (_rotors == null || _rotors.isEmpty()
+                    || _positions == null) {
+                    throw error("settings need rotors and positions");
+                }
+                StringBuilder line = new StringBuilder("*");
+                for (String name : _rotors) {
+                    line.append(' ').append(name);
+                }
+                line.append(' ').append(_positions);
+                for (String cycles : _plugboard) {
+                    line.append(' ').append(cycles);
+                }
+                return new Settings(line.toString());
+            }
+
+            /** Check that TOKEN is a single word of a settings line. */
+            private static void checkToken(String token) {
+                if (token.isEmpty() || token.startsWith("(")
+                    || token.startsWith("*")
+                    || token.codePoints().anyMatch(Machine::isSpace)) {
+                    throw error("bad settings word: \"%s\"", token);
+                }
+            }
+
+            /** Names of the rotors, or null. */
+            private List<String> _rotors;
+            /** Initial positions, or null. */
+            private String _positions;
+            /** Plugboard cycles. */
+            private final List<String> _plugboard = new ArrayList<>();
+        }
+
+        /** My settings line. */
+        private final String _line;
+    }
+
+    /** The machines I describe. */
+    private final MachineSpec _spec;
+    /** Sessions for conversions. */
+    private final SessionPool _sessions = new SessionPool(POOL_SIZE, 0);
+}
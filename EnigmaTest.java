@@ -0,0 +1,229 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the library interface, Enigma.
+ *
+ * @author Amy Stanley
+ */
+public class EnigmaTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings line of the standard test machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return a configuration of the naval rotors over UPPER. */
+    private static String config() {
+        StringBuilder result = new StringBuilder(UPPER_STRING + "\n5 3\n");
+        for (String name : NAVALA.keySet()) {
+            String type;
+            if (name.equals("B") || name.equals("C")) {
+                type = "R";
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                type = "M" + NAVAL_NOTCHES.get(name);
+            } else {
+                type = "N";
+            }
+            result.append(String.format(" %s %s %s%n", name, type,
+                                        NAVALA.get(name)));
+        }
+        return result.toString();
+    }
+
+    /** Return the standard settings, made with a builder. */
+    private static Enigma.Settings built() {
+        return Enigma.Settings.builder()
+            .rotors("B", "Beta", "III", "IV", "I").positions("AXLE")
+            .plug('H', 'Q').plugboard("(EX) (IP)").plug('T', 'R')
+            .plugboard("(BY)").build();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvert() {
+        Enigma enigma = Enigma.parse(config());
+        assertEquals(5, enigma.numRotors());
+        assertEquals(3, enigma.numPawls());
+        Enigma.Settings settings = Enigma.Settings.parse(SETTINGS);
+        assertEquals(settings, built());
+        assertEquals(SETTINGS, built().toString());
+        for (int round = 0; round < 3; round += 1) {
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                         enigma.convert(settings,
+                                        "FROM HIS SHOULDER HIAWATHA"));
+        }
+        assertEquals("FROMHISSHOULDERHIAWATHA",
+                     enigma.convert(built(), "QVPQS OKOIL PUBKJ ZPISF XDW"));
+    }
+
+    @Test
+    public void testReadConfig() throws Exception {
+        byte[] bytes = config().getBytes(StandardCharsets.UTF_8);
+        Enigma fromStream = Enigma.read(new ByteArrayInputStream(bytes));
+        Path file = Files.createTempFile("enigma", ".conf");
+        try {
+            Files.write(file, bytes);
+            Enigma fromFile = Enigma.read(file);
+            for (Enigma enigma : new Enigma[] { fromStream, fromFile }) {
+                assertEquals("QVPQ", enigma.convert(built(), "FROM"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testArraysAndBuffers() {
+        Enigma enigma = Enigma.parse(config());
+        char[] message = "xxFROM HISyy".toCharArray();
+        char[] out = new char[20];
+        assertEquals(7, enigma.convert(built(), message, 2, 10, out, 3));
+        assertEquals("QVPQSOK", new String(out, 3, 7));
+        ByteBuffer in = ByteBuffer.wrap(
+            "FROM HIS".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer small = ByteBuffer.allocate(3);
+        try {
+            enigma.convert(built(), in, small);
+            fail("overflow not detected");
+        } catch (BufferOverflowException excp) {
+            assertEquals(0, in.position());
+            assertEquals(0, small.position());
+        }
+        ByteBuffer result = ByteBuffer.allocate(16);
+        enigma.convert(built(), in, result);
+        assertFalse(in.hasRemaining());
+        assertEquals("QVPQSOK",
+                     new String(result.array(), 0, result.position(),
+                                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testUnicode() {
+        Enigma enigma = Enigma.parse("\u00C9\u4E2D\uD83D\uDE00Z 2 1\n"
+                                     + " R R (\u00C9Z) (\u4E2D\uD83D\uDE00)\n"
+                                     + " M M\u00C9 (\u00C9\u4E2D)\n");
+        Enigma.Settings settings = Enigma.Settings.parse("* R M \u00C9");
+        String message = "\u00C9\u4E2D \uD83D\uDE00Z";
+        String expected = enigma.convert(settings, message);
+        ByteBuffer out = ByteBuffer.allocate(32);
+        enigma.convert(settings,
+                       ByteBuffer.wrap(message.getBytes(
+                                           StandardCharsets.UTF_8)), out);
+        assertEquals(expected, new String(out.array(), 0, out.position(),
+                                          StandardCharsets.UTF_8));
+        char[] chars = new char[16];
+        int n = enigma.convert(settings, message.toCharArray(), 0,
+                               message.length(), chars, 0);
+        assertEquals(expected, new String(chars, 0, n));
+    }
+
+    @Test
+    public void testMalformedUtf8() {
+        Enigma enigma = Enigma.parse(config());
+        byte[][] bad = {
+            {(byte) 0xC0, (byte) 0x80}, {(byte) 0xC1, (byte) 0x81},
+            {(byte) 0xE0, (byte) 0x81, (byte) 0x81},
+            {(byte) 0xED, (byte) 0xA0, (byte) 0x80},
+            {'A', (byte) 0x81}, {'A', (byte) 0xC3},
+        };
+        for (byte[] bytes : bad) {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            ByteBuffer out = ByteBuffer.allocate(16);
+            try {
+                enigma.convert(built(), in, out);
+                fail("malformed UTF-8 accepted: " + Arrays.toString(bytes));
+            } catch (EnigmaException excp) {
+                assertEquals("malformed UTF-8 input", excp.getMessage());
+                assertEquals(0, in.position());
+                assertEquals(0, out.position());
+            }
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        Enigma enigma = Enigma.parse(config());
+        String[] bad = { "* B Beta III IV Q AXLE", "* B Beta III IV I AX" };
+        for (String line : bad) {
+            try {
+                enigma.convert(Enigma.Settings.parse(line), "A");
+                fail("bad settings accepted: " + line);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        try {
+            enigma.convert(built(), "abc");
+            fail("character outside the alphabet accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            Enigma.Settings.builder().rotors("B", "Beta").build();
+            fail("settings without positions accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            Enigma.Settings.parse("B Beta III IV I AXLE");
+            fail("settings without * accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals("QVPQ", enigma.convert(built(), "FROM"));
+    }
+
+    @Test
+    public void testThreads() throws InterruptedException {
+        Enigma enigma = Enigma.parse(config());
+        List<Thread> threads = new ArrayList<>();
+        boolean[] ok = new boolean[8];
+        for (int t = 0; t < ok.length; t += 1) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                boolean good = true;
+                for (int i = 0; i < 200; i += 1) {
+                    good &= enigma.convert(built(), "FROM HIS SHOULDER")
+                        .equals("QVPQSOKOILPUBKJ");
+                    good &= enigma.convert(Enigma.Settings.parse(
+                                               "* C Gamma I II V ZZZZ"),
+                                           "QQQ").length() == 3;
+                }
+                ok[id] = good;
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (boolean good : ok) {
+            assertTrue(good);
+        }
+    }
+}
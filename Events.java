@@ -0,0 +1,121 @@
+package enigma;
+
+import java.io.Flushable;
+import java.io.IOException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events describing what the simulator is doing, so
+ * that a recording can relate GC and CPU samples to configuration loads,
+ * settings lines, conversion batches and output flushes.  Each event type
+ * has a TYPE, and callers construct events only if TYPE.isEnabled(), so
+ * that when nothing is recording the cost is one check and no
+ * allocation.  For example, "java -XX:StartFlightRecording=filename=
+ * enigma.jfr enigma.Main ..." records them all.
+ *
+ * @author Amy Stanley
+ */
+final class Events {
+
+    /** Not instantiable. */
+    private Events() {
+    }
+
+    /**
+     * Flush OUT, recording a Flush event from SOURCE if enabled.
+     */
+    static void flush(Flushable out, String source) throws IOException {
+        if (!Flush.TYPE.isEnabled()) {
+            out.flush();
+            return;
+        }
+        Flush event = new Flush();
+        event.begin();
+        out.flush();
+        event.source = source;
+        event.commit();
+    }
+
+    /** Reading of a configuration (see Main.readConfig). */
+    @Name("enigma.ConfigLoad")
+    @Label("Configuration Load")
+    @Category("Enigma")
+    @Description("Parsing of a configuration into a machine spec")
+    static final class ConfigLoad extends Event {
+        /** Type of these events. */
+        static final EventType TYPE = EventType.getEventType(ConfigLoad.class);
+
+        /** Length of the configuration text. */
+        @Label("Characters")
+        int length;
+        /** Size of the configured alphabet. */
+        @Label("Alphabet Size")
+        int alphabetSize;
+        /** Number of rotor slots. */
+        @Label("Rotor Slots")
+        int numRotors;
+        /** Number of pawls. */
+        @Label("Pawls")
+        int pawls;
+        /** Number of rotors described. */
+        @Label("Rotors Available")
+        int rotors;
+    }
+
+    /** Application of a settings line (see Main.setUp).  A Session set
+     *  up again from a settings line it remembers does not call
+     *  Main.setUp, and so records no event. */
+    @Name("enigma.Settings")
+    @Label("Settings")
+    @Category("Enigma")
+    @Description("Insertion, setting and plugging of a machine's rotors")
+    static final class Settings extends Event {
+        /** Type of these events. */
+        static final EventType TYPE = EventType.getEventType(Settings.class);
+
+        /** Names of the rotors inserted, from the reflector on. */
+        @Label("Rotors")
+        String rotors;
+        /** Number of plugboard cycles. */
+        @Label("Plugboard Cycles")
+        int plugboardCycles;
+    }
+
+    /** Conversion of a batch of message lines. */
+    @Name("enigma.Conversion")
+    @Label("Conversion Batch")
+    @Category("Enigma")
+    @Description("Conversion of message lines handed on together")
+    static final class Conversion extends Event {
+        /** Type of these events. */
+        static final EventType TYPE = EventType.getEventType(Conversion.class);
+
+        /** Number of message lines (or windows of lines) converted. */
+        @Label("Lines")
+        int lines;
+        /** Number of input characters converted. */
+        @Label("Characters")
+        long chars;
+    }
+
+    /** Flush of converted output. */
+    @Name("enigma.Flush")
+    @Label("Output Flush")
+    @Category("Enigma")
+    @Description("Flush of converted messages to their destination")
+    static final class Flush extends Event {
+        /** Type of these events. */
+        static final EventType TYPE = EventType.getEventType(Flush.class);
+
+        /** What is flushing: "pipeline" (including the pipelines Batch
+         *  runs serially) or "server". */
+        @Label("Source")
+        String source;
+    }
+}
@@ -0,0 +1,123 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the Events class.
+ *
+ * @author Amy Stanley
+ */
+public class EventsTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration with two rotor slots. */
+    private static final String CONFIG =
+        "ABCD 2 1\n R R (AB) (CD)\n M MA (ABCD)\n";
+
+    /** A settings line for CONFIG. */
+    private static final String SETTINGS = "* R M A (AC)";
+
+    /** Names of the event types recorded. */
+    private static final String[] NAMES = {
+        "enigma.ConfigLoad", "enigma.Settings", "enigma.Conversion",
+        "enigma.Flush",
+    };
+
+    /** Return the events in a recording of the work done by BODY. */
+    private List<RecordedEvent> record(Runnable body) throws IOException {
+        Path file = Files.createTempFile("enigma", ".jfr");
+        file.toFile().deleteOnExit();
+        try (Recording recording = new Recording()) {
+            for (String name : NAMES) {
+                recording.enable(name);
+            }
+            recording.start();
+            body.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    /** Return those of EVENTS named NAME. */
+    private List<RecordedEvent> named(List<RecordedEvent> events,
+                                      String name) {
+        List<RecordedEvent> result = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testEvents() throws IOException {
+        StringWriter output = new StringWriter();
+        List<RecordedEvent> events = record(() -> {
+            MachineSpec spec = Main.readConfig(CONFIG);
+            Main.setUp(spec.newMachine(), SETTINGS);
+            new Pipeline(() -> spec,
+                         new StringReader(SETTINGS + "\nABCA\nDD\n"),
+                         output).run();
+        });
+
+        List<RecordedEvent> loads = named(events, "enigma.ConfigLoad");
+        assertEquals(1, loads.size());
+        RecordedEvent load = loads.get(0);
+        assertEquals(CONFIG.length(), load.getInt("length"));
+        assertEquals(4, load.getInt("alphabetSize"));
+        assertEquals(2, load.getInt("numRotors"));
+        assertEquals(1, load.getInt("pawls"));
+        assertEquals(2, load.getInt("rotors"));
+
+        List<RecordedEvent> settings = named(events, "enigma.Settings");
+        assertEquals(2, settings.size());
+        for (RecordedEvent setting : settings) {
+            assertEquals("R M", setting.getString("rotors"));
+            assertEquals(1, setting.getInt("plugboardCycles"));
+        }
+
+        int lines = 0;
+        long chars = 0;
+        for (RecordedEvent conversion
+                 : named(events, "enigma.Conversion")) {
+            lines += conversion.getInt("lines");
+            chars += conversion.getLong("chars");
+        }
+        assertEquals(2, lines);
+        assertEquals(6, chars);
+
+        List<RecordedEvent> flushes = named(events, "enigma.Flush");
+        assertFalse(flushes.isEmpty());
+        for (RecordedEvent flush : flushes) {
+            assertEquals("pipeline", flush.getString("source"));
+        }
+        assertEquals(2, output.toString().split("\n").length);
+    }
+}
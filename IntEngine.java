@@ -0,0 +1,62 @@
+package enigma;
+
+/**
+ * An Engine for alphabets of any size, whose tables hold an int per
+ * entry.
+ *
+ * @author Amy Stanley
+ */
+final class IntEngine extends Engine {
+
+    /**
+     * An engine applying PLUGBOARD and ROTORS.
+     */
+    IntEngine(Permutation plugboard, Rotor[] rotors) {
+        super(rotors);
+        _size = plugboard.size();
+        _last = rotors.length - 1;
+        _plugboard = plugboardTable(plugboard);
+        _forward = forwardTables(rotors);
+        _backward = backwardTables(rotors);
+    }
+
+    @Override
+    int convert(int c, int[] posns) {
+        final int n = _size;
+        c = _plugboard[c];
+        for (int k = _last; k >= 0; k -= 1) {
+            int s = posns[k];
+            int x = c + s;
+            if (x >= n) {
+                x -= n;
+            }
+            c = (_forward[k * n + x]) - s;
+            if (c < 0) {
+                c += n;
+            }
+        }
+        for (int k = 1; k <= _last; k += 1) {
+            int s = posns[k];
+            int x = c + s;
+            if (x >= n) {
+                x -= n;
+            }
+            c = (_backward[k * n + x]) - s;
+            if (c < 0) {
+                c += n;
+            }
+        }
+        return _plugboard[c];
+    }
+
+    /** Size of my alphabet. */
+    private final int _size;
+    /** Index of my last (fast) rotor. */
+    private final int _last;
+    /** Plugboard table. */
+    private final int[] _plugboard;
+    /** Concatenated forward rotor tables. */
+    private final int[] _forward;
+    /** Concatenated backward rotor tables. */
+    private final int[] _backward;
+}
@@ -0,0 +1,379 @@
+package enigma;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The substitutions a machine will make in the keystrokes after its
+ * rotors reach some positions, computed ahead of need by a background
+ * thread.  The rotors step the same way whatever is typed, so while the
+ * thread that converts waits for input, a producer thread steps a copy
+ * of the positions on and fills blocks of BLOCK substitution tables, one
+ * row per keystroke, handing them over through a RingBuffer; converting
+ * a keystroke whose row is ready is then one lookup.  The producer works
+ * only once no conversion has been under way for GRACE_NANOS, as while
+ * input is awaited, and abandons a block when one starts, so that it
+ * takes little time from conversions that follow each other closely.
+ * When input arrives faster than it fills rows, the consumer converts
+ * through the engine itself and the producer later skips past the
+ * keystrokes it missed; an abandoned block is taken up again from its
+ * start, rather than from the origin.  A keystream is used by one
+ * thread at a time, and only for alphabets whose indices fit in a
+ * byte.  It may be started again at new positions any number of times;
+ * its producer ends when it is stopped or becomes unreachable.
+ *
+ * @author Amy Stanley
+ */
+final class Keystream {
+
+    /** Keystrokes per block of tables. */
+    static final int BLOCK = 1 << 8;
+
+    /** Number of blocks, which limits how far the producer runs ahead. */
+    static final int BLOCKS = 16;
+
+    /** Time without a conversion after which the producer works, in
+     *  nanoseconds. */
+    static final long GRACE_NANOS = 200_000;
+
+    /**
+     * An idle keystream for machines with NUMROTORS rotors over an
+     * alphabet of SIZE <= Engine.BYTE_LIMIT characters.
+     */
+    Keystream(int size, int numRotors) {
+        _size = size;
+        _positions = new int[numRotors];
+        _state = new State(size, numRotors);
+        CLEANER.register(this, _state::stop);
+        _state.producer.start();
+    }
+
+    /**
+     * Start me for the keystrokes of ENGINE after its rotors are at
+     * POSNS, which is not modified.
+     */
+    void start(Engine engine, int[] posns) {
+        drop();
+        _engine = engine;
+        _origin = new Origin(engine, posns);
+        System.arraycopy(posns, 0, _positions, 0, _positions.length);
+        _offset = 0;
+        _state.consumed = 0;
+        _state.origin = _origin;
+        wake();
+    }
+
+    /**
+     * Leave my producer idle until I am next started.  Until then, I
+     * can report my positions but not convert.
+     */
+    void pause() {
+        _state.origin = null;
+    }
+
+    /**
+     * Convert the alphabet indices MSG[FROM .. TO-1] in place, as the
+     * next TO - FROM keystrokes since I was started.
+     */
+    void convert(int[] msg, int from, int to) {
+        final int n = _size;
+        _state.busy = true;
+        int i = from;
+        while (i < to) {
+            if (_block == null) {
+                _block = next();
+            }
+            Block block = _block;
+            if (block == null) {
+                Engine engine = _engine;
+                int[] posns = _positions;
+                int end = Math.min(to, i + BLOCK);
+                _offset += end - i;
+                for (; i < end; i += 1) {
+                    msg[i] = engine.step(msg[i], posns);
+                }
+                continue;
+            }
+            int row = (int) (_offset - block.start);
+            int count = Math.min(to - i, BLOCK - row);
+            final byte[] table = block.table;
+            for (int k = row * n, end = i + count; i < end; i += 1, k += n) {
+                msg[i] = table[k + msg[i]] & 0xff;
+            }
+            _offset += count;
+            if (row + count == BLOCK) {
+                System.arraycopy(block.end, 0, _positions, 0,
+                                 _positions.length);
+                recycle(block);
+                _block = null;
+            }
+        }
+        _state.consumed = _offset;
+        _state.idleSince = System.nanoTime();
+        _state.busy = false;
+        wake();
+    }
+
+    /**
+     * Set POSNS to the rotor positions after the keystrokes converted
+     * since I was started.
+     */
+    void positions(int[] posns) {
+        Block block = _block;
+        if (block == null) {
+            System.arraycopy(_positions, 0, posns, 0, posns.length);
+        } else {
+            System.arraycopy(block.begin, 0, posns, 0, posns.length);
+            for (long k = block.start; k < _offset; k += 1) {
+                _engine.advance(posns);
+            }
+        }
+    }
+
+    /** Stop my producer.  I must not be used afterwards. */
+    void stop() {
+        _state.stop();
+    }
+
+    /** Return my producer thread, for testing. */
+    Thread producer() {
+        return _state.producer;
+    }
+
+    /** Return the number of keystrokes my producer has stepped its
+     *  positions through, for testing. */
+    long advanced() {
+        return _state.advanced;
+    }
+
+    /**
+     * Return the next block of tables, which holds keystroke _offset,
+     * or null if none is ready.  Blocks wholly before it, or filled
+     * before I was last started, are recycled.
+     */
+    private Block next() {
+        Block block;
+        while ((block = _state.full.poll()) != null) {
+            if (block.origin == _origin && block.start + BLOCK > _offset) {
+                return block;
+            }
+            recycle(block);
+        }
+        return null;
+    }
+
+    /** Recycle my current block and all filled blocks. */
+    private void drop() {
+        if (_block != null) {
+            recycle(_block);
+            _block = null;
+        }
+        for (Block block = _state.full.poll(); block != null;
+             block = _state.full.poll()) {
+            recycle(block);
+        }
+    }
+
+    /** Return BLOCK to my producer to be filled again. */
+    private void recycle(Block block) {
+        block.origin = null;
+        _state.free.put(block);
+        _state.free.publish();
+    }
+
+    /** Wake my producer if it is waiting. */
+    private void wake() {
+        if (_state.parked) {
+            LockSupport.unpark(_state.producer);
+        }
+    }
+
+    /** The engine and rotor positions a keystream was started with. */
+    private static final class Origin {
+        /** The origin ENGINE with rotors at POSNS, which is copied. */
+        Origin(Engine engine, int[] posns) {
+            this.engine = engine;
+            this.posns = posns.clone();
+        }
+
+        /** The engine. */
+        final Engine engine;
+        /** The rotor positions. */
+        final int[] posns;
+    }
+
+    /** A run of BLOCK keystrokes' substitution tables. */
+    private static final class Block {
+        /** A block for an alphabet of SIZE characters and NUMROTORS
+         *  rotors. */
+        Block(int size, int numRotors) {
+            table = new byte[BLOCK * size];
+            begin = new int[numRotors];
+            end = new int[numRotors];
+        }
+
+        /** Origin my tables were filled from, or null. */
+        Origin origin;
+        /** Number of keystrokes after the origin before my first. */
+        long start;
+        /** Entry I * size + C is the conversion of index C at my
+         *  keystroke I, as an unsigned byte. */
+        final byte[] table;
+        /** Rotor positions before my first keystroke. */
+        final int[] begin;
+        /** Rotor positions after my last keystroke. */
+        final int[] end;
+    }
+
+    /**
+     * What a keystream shares with its producer, which must not refer to
+     * the keystream itself, so that the keystream can become unreachable.
+     */
+    private static final class State implements Runnable {
+        /** State for a producer of tables for an alphabet of SIZE
+         *  characters and NUMROTORS rotors. */
+        State(int size, int numRotors) {
+            for (int k = 0; k < BLOCKS; k += 1) {
+                free.offer(new Block(size, numRotors));
+            }
+            free.publish();
+            producer = new Thread(this, "enigma-keystream");
+            producer.setDaemon(true);
+        }
+
+        /** Fill free blocks in turn while there is an origin and no
+         *  conversion has been under way for GRACE_NANOS, until
+         *  stopped. */
+        @Override
+        public void run() {
+            Origin current = null;
+            int[] p = null;
+            long offset = 0;
+            Block block = null;
+            while (_running) {
+                parked = true;
+                if (current != origin) {
+                    current = origin;
+                    p = current == null ? null : current.posns.clone();
+                    offset = 0;
+                }
+                if (block == null && current != null && !busy) {
+                    block = free.poll();
+                }
+                if (block == null || current == null || busy) {
+                    free.release();
+                    LockSupport.park(this);
+                    continue;
+                }
+                long wait = idleSince + GRACE_NANOS - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+                parked = false;
+                Engine engine = current.engine;
+                long from = offset;
+                for (long skip = consumed; offset < skip; offset += 1) {
+                    if ((offset - from) % CHECK == 0 && busy) {
+                        break;
+                    }
+                    engine.advance(p);
+                }
+                advanced += offset - from;
+                if (offset < consumed) {
+                    continue;
+                }
+                if (fill(block, current, p, offset)) {
+                    offset += BLOCK;
+                    full.put(block);
+                    full.publish();
+                    block = null;
+                } else {
+                    System.arraycopy(block.begin, 0, p, 0, p.length);
+                    offset = block.start;
+                }
+            }
+        }
+
+        /**
+         * Fill BLOCK with the tables of ORIGIN's keystrokes OFFSET
+         * onwards, advancing P from their positions before.  Returns
+         * false, leaving P partly advanced and the positions before in
+         * BLOCK.begin, if a conversion starts meanwhile.
+         */
+        private boolean fill(Block block, Origin origin, int[] p,
+                             long offset) {
+            Engine engine = origin.engine;
+            int n = engine.size();
+            block.origin = origin;
+            block.start = offset;
+            System.arraycopy(p, 0, block.begin, 0, p.length);
+            byte[] table = block.table;
+            for (int i = 0; i < BLOCK; i += 1) {
+                if (i % CHECK == 0 && busy) {
+                    advanced += i;
+                    return false;
+                }
+                engine.advance(p);
+                for (int c = 0; c < n; c += 1) {
+                    table[i * n + c] = (byte) engine.convert(c, p);
+                }
+            }
+            System.arraycopy(p, 0, block.end, 0, p.length);
+            advanced += BLOCK;
+            return true;
+        }
+
+        /** Keystrokes filled between checks for a conversion. */
+        private static final int CHECK = 16;
+
+        /** Stop the producer. */
+        void stop() {
+            _running = false;
+            LockSupport.unpark(producer);
+        }
+
+        /** The producer. */
+        final Thread producer;
+        /** Blocks waiting to be filled. */
+        final RingBuffer<Block> free = new RingBuffer<>(2 * BLOCKS);
+        /** Filled blocks, in order. */
+        final RingBuffer<Block> full = new RingBuffer<>(2 * BLOCKS);
+        /** Where the keystrokes to tabulate start, or null if none are
+         *  wanted. */
+        volatile Origin origin;
+        /** Number of keystrokes after the origin that the consumer has
+         *  converted, as of the end of its last conversion. */
+        volatile long consumed;
+        /** True while the consumer is converting. */
+        volatile boolean busy;
+        /** Value of System.nanoTime() when the consumer last finished
+         *  converting. */
+        volatile long idleSince;
+        /** True while the producer is idle or about to be. */
+        volatile boolean parked;
+        /** Number of keystrokes the producer has stepped through. */
+        volatile long advanced;
+        /** False once the producer should stop. */
+        private volatile boolean _running = true;
+    }
+
+    /** Stops the producers of keystreams that become unreachable. */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /** State shared with my producer. */
+    private final State _state;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Rotor positions after the keystrokes converted so far, while
+     *  _block is null. */
+    private final int[] _positions;
+    /** Where I was last started, or null. */
+    private Origin _origin;
+    /** Engine whose conversions I make. */
+    private Engine _engine;
+    /** Number of keystrokes converted since I was started. */
+    private long _offset;
+    /** Block holding keystroke _offset, or null. */
+    private Block _block;
+}
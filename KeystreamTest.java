@@ -0,0 +1,219 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for Keystream and the PRECOMPUTED
+ * strategy of Machine.
+ *
+ * @author Amy Stanley
+ */
+public class KeystreamTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Length of the test message, more than the producer runs ahead. */
+    private static final int LENGTH = 3 * Keystream.BLOCK * Keystream.BLOCKS
+        + 17;
+
+    /** Lengths of the pieces in which the message is converted. */
+    private static final int[] PIECES = {
+        1, 7, Keystream.BLOCK - 8, Keystream.BLOCK, 3 * Keystream.BLOCK + 1
+    };
+
+    /** Return LEN random alphabet indices of the upper-case alphabet. */
+    private static int[] message(int len) {
+        Random random = new Random(len);
+        int[] result = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = random.nextInt(UPPER.size());
+        }
+        return result;
+    }
+
+    /** Return a keystream started at the current state of M. */
+    private static Keystream keystream(Machine M) {
+        Keystream result = new Keystream(UPPER.size(), M.numRotors());
+        result.start(M.engine(), M.positions());
+        return result;
+    }
+
+    /** Convert MSG on a fresh standard machine in pieces of the lengths
+     *  in PIECES, in turn, with a keystream, pausing PAUSE milliseconds
+     *  before each, and check the result and the positions after each
+     *  piece against converting key by key. */
+    private static void checkPieces(int[] msg, int pause)
+        throws InterruptedException {
+        Machine expected = navalMachine();
+        Machine M = navalMachine();
+        Keystream keystream = keystream(M);
+        int[] posns = new int[M.numRotors()];
+        int[] got = msg.clone();
+        for (int i = 0, k = 0; i < got.length; k += 1) {
+            int to = Math.min(got.length, i + PIECES[k % PIECES.length]);
+            Thread.sleep(pause);
+            keystream.convert(got, i, to);
+            for (; i < to; i += 1) {
+                assertEquals("keystroke " + i, expected.convert(msg[i]),
+                             got[i]);
+            }
+            keystream.positions(posns);
+            assertArrayEquals("positions after " + to,
+                              expected.positions(), posns);
+        }
+        keystream.stop();
+    }
+
+    /** An engine converting as another does, but slowly, so that the
+     *  producer is still filling a block when a conversion starts. */
+    private static final class SlowEngine extends Engine {
+        /** An engine for the rotors of M, converting as its engine
+         *  does. */
+        SlowEngine(Machine M) {
+            super(rotors(M));
+            _engine = M.engine();
+        }
+
+        @Override
+        int convert(int c, int[] posns) {
+            long until = System.nanoTime() + SLOW_NANOS;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+            return _engine.convert(c, posns);
+        }
+
+        /** Return the rotors of M, reflector first. */
+        private static Rotor[] rotors(Machine M) {
+            Rotor[] result = new Rotor[M.numRotors()];
+            for (int k = 0; k < result.length; k += 1) {
+                result[k] = M.getRotor(k);
+            }
+            return result;
+        }
+
+        /** The engine whose conversions I make. */
+        private final Engine _engine;
+    }
+
+    /** Time SlowEngine takes per conversion, in nanoseconds. */
+    private static final long SLOW_NANOS = 2_000;
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testProducerAhead() throws InterruptedException {
+        checkPieces(message(LENGTH), 2);
+    }
+
+    @Test
+    public void testProducerBehind() throws InterruptedException {
+        checkPieces(message(LENGTH), 0);
+        int[] msg = message(LENGTH);
+        Machine expected = navalMachine();
+        Machine M = navalMachine();
+        Keystream keystream = keystream(M);
+        int[] got = msg.clone();
+        keystream.convert(got, 0, got.length);
+        for (int i = 0; i < msg.length; i += 1) {
+            assertEquals(expected.convert(msg[i]), got[i]);
+        }
+        keystream.stop();
+    }
+
+    @Test
+    public void testStop() throws InterruptedException {
+        Machine M = navalMachine();
+        Keystream keystream = keystream(M);
+        Thread producer = keystream.producer();
+        assertTrue(producer.isDaemon());
+        Thread.sleep(5);
+        keystream.stop();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+    }
+
+    @Test
+    public void testRestart() throws InterruptedException {
+        int[] msg = message(LENGTH);
+        Machine expected = navalMachine();
+        Machine M = navalMachine();
+        Keystream keystream = keystream(M);
+        for (int round = 0; round < 3; round += 1) {
+            expected.setRotors("AXL" + (char) ('A' + round));
+            M.setRotors("AXL" + (char) ('A' + round));
+            keystream.start(M.engine(), M.positions());
+            Thread.sleep(2);
+            int[] got = msg.clone();
+            int len = (round + 1) * Keystream.BLOCK + round;
+            keystream.convert(got, 0, len);
+            for (int i = 0; i < len; i += 1) {
+                assertEquals(expected.convert(msg[i]), got[i]);
+            }
+            keystream.pause();
+        }
+        keystream.stop();
+    }
+
+    @Test
+    public void testMachine() throws InterruptedException {
+        int[] msg = message(LENGTH);
+        Machine expected = navalMachine();
+        Machine M = navalMachine();
+        for (int round = 0; round < 2; round += 1) {
+            expected.setRotors("AXLE");
+            M.setRotors("AXLE");
+            int[] got = msg.clone();
+            int split = 2 * Keystream.BLOCK + 3;
+            assertEquals(Strategy.PRECOMPUTED,
+                         M.convert(got, split, Strategy.PRECOMPUTED));
+            Thread.sleep(2);
+            int[] rest = Arrays.copyOfRange(got, split, got.length - 1);
+            assertEquals(Strategy.PRECOMPUTED,
+                         M.convert(rest, rest.length, Strategy.PRECOMPUTED));
+            System.arraycopy(rest, 0, got, split, rest.length);
+            got[got.length - 1] = M.convert(got[got.length - 1]);
+            for (int i = 0; i < msg.length; i += 1) {
+                assertEquals(expected.convert(msg[i]), got[i]);
+            }
+            assertArrayEquals(expected.positions(), M.positions());
+        }
+    }
+
+    @Test
+    public void testAbandonedBlockResumes() throws InterruptedException {
+        int piece = 8 * Keystream.BLOCK;
+        int[] msg = message(8 * piece);
+        Machine expected = navalMachine();
+        Machine M = navalMachine();
+        Keystream keystream = new Keystream(UPPER.size(), M.numRotors());
+        keystream.start(new SlowEngine(M), M.positions());
+        int[] got = msg.clone();
+        for (int i = 0; i < msg.length; i += piece) {
+            Thread.sleep(3);
+            keystream.convert(got, i, i + piece);
+        }
+        for (int i = 0; i < msg.length; i += 1) {
+            assertEquals("keystroke " + i, expected.convert(msg[i]),
+                         got[i]);
+        }
+        long advanced = keystream.advanced();
+        keystream.stop();
+        assertTrue("producer stepped " + advanced + " times",
+                   advanced < msg.length + piece);
+    }
+}
@@ -0,0 +1,336 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Converts up to WIDTH messages at once, each by a machine of its own, in
+ * lockstep.  Each machine is a lane: the lanes' rotor positions and
+ * current characters are held in lane-parallel arrays (entry K * width +
+ * L for rotor #K of lane L), so that one pass over a keystroke steps and
+ * converts every lane, rotor by rotor.  The lanes' table lookups are
+ * independent of each other, so they overlap in the processor where one
+ * machine's keystroke is a chain of lookups, each waiting on the last.
+ * The lanes' rotor tables are shared wherever their rotors are, so a
+ * group of machines built from one configuration needs little more table
+ * space than one.  Lanes are for alphabets whose indices fit in a byte;
+ * other machines convert their messages alone.
+ *
+ * @author Amy Stanley
+ */
+final class Lanes {
+
+    /** Most lanes converted at once. */
+    static final int WIDTH = 64;
+
+    /**
+     * Convert the first LENS[J] alphabet indices of MSGS[J] in place by
+     * MACHINES[J], for each J, as MACHINES[J].convert(MSGS[J], LENS[J])
+     * would, in groups of lanes of like machines.  The machines must be
+     * distinct.
+     */
+    static void convert(Machine[] machines, int[][] msgs, int[] lens) {
+        int count = machines.length;
+        if (msgs.length != count || lens.length != count) {
+            throw error("%d machines for %d messages", count, msgs.length);
+        }
+        Map<Machine, Boolean> seen = new IdentityHashMap<>();
+        for (Machine machine : machines) {
+            if (seen.put(machine, true) != null) {
+                throw error("machine used for two messages");
+            }
+        }
+        int[] group = new int[WIDTH];
+        boolean[] done = new boolean[count];
+        for (int j = 0; j < count; j += 1) {
+            if (done[j]) {
+                continue;
+            }
+            if (Main.verbose() || !fits(machines[j])) {
+                machines[j].convert(msgs[j], lens[j]);
+                continue;
+            }
+            int width = 0;
+            for (int i = j; i < count && width < WIDTH; i += 1) {
+                if (!done[i] && like(machines[j], machines[i])) {
+                    group[width++] = i;
+                    done[i] = true;
+                }
+            }
+            new Lanes(machines, msgs, lens, group, width).run();
+        }
+    }
+
+    /** Return true iff MACHINE can be a lane. */
+    private static boolean fits(Machine machine) {
+        return machine.alphabet().size() <= Engine.BYTE_LIMIT
+            && machine.getRotor(0).forwardTable() != null;
+    }
+
+    /** Return true iff machines A and B can be lanes of one group. */
+    private static boolean like(Machine a, Machine b) {
+        return a.alphabet().size() == b.alphabet().size()
+            && a.numRotors() == b.numRotors() && fits(b);
+    }
+
+    /**
+     * The lanes converting MSGS[GROUP[L]][0 .. LENS[GROUP[L]]-1] by
+     * MACHINES[GROUP[L]], for L < WIDTH, longest message first.
+     */
+    private Lanes(Machine[] machines, int[][] msgs, int[] lens, int[] group,
+                  int width) {
+        Integer[] order = new Integer[width];
+        for (int l = 0; l < width; l += 1) {
+            order[l] = group[l];
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(lens[b], lens[a]));
+        Machine first = machines[order[0]];
+        int n = first.alphabet().size();
+        int r = first.numRotors();
+        _size = n;
+        _width = width;
+        _numRotors = r;
+        _machines = new Machine[width];
+        _msgs = new int[width][];
+        _lens = new int[width];
+        _plugboards = new byte[width * n];
+        _forward = new int[r * width];
+        _backward = new int[r * width];
+        _moving = new boolean[r * width];
+        _notches = new boolean[r * width * n];
+        _positions = new int[r * width];
+        _forwardBases = new int[r * width];
+        _backwardBases = new int[r * width];
+        _due = new boolean[width];
+        Map<byte[], Integer> offsets = new IdentityHashMap<>();
+        List<byte[]> distinct = new ArrayList<>();
+        for (int l = 0; l < width; l += 1) {
+            Machine machine = machines[order[l]];
+            _machines[l] = machine;
+            _msgs[l] = msgs[order[l]];
+            _lens[l] = lens[order[l]];
+            Permutation plugboard = machine.plugboard();
+            for (int c = 0; c < n; c += 1) {
+                _plugboards[l * n + c] = (byte) plugboard.permute(c);
+            }
+            int[] posns = machine.positions();
+            for (int k = 0; k < r; k += 1) {
+                int j = k * width + l;
+                Rotor rotor = machine.getRotor(k);
+                _moving[j] = rotor.rotates();
+                for (int p = 0; p < n && _moving[j]; p += 1) {
+                    _notches[j * n + p] = rotor.atNotch(p);
+                }
+                _forward[j] = offset(rotor.forwardTable(), offsets, distinct);
+                _backward[j] = offset(rotor.backwardTable(), offsets,
+                                      distinct);
+                set(l, k, posns[k]);
+            }
+        }
+        for (int l = 0; l < width; l += 1) {
+            _due[l] = due(l);
+        }
+        _tables = new byte[distinct.size() * n * n];
+        for (int t = 0; t < distinct.size(); t += 1) {
+            System.arraycopy(distinct.get(t), 0, _tables, t * n * n,
+                             n * n);
+        }
+    }
+
+    /**
+     * Return the offset at which TABLE, an n * n setting table, will be
+     * in _tables, given that OFFSETS maps the tables in DISTINCT to
+     * theirs, adding it to both if it is not there.
+     */
+    private static int offset(byte[] table, Map<byte[], Integer> offsets,
+                              List<byte[]> distinct) {
+        Integer result = offsets.get(table);
+        if (result == null) {
+            result = distinct.size() * table.length;
+            offsets.put(table, result);
+            distinct.add(table);
+        }
+        return result;
+    }
+
+    /**
+     * Set rotor #K of lane L to setting P, updating the lane's bases.
+     */
+    private void set(int l, int k, int p) {
+        int j = k * _width + l;
+        _positions[j] = p;
+        _forwardBases[j] = _forward[j] + p * _size;
+        _backwardBases[j] = _backward[j] + p * _size;
+    }
+
+    /**
+     * Convert every lane's message, and leave its machine's rotors where
+     * the conversion leaves them.  Each keystroke is made in all lanes
+     * at once, a rotor at a time: the lanes' lookups through a rotor are
+     * independent of each other, so the processor overlaps them.
+     */
+    private void run() {
+        final int n = _size;
+        final int w = _width;
+        final int last = _numRotors - 1;
+        final byte[] tables = _tables;
+        final byte[] plugboards = _plugboards;
+        final int[] forward = _forwardBases;
+        final int[] backward = _backwardBases;
+        final int[][] msgs = _msgs;
+        final int[] chars = new int[w];
+        int active = w;
+        for (int i = 0; active > 0; i += 1) {
+            while (active > 0 && _lens[active - 1] <= i) {
+                active -= 1;
+            }
+            advance(active);
+            for (int l = 0; l < active; l += 1) {
+                chars[l] = plugboards[l * n + msgs[l][i]] & MASK;
+            }
+            for (int k = last, j = last * w; k >= 0; k -= 1, j -= w) {
+                for (int l = 0; l < active; l += 1) {
+                    chars[l] = tables[forward[j + l] + chars[l]] & MASK;
+                }
+            }
+            for (int k = 1, j = w; k <= last; k += 1, j += w) {
+                for (int l = 0; l < active; l += 1) {
+                    chars[l] = tables[backward[j + l] + chars[l]] & MASK;
+                }
+            }
+            for (int l = 0; l < active; l += 1) {
+                msgs[l][i] = plugboards[l * n + chars[l]] & MASK;
+            }
+        }
+        int[] lane = new int[last + 1];
+        for (int l = 0; l < w; l += 1) {
+            for (int k = 0; k <= last; k += 1) {
+                lane[k] = _positions[k * w + l];
+            }
+            _machines[l].setPositions(lane);
+        }
+    }
+
+    /**
+     * Advance the rotors of the first ACTIVE lanes one keystroke, as
+     * Engine.advance does for one machine.  Usually only a lane's fast
+     * rotor moves, which _due records.
+     */
+    private void advance(int active) {
+        final int n = _size;
+        final int w = _width;
+        final int fast = (_numRotors - 1) * w;
+        final boolean[] due = _due;
+        final boolean[] moving = _moving;
+        final boolean[] notches = _notches;
+        final int[] posns = _positions;
+        final int[] forward = _forward, backward = _backward;
+        final int[] forwardBases = _forwardBases;
+        final int[] backwardBases = _backwardBases;
+        for (int l = 0; l < active; l += 1) {
+            if (due[l]) {
+                advanceAll(l);
+                continue;
+            }
+            int j = fast + l;
+            int p = posns[j] + 1;
+            p = p == n ? 0 : p;
+            posns[j] = p;
+            forwardBases[j] = forward[j] + p * n;
+            backwardBases[j] = backward[j] + p * n;
+            due[l] = moving[j - w] && notches[j * n + p];
+        }
+    }
+
+    /**
+     * Advance the rotors of lane L one keystroke, deciding each on the
+     * settings before any has moved.
+     */
+    private void advanceAll(int l) {
+        final int n = _size;
+        final int w = _width;
+        final int last = _numRotors - 1;
+        final boolean[] moving = _moving;
+        final boolean[] notches = _notches;
+        final int[] posns = _positions;
+        for (int k = 0, j = l; k <= last; k += 1, j += w) {
+            if (moving[j]
+                && (k == last || notches[(j + w) * n + posns[j + w]]
+                    || (k > 0 && moving[j - w] && notches[j * n + posns[j]]))) {
+                int p = posns[j] + 1;
+                set(l, k, p == n ? 0 : p);
+            }
+        }
+        _due[l] = due(l);
+    }
+
+    /**
+     * Return true unless the next keystroke of lane L moves its fast
+     * rotor alone.
+     */
+    private boolean due(int l) {
+        final int n = _size;
+        final int w = _width;
+        final int last = _numRotors - 1;
+        final boolean[] moving = _moving;
+        final boolean[] notches = _notches;
+        final int[] posns = _positions;
+        if (last == 0 || !moving[last * w + l]) {
+            return true;
+        }
+        for (int k = 0, j = l; k < last; k += 1, j += w) {
+            if (moving[j]
+                && (notches[(j + w) * n + posns[j + w]]
+                    || (k > 0 && moving[j - w] && notches[j * n + posns[j]]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Mask recovering an unsigned table entry. */
+    private static final int MASK = 0xFF;
+
+    /** Size of the lanes' alphabet. */
+    private final int _size;
+    /** Number of lanes. */
+    private final int _width;
+    /** Number of rotors in each lane. */
+    private final int _numRotors;
+    /** The lanes' machines. */
+    private final Machine[] _machines;
+    /** The lanes' messages. */
+    private final int[][] _msgs;
+    /** The lanes' message lengths, in decreasing order. */
+    private final int[] _lens;
+    /** Entry L * size + C is lane L's plugboard image of index C. */
+    private final byte[] _plugboards;
+    /** The distinct setting tables of the lanes' rotors (see
+     *  Rotor.forwardTable), concatenated, as unsigned bytes. */
+    private final byte[] _tables;
+    /** Entry K * width + L is the offset in _tables of the forward
+     *  table of lane L's rotor #K. */
+    private final int[] _forward;
+    /** As for _forward, for the backward tables. */
+    private final int[] _backward;
+    /** Entry K * width + L is true iff lane L's rotor #K moves. */
+    private final boolean[] _moving;
+    /** Entry (K * width + L) * size + P is true iff lane L's rotor #K
+     *  moves and has a notch at setting P. */
+    private final boolean[] _notches;
+    /** Entry K * width + L is the setting of lane L's rotor #K. */
+    private final int[] _positions;
+    /** Entry K * width + L is the offset in _tables of the row of lane
+     *  L's rotor #K at its setting, forward. */
+    private final int[] _forwardBases;
+    /** As for _forwardBases, backward. */
+    private final int[] _backwardBases;
+    /** Entry L is false iff lane L's next keystroke moves only its fast
+     *  rotor. */
+    private final boolean[] _due;
+}
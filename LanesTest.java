@@ -0,0 +1,137 @@
+package enigma;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the Lanes class.
+ *
+ * @author Amy Stanley
+ */
+public class LanesTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Moving rotors of the naval machines. */
+    private static final String[] MOVING = {"I", "II", "III", "IV", "V"};
+
+    /** Return a standard machine with rotors, setting and plugboard
+     *  chosen by RANDOM. */
+    private static Machine randomMachine(Random random) {
+        String[] rotors = {
+            random.nextBoolean() ? "B" : "C",
+            random.nextBoolean() ? "Beta" : "Gamma",
+            MOVING[random.nextInt(5)], MOVING[random.nextInt(5)],
+            MOVING[random.nextInt(5)]
+        };
+        while (rotors[3].equals(rotors[2])) {
+            rotors[3] = MOVING[random.nextInt(5)];
+        }
+        while (rotors[4].equals(rotors[2]) || rotors[4].equals(rotors[3])) {
+            rotors[4] = MOVING[random.nextInt(5)];
+        }
+        StringBuilder setting = new StringBuilder();
+        for (int k = 0; k < 4; k += 1) {
+            setting.append(UPPER.toChar(random.nextInt(UPPER.size())));
+        }
+        char a = UPPER.toChar(random.nextInt(13));
+        char b = UPPER.toChar(13 + random.nextInt(13));
+        return navalMachine(rotors, setting.toString(),
+                            "(" + a + b + ")");
+    }
+
+    /** Return LEN random alphabet indices chosen by RANDOM. */
+    private static int[] message(Random random, int len) {
+        int[] result = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = random.nextInt(UPPER.size());
+        }
+        return result;
+    }
+
+    /** Check that converting MSGS by MACHINES in lanes matches converting
+     *  each key by key on a copy made by COPIES, and leaves the same
+     *  positions. */
+    private static void checkLanes(Machine[] machines, Machine[] copies,
+                                   int[][] msgs, int[] lens) {
+        int[][] want = new int[msgs.length][];
+        for (int j = 0; j < msgs.length; j += 1) {
+            want[j] = msgs[j].clone();
+            for (int i = 0; i < lens[j]; i += 1) {
+                want[j][i] = copies[j].convert(msgs[j][i]);
+            }
+        }
+        Lanes.convert(machines, msgs, lens);
+        for (int j = 0; j < msgs.length; j += 1) {
+            assertArrayEquals("message " + j, want[j], msgs[j]);
+            assertArrayEquals("positions " + j, copies[j].positions(),
+                              machines[j].positions());
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testManyKeys() {
+        int count = 2 * Lanes.WIDTH + 5;
+        Machine[] machines = new Machine[count];
+        Machine[] copies = new Machine[count];
+        int[][] msgs = new int[count][];
+        int[] lens = new int[count];
+        for (int j = 0; j < count; j += 1) {
+            machines[j] = randomMachine(new Random(j));
+            copies[j] = randomMachine(new Random(j));
+            Random random = new Random(-j);
+            lens[j] = j % 7 == 0 ? 0 : random.nextInt(2000);
+            msgs[j] = message(random, lens[j] + random.nextInt(3));
+        }
+        checkLanes(machines, copies, msgs, lens);
+        checkLanes(machines, copies, msgs, lens);
+    }
+
+    @Test
+    public void testUnlikeMachines() {
+        String[] short4 = {"B", "III", "IV", "I"};
+        Machine[] machines = new Machine[3];
+        Machine[] copies = new Machine[3];
+        for (int j = 0; j < 3; j += 2) {
+            machines[j] = navalMachine();
+            copies[j] = navalMachine();
+        }
+        for (Machine[] row : new Machine[][] { machines, copies }) {
+            row[1] = new Machine(UPPER, 4, 3, navalRotors());
+            row[1].insertRotors(short4);
+            row[1].setRotors("QEV");
+            row[1].setPlugboard(new Permutation("(AZ)", UPPER));
+        }
+        Random random = new Random(3);
+        int[][] msgs = { message(random, 500), message(random, 900),
+                         message(random, 30) };
+        checkLanes(machines, copies, msgs, new int[] { 500, 900, 30 });
+    }
+
+    @Test
+    public void testDuplicateMachine() {
+        Machine M = navalMachine();
+        try {
+            Lanes.convert(new Machine[] { M, M },
+                          new int[][] { new int[1], new int[1] },
+                          new int[] { 1, 1 });
+            fail("machine accepted twice");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
@@ -2,6 +2,9 @@ package enigma;
 
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static enigma.EnigmaException.*;
 
@@ -19,12 +22,23 @@ class Machine {
      */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, RotorCatalog.of(allRotors));
+    }
+
+    /**
+     * A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     * and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     * in CATALOG.
+     */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorCatalog catalog) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
-        _allRotors = allRotors.toArray(new Rotor[0]);
+        _catalog = catalog;
         _rotors = new Rotor[_numRotors];
-        _plugboard = new Permutation("", _alphabet);
+        _positions = new int[_numRotors];
+        _canMove = new boolean[_numRotors];
+        _plugboard = Permutation.intern("", _alphabet);
     }
 
     /**
@@ -44,9 +58,12 @@ class Machine {
     /**
      * Return Rotor #K, where Rotor #0 is the reflector, and Rotor
      * #(numRotors()-1) is the fast Rotor.  Modifying this Rotor has
-     * undefined results.
+     * undefined results.  Its setting is current as of this call, but
+     * is not updated by later conversions until the rotor is fetched
+     * again.
      */
     Rotor getRotor(int k) {
+        syncRotors();
         return _rotors[k];
     }
 
@@ -60,28 +77,27 @@ class Machine {
      * Initially, all rotors are set at their 0 setting.
      */
     void insertRotors(String[] rotors) {
-        int count = 0;
+        syncRotors();
         for (int i = 0; i < rotors.length; i++) {
-            for (int j = 0; j < _allRotors.length; j++) {
-                if (rotors[i].equals(_allRotors[j].name())) {
-                    _rotors[i] = _allRotors[j];
-                    count++;
-                }
-            }
-            if (count == 0) {
+            Rotor rotor = _catalog.get(rotors[i]);
+            if (rotor == null) {
                 throw error("Bad rotor Name");
             }
+            _rotors[i] = rotor;
         }
-        for (int i = 0; i < _rotors.length; i++) {
-            for (int j = i + 1; j < _rotors.length; j++) {
-                if (_rotors[i] == _rotors[j]) {
-                    throw error("Duplicate rotor Name");
-                }
+        _loaded = false;
+        forgetKey();
+        HashSet<String> names = new HashSet<>();
+        for (Rotor rotor : _rotors) {
+            if (!names.add(rotor.name())) {
+                throw error("Duplicate rotor Name");
             }
         }
         if (!_rotors[0].reflecting()) {
             throw error("Reflector in wrong place");
         }
+        _engine = null;
+        _volume = 0;
     }
 
     /**
@@ -90,14 +106,45 @@ class Machine {
      * to the leftmost rotor setting (not counting the reflector).
      */
     void setRotors(String setting) {
-        if (setting.length() != _numRotors - 1) {
+        syncRotors();
+        _loaded = false;
+        forgetKey();
+        _keyPending = true;
+        _keyOffset = 0;
+        int[] posns = setting.codePoints().toArray();
+        if (posns.length != _numRotors - 1) {
             throw error("Incorrect String Length of Setting");
         }
         for (int i = 1; i < _rotors.length; i++) {
-            _rotors[i].set(setting.charAt(i - 1));
-            if (!_alphabet.contains(setting.charAt(i - 1))) {
+            if (!_alphabet.contains(posns[i - 1])) {
                 throw error("Character in String Setting not in alphabet");
             }
+            _rotors[i].set(_alphabet.toInt(posns[i - 1]));
+        }
+    }
+
+    /**
+     * Return the current settings of my rotors, that of the rotor in slot
+     * K being at index K.
+     */
+    int[] positions() {
+        syncRotors();
+        int[] result = new int[_numRotors];
+        for (int k = 0; k < _numRotors; k += 1) {
+            result[k] = _rotors[k].setting();
+        }
+        return result;
+    }
+
+    /**
+     * Set my rotors to POSNS, as returned by positions().
+     */
+    void setPositions(int[] posns) {
+        syncRotors();
+        _loaded = false;
+        forgetKey();
+        for (int k = 0; k < _numRotors; k += 1) {
+            _rotors[k].set(posns[k]);
         }
     }
 
@@ -112,7 +159,21 @@ class Machine {
      * Set the plugboard to PLUGBOARD.
      */
     void setPlugboard(Permutation plugboard) {
+        stopKeystream();
         _plugboard = plugboard;
+        _engine = null;
+        _volume = 0;
+        if (!_keyPending) {
+            forgetKey();
+        }
+    }
+
+    /**
+     * Have convert(int[], int) use STRATEGY, or if it is null, the
+     * cheapest strategy according to Strategy.choose.
+     */
+    void setStrategy(Strategy strategy) {
+        _strategy = strategy;
     }
 
     /**
@@ -121,32 +182,367 @@ class Machine {
      * the machine.
      */
     int convert(int c) {
-        advanceRotors();
+        if (_keyOffset >= 0) {
+            _keyOffset += 1;
+        }
         if (Main.verbose()) {
-            System.err.printf("[");
-            for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
-            }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+            syncRotors();
+            _loaded = false;
+            advanceRotors();
+            return convertVerbosely(c);
+        }
+        Engine engine = engine();
+        loadPositions();
+        _synced = false;
+        return engine.step(c, _positions);
+    }
+
+    /**
+     * Convert the first LEN alphabet indices of MSG in place, advancing
+     * the machine before each, as LEN calls of convert(int) would.  The
+     * strategy used is the one set by setStrategy or, if none is,
+     * the cheapest for LEN, my alphabet and my key, according to
+     * Strategy.choose.
+     */
+    void convert(int[] msg, int len) {
+        if (len == 0) {
+            return;
         }
-        c = plugboard().permute(c);
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+            for (int i = 0; i < len; i += 1) {
+                msg[i] = convert(msg[i]);
+            }
+            return;
+        }
+        Strategy strategy = _strategy;
+        if (strategy == null) {
+            findKey();
+            Codebook.Entry entry = _keyEntry;
+            int booked = 0, sightings = 0;
+            if (entry != null && entry.book != null) {
+                booked = Math.max(0, Math.min(len, entry.book.length()
+                                              - _keyOffset));
+            } else if (entry != null && _keyOffset < Codebook.LIMIT) {
+                sightings = entry.sightings;
+            }
+            _volume += len;
+            strategy = Strategy.choose(len, _alphabet.size(), _numRotors,
+                                       _engine == null ? _volume : 0,
+                                       booked, sightings);
+        }
+        Strategy.record(convert(msg, len, strategy), len);
+    }
+
+    /**
+     * Convert the first LEN > 0 alphabet indices of MSG in place as for
+     * convert(MSG, LEN), using STRATEGY if possible, and return the
+     * strategy used.  CACHED falls back to FUSED unless my rotors are
+     * still within a codebook's reach of the key they were last set to,
+     * and PARALLEL to FUSED if LEN is too short to divide.  PRECOMPUTED
+     * keeps a Keystream running ahead of my rotors until my state is
+     * next changed, examined or converted another way, and falls back to
+     * FUSED if my alphabet is too large for its tables.
+     */
+    Strategy convert(int[] msg, int len, Strategy strategy) {
+        if (strategy != Strategy.PRECOMPUTED) {
+            stopKeystream();
+        }
+        findKey();
+        int offset = _keyOffset;
+        switch (strategy) {
+        case SCALAR:
+            convertScalar(msg, 0, len);
+            break;
+        case PARALLEL:
+            if (!convertParallel(msg, len)) {
+                strategy = Strategy.FUSED;
+            }
+            break;
+        case CACHED:
+            if (!convertCached(msg, len, offset)) {
+                strategy = Strategy.FUSED;
+            }
+            break;
+        case PRECOMPUTED:
+            if (!convertPrecomputed(msg, len)) {
+                strategy = Strategy.FUSED;
+            }
+            break;
+        default:
+            convertFused(msg, 0, len);
+            break;
+        }
+        if (offset >= 0) {
+            _keyOffset = offset + len;
+        }
+        return strategy;
+    }
+
+    /** Load _positions from my rotors' settings if they are not there. */
+    private void loadPositions() {
+        stopKeystream();
+        if (!_loaded) {
+            for (int k = 0; k < _numRotors; k += 1) {
+                _positions[k] = _rotors[k].setting();
+            }
+            _loaded = true;
         }
+    }
+
+    /** Convert MSG[FROM .. TO-1] through my rotor objects. */
+    private void convertScalar(int[] msg, int from, int to) {
+        syncRotors();
+        _loaded = false;
+        for (int i = from; i < to; i += 1) {
+            advanceRotors();
+            msg[i] = _plugboard.permute(applyRotors(
+                _plugboard.permute(msg[i])));
+        }
+    }
+
+    /** Convert MSG[FROM .. TO-1] through my engine. */
+    private void convertFused(int[] msg, int from, int to) {
+        Engine engine = engine();
+        loadPositions();
+        _synced = false;
+        int[] posns = _positions;
+        for (int i = from; i < to; i += 1) {
+            msg[i] = engine.step(msg[i], posns);
+        }
+    }
+
+    /**
+     * Convert MSG[0 .. LEN-1] in parallel chunks, returning false, having
+     * done nothing, if there would be fewer than two.
+     */
+    private boolean convertParallel(int[] msg, int len) {
+        int chunks = Math.min(Strategy.workers() * CHUNKS_PER_WORKER,
+                              len / MIN_CHUNK);
+        if (chunks < 2) {
+            convertFused(msg, 0, len);
+            return false;
+        }
+        Engine engine = engine();
+        loadPositions();
+        _synced = false;
+        int[] posns = _positions;
+        int chunk = (len + chunks - 1) / chunks;
+        int[][] starts = new int[chunks][];
+        for (int j = 0; j < chunks; j += 1) {
+            starts[j] = posns.clone();
+            for (int i = j * chunk; i < Math.min(len, (j + 1) * chunk);
+                 i += 1) {
+                engine.advance(posns);
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new Chunks(engine, msg, len, chunk,
+                                                    starts, 0, chunks));
+        return true;
+    }
+
+    /**
+     * Convert MSG[0 .. LEN-1], which begins OFFSET keystrokes after my
+     * key, by its codebook as far as it reaches and then by my engine,
+     * building the codebook if there is none.  Returns false, having
+     * converted MSG by my engine alone, if my key is not known or the
+     * codebook does not reach OFFSET.
+     */
+    private boolean convertCached(int[] msg, int len, int offset) {
+        Codebook.Entry entry = _keyEntry;
+        if (entry == null || offset < 0
+            || (entry.book == null && offset >= Codebook.LIMIT)) {
+            convertFused(msg, 0, len);
+            return false;
+        }
+        if (entry.book == null) {
+            entry.book = new Codebook(engine(), entry.positions,
+                                      Codebook.length(offset + len));
+        }
+        Codebook book = entry.book;
+        int booked = Math.min(len, book.length() - offset);
+        if (booked <= 0) {
+            convertFused(msg, 0, len);
+            return false;
+        }
+        book.convert(msg, 0, booked, offset);
+        book.positions(offset + booked, _positions);
+        _loaded = true;
+        _synced = false;
+        convertFused(msg, booked, len);
+        return true;
+    }
+
+    /**
+     * Convert MSG[0 .. LEN-1] by my keystream, starting one at my current
+     * positions if there is none.  Returns false, having converted MSG by
+     * my engine, if my alphabet is too large for a keystream.
+     */
+    private boolean convertPrecomputed(int[] msg, int len) {
+        if (_alphabet.size() > Engine.BYTE_LIMIT) {
+            convertFused(msg, 0, len);
+            return false;
+        }
+        if (!_streaming) {
+            Engine engine = engine();
+            loadPositions();
+            if (_keystream == null) {
+                _keystream = new Keystream(_alphabet.size(), _numRotors);
+            }
+            _keystream.start(engine, _positions);
+            _streaming = true;
+            _synced = false;
+        }
+        _keystream.convert(msg, 0, len);
+        return true;
+    }
+
+    /**
+     * Pause my keystream, if it is running, taking back from it the
+     * positions it has advanced my rotors to.
+     */
+    private void stopKeystream() {
+        if (_streaming) {
+            _streaming = false;
+            _keystream.positions(_positions);
+            _keystream.pause();
+            _loaded = true;
+            _synced = false;
+        }
+    }
+
+    /**
+     * If my rotors were set since my last conversion, record the key
+     * they were set to, and look up its codebook entry.
+     */
+    private void findKey() {
+        if (!_keyPending) {
+            return;
+        }
+        _keyPending = false;
+        if (_keyOffset != 0 || _alphabet.size() > Engine.BYTE_LIMIT) {
+            forgetKey();
+            return;
+        }
+        Object[] parts = new Object[_numRotors + 2];
+        parts[0] = _catalog;
+        parts[1] = _plugboard;
+        for (int k = 0; k < _numRotors; k += 1) {
+            parts[k + 2] = _rotors[k].name();
+        }
+        if (_shelf == null) {
+            _shelf = new Codebook.Shelf();
+        }
+        _keyEntry = _shelf.sight(parts, positions());
+    }
+
+    /** Record that my rotors are not at a known key. */
+    private void forgetKey() {
+        _keyPending = false;
+        _keyOffset = -1;
+        _keyEntry = null;
+    }
+
+    /** The chunks numbered LO to HI-1 of a parallel conversion. */
+    private static final class Chunks extends RecursiveAction {
+        /** Chunks LO .. HI-1 of MSG[0 .. LEN-1], each CHUNK keystrokes,
+         *  to be converted by ENGINE.  STARTS[J] is the rotor positions
+         *  at the start of chunk J, which its conversion advances. */
+        Chunks(Engine engine, int[] msg, int len, int chunk, int[][] starts,
+               int lo, int hi) {
+            _engine = engine;
+            _msg = msg;
+            _len = len;
+            _chunk = chunk;
+            _starts = starts;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Chunks(_engine, _msg, _len, _chunk, _starts,
+                                     _lo, mid),
+                          new Chunks(_engine, _msg, _len, _chunk, _starts,
+                                     mid, _hi));
+                return;
+            }
+            int[] posns = _starts[_lo];
+            int end = Math.min(_len, (_lo + 1) * _chunk);
+            for (int i = _lo * _chunk; i < end; i += 1) {
+                _msg[i] = _engine.step(_msg[i], posns);
+            }
+        }
+
+        /** Engine converting the chunks. */
+        private final Engine _engine;
+        /** Message being converted. */
+        private final int[] _msg;
+        /** Length of the message. */
+        private final int _len;
+        /** Keystrokes per chunk. */
+        private final int _chunk;
+        /** Rotor positions at the start of each chunk. */
+        private final int[][] _starts;
+        /** First chunk. */
+        private final int _lo;
+        /** Chunk after the last. */
+        private final int _hi;
+    }
+
+    /**
+     * Bring my rotors' settings up to date with the positions advanced
+     * by my engine, if they are behind.
+     */
+    private void syncRotors() {
+        stopKeystream();
+        if (!_synced) {
+            for (int k = 0; k < _numRotors; k += 1) {
+                _rotors[k].set(_positions[k]);
+            }
+            _synced = true;
+        }
+    }
+
+    /**
+     * Returns the result of converting the input character C as for
+     * convert(int), once the machine has advanced, tracing each step on
+     * the standard error.
+     */
+    private int convertVerbosely(int c) {
+        System.err.printf("[");
+        for (int r = 1; r < numRotors(); r += 1) {
+            System.err.printf("%c",
+                    alphabet().toCodePoint(getRotor(r).setting()));
+        }
+        System.err.printf("] %c -> ", alphabet().toCodePoint(c));
+        c = plugboard().permute(c);
+        System.err.printf("%c -> ", alphabet().toCodePoint(c));
         c = applyRotors(c);
         c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
-        }
+        System.err.printf("%c%n", alphabet().toCodePoint(c));
         return c;
     }
 
     /**
-     * Advance all rotors to their next position.
+     * Return the compiled form of my plugboard and rotors, compiling it
+     * if they have changed.  It stays valid, and does not change, after
+     * they change again.
+     */
+    Engine engine() {
+        if (_engine == null) {
+            _engine = Engine.compile(_plugboard, _rotors);
+        }
+        return _engine;
+    }
+
+    /**
+     * Advance all rotors to their next position, as Engine.advance does
+     * for the positions, for verbose mode.
      */
     private void advanceRotors() {
-        boolean[] canMove = new boolean[numRotors()];
+        boolean[] canMove = _canMove;
         for (int i = 1; i < numRotors(); i++) {
             boolean currRotor = _rotors[i].rotates() && _rotors[i].atNotch();
             boolean leftRotor = _rotors[i - 1].rotates();
@@ -162,6 +558,7 @@ class Machine {
         for (int i = 0; i < numRotors(); i++) {
             if (canMove[i]) {
                 _rotors[i].advance();
+                canMove[i] = false;
             }
         }
     }
@@ -182,19 +579,41 @@ class Machine {
 
     /**
      * Returns the encoding/decoding of MSG, updating the state of
-     * the rotors accordingly.
+     * the rotors accordingly.  Whitespace in MSG is ignored.
      */
     String convert(String msg) {
-        String output = "";
-        msg = msg.replaceAll("\\s", "");
-        for (int i = 0; i < msg.length(); i++) {
-            int intVal = _alphabet.toInt(msg.charAt(i));
-            char encoded = _alphabet.toChar(convert(intVal));
-            output += encoded;
+        int[] indices = new int[msg.length()];
+        int len = 0;
+        for (int i = 0; i < msg.length(); ) {
+            int cp = msg.codePointAt(i);
+            i += Character.charCount(cp);
+            if (!isSpace(cp)) {
+                indices[len++] = _alphabet.toInt(cp);
+            }
         }
-        return output;
+        convert(indices, len);
+        StringBuilder output = new StringBuilder(len);
+        for (int i = 0; i < len; i += 1) {
+            output.appendCodePoint(_alphabet.toCodePoint(indices[i]));
+        }
+        return output.toString();
     }
 
+    /**
+     * Return true iff code point C is whitespace as matched by "\\s" in
+     * a regular expression, and so is ignored in messages.
+     */
+    static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+            || c == '\f' || c == '\r';
+    }
+
+    /** Most chunks per worker of a parallel conversion. */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    /** Fewest keystrokes in a chunk of a parallel conversion. */
+    private static final int MIN_CHUNK = 1 << 12;
+
     /**
      * Common alphabet of my rotors.
      */
@@ -207,7 +626,39 @@ class Machine {
     private Permutation _plugboard;
     /** Array of Rotors actively used in the machine. */
     private Rotor[] _rotors;
-    /** Array of all rotor possibilities in the machine, of
-     * which only some are selected from this collection. */
-    private Rotor[] _allRotors;
+    /** Settings of my rotors, which my engine advances, when _loaded. */
+    private int[] _positions;
+    /** Which rotors advance on this keystroke; all false between
+     *  keystrokes. */
+    private boolean[] _canMove;
+    /** True iff _positions holds my rotors' settings, which conversions
+     *  advance there rather than in the rotors. */
+    private boolean _loaded;
+    /** True iff my rotors' settings are up to date with _positions. */
+    private boolean _synced = true;
+    /** Keystream for PRECOMPUTED conversions, or null if none yet. */
+    private Keystream _keystream;
+    /** True iff _keystream is running, and holds my rotor positions in
+     *  place of _positions. */
+    private boolean _streaming;
+    /** Compiled plugboard and rotors, or null if they have changed. */
+    private Engine _engine;
+    /** Keystrokes converted since my rotors or plugboard last changed,
+     *  while my engine is not compiled. */
+    private long _volume;
+    /** True iff my rotors have been set and not yet converted with. */
+    private boolean _keyPending;
+    /** Number of keystrokes since my rotors were set, or -1 if unknown
+     *  (as after setPositions). */
+    private int _keyOffset = -1;
+    /** What my shelf knows of the key my rotors were set to, or null. */
+    private Codebook.Entry _keyEntry;
+    /** Keys my rotors have been set to, or null if none yet. */
+    private Codebook.Shelf _shelf;
+    /** All rotor possibilities in the machine, of which only some are
+     * selected from this collection. */
+    private final RotorCatalog _catalog;
+    /** Strategy of every conversion of a run, or null to choose one
+     *  for each. */
+    private Strategy _strategy;
 }
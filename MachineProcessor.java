@@ -0,0 +1,286 @@
+package enigma;
+
+import java.util.concurrent.Flow;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A reactive stage that encrypts a stream of message chunks with a
+ * single machine session.  Each chunk received from upstream produces
+ * exactly one converted chunk downstream, and the rotors carry their
+ * state from one chunk to the next, so the concatenation of the output
+ * is the conversion of the concatenation of the input.  Demand is passed
+ * straight through to the upstream publisher, so at most the requested
+ * number of chunks is ever in flight.  Signals are sent downstream one
+ * at a time, without holding any lock; a terminal signal arriving from
+ * upstream before a subscriber does is held until it has subscribed.
+ *
+ * @author Amy Stanley
+ */
+abstract class MachineProcessor<T> implements Flow.Processor<T, T> {
+
+    /**
+     * A processor converting chunks with MACHINE, which must already
+     * have its rotors and plugboard set.
+     */
+    MachineProcessor(Machine machine) {
+        _machine = machine;
+    }
+
+    /**
+     * Return a processor that converts chunks of message text with
+     * MACHINE.  As for Machine.convert(String), whitespace is dropped.
+     */
+    static MachineProcessor<String> forText(Machine machine) {
+        return new MachineProcessor<String>(machine) {
+            @Override
+            String convert(Machine m, String chunk) {
+                return m.convert(chunk);
+            }
+        };
+    }
+
+    /**
+     * Return a processor that converts chunks of alphabet indices with
+     * MACHINE.  Each chunk is converted into a fresh array.
+     */
+    static MachineProcessor<int[]> forIndices(Machine machine) {
+        return new MachineProcessor<int[]>(machine) {
+            @Override
+            int[] convert(Machine m, int[] chunk) {
+                int[] result = chunk.clone();
+                m.convert(result, result.length);
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Return the conversion of CHUNK using M, advancing its rotors.
+     */
+    abstract T convert(Machine m, T chunk);
+
+    /**
+     * Return the machine this processor drives.
+     */
+    Machine machine() {
+        return _machine;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        boolean accepted;
+        synchronized (this) {
+            accepted = _downstream == null;
+            if (accepted) {
+                _downstream = subscriber;
+                _emitting = true;
+            }
+        }
+        if (!accepted) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(error("processor already subscribed"));
+            return;
+        }
+        try {
+            subscriber.onSubscribe(new Downstream());
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (subscription == null) {
+            throw new NullPointerException("subscription");
+        }
+        long pending;
+        boolean cancelled;
+        synchronized (this) {
+            if (_upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+            pending = _pendingDemand;
+            cancelled = _cancelled;
+            _pendingDemand = 0;
+        }
+        if (cancelled) {
+            subscription.cancel();
+        } else if (pending > 0) {
+            subscription.request(pending);
+        }
+    }
+
+    @Override
+    public void onNext(T chunk) {
+        if (chunk == null) {
+            throw new NullPointerException("chunk");
+        }
+        Flow.Subscriber<? super T> downstream;
+        synchronized (this) {
+            if (_done || _downstream == null) {
+                return;
+            }
+            downstream = _downstream;
+        }
+        T converted;
+        try {
+            converted = convert(_machine, chunk);
+        } catch (RuntimeException excp) {
+            _upstream.cancel();
+            terminate(excp);
+            return;
+        }
+        synchronized (this) {
+            if (_done) {
+                return;
+            }
+            _emitting = true;
+        }
+        try {
+            downstream.onNext(converted);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (throwable == null) {
+            throw new NullPointerException("throwable");
+        }
+        terminate(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        terminate(null);
+    }
+
+    /**
+     * Send downstream the terminal signal onError(FAILURE), or
+     * onComplete() if FAILURE is null, unless one has been sent already.
+     * The signal is held while another signal is being delivered, or
+     * until a subscriber arrives, and then sent by release().
+     */
+    private void terminate(Throwable failure) {
+        Flow.Subscriber<? super T> downstream;
+        synchronized (this) {
+            if (_done) {
+                return;
+            }
+            _done = true;
+            _failure = failure;
+            if (_downstream == null || _emitting) {
+                _held = true;
+                return;
+            }
+            downstream = _downstream;
+        }
+        signal(downstream, failure);
+    }
+
+    /**
+     * Record that a signal to my subscriber has been delivered, and send
+     * any terminal signal held meanwhile.
+     */
+    private void release() {
+        Flow.Subscriber<? super T> downstream;
+        Throwable failure;
+        synchronized (this) {
+            _emitting = false;
+            if (!_held) {
+                return;
+            }
+            _held = false;
+            downstream = _downstream;
+            failure = _failure;
+        }
+        signal(downstream, failure);
+    }
+
+    /**
+     * Send DOWNSTREAM onError(FAILURE), or onComplete() if FAILURE is
+     * null.
+     */
+    private void signal(Flow.Subscriber<? super T> downstream,
+                        Throwable failure) {
+        if (failure == null) {
+            downstream.onComplete();
+        } else {
+            downstream.onError(failure);
+        }
+    }
+
+    /**
+     * The subscription handed to my downstream subscriber.  Requests are
+     * forwarded upstream one for one, or held until upstream arrives.
+     */
+    private class Downstream implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                terminate(new IllegalArgumentException(
+                        "non-positive request: " + n));
+                return;
+            }
+            Flow.Subscription upstream;
+            synchronized (MachineProcessor.this) {
+                upstream = _upstream;
+                if (upstream == null) {
+                    _pendingDemand = _pendingDemand + n < 0
+                            ? Long.MAX_VALUE : _pendingDemand + n;
+                    return;
+                }
+            }
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription upstream;
+            synchronized (MachineProcessor.this) {
+                _cancelled = true;
+                upstream = _upstream;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+    }
+
+    /** The machine session whose rotor state spans all chunks. */
+    private final Machine _machine;
+    /** My sole subscriber, or null before subscription. */
+    private Flow.Subscriber<? super T> _downstream;
+    /** Subscription to my publisher, or null before onSubscribe. */
+    private Flow.Subscription _upstream;
+    /** Demand requested downstream before upstream subscribed. */
+    private long _pendingDemand;
+    /** True once downstream has cancelled. */
+    private boolean _cancelled;
+    /** True once a terminal signal has been sent downstream or held. */
+    private boolean _done;
+    /** True while a signal is being delivered to my subscriber. */
+    private boolean _emitting;
+    /** True if a terminal signal awaits the end of delivery of another
+     *  signal, or the arrival of a subscriber. */
+    private boolean _held;
+    /** The failure to signal downstream, or null for completion. */
+    private Throwable _failure;
+}
@@ -0,0 +1,268 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the MachineProcessor class.
+ *
+ * @author Amy Stanley
+ */
+public class MachineProcessorTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A subscriber that records what it receives, requesting one item
+     *  at a time up to a limit of LIMIT items. */
+    private static class Collector<T> implements Flow.Subscriber<T> {
+        Collector(long limit) {
+            _limit = limit;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(T item) {
+            synchronized (this) {
+                items.add(item);
+            }
+            if (items.size() < _limit) {
+                _subscription.request(1);
+            } else {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+
+        final List<T> items = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable failure;
+        volatile boolean completed;
+        private final long _limit;
+        private Flow.Subscription _subscription;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testChunksCarryRotorState() throws Exception {
+        String[] chunks = {"FROMH", "ISSHOULDER", "", "HI AWA", "THA"};
+        MachineProcessor<String> proc =
+            MachineProcessor.forText(navalMachine());
+        Collector<String> out = new Collector<>(Long.MAX_VALUE);
+        proc.subscribe(out);
+        try (SubmissionPublisher<String> pub = new SubmissionPublisher<>()) {
+            pub.subscribe(proc);
+            for (String chunk : chunks) {
+                pub.submit(chunk);
+            }
+        }
+        assertTrue(out.done.await(2, TimeUnit.SECONDS));
+        assertTrue(out.completed);
+        assertEquals(chunks.length, out.items.size());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", String.join("", out.items));
+    }
+
+    @Test
+    public void testIndices() throws Exception {
+        MachineProcessor<int[]> proc =
+            MachineProcessor.forIndices(navalMachine());
+        Collector<int[]> out = new Collector<>(Long.MAX_VALUE);
+        proc.subscribe(out);
+        try (SubmissionPublisher<int[]> pub = new SubmissionPublisher<>()) {
+            pub.subscribe(proc);
+            pub.submit(new int[] {5, 17});
+            pub.submit(new int[] {14, 12});
+        }
+        assertTrue(out.done.await(2, TimeUnit.SECONDS));
+        assertArrayEquals(new int[] {16, 21}, out.items.get(0));
+        assertArrayEquals(new int[] {15, 16}, out.items.get(1));
+    }
+
+    @Test
+    public void testRespectsDemand() throws Exception {
+        MachineProcessor<String> proc =
+            MachineProcessor.forText(navalMachine());
+        Collector<String> out = new Collector<>(2);
+        proc.subscribe(out);
+        SubmissionPublisher<String> pub = new SubmissionPublisher<>();
+        pub.subscribe(proc);
+        for (int i = 0; i < 10; i += 1) {
+            pub.submit("FROM");
+        }
+        assertTrue(out.done.await(2, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(2, out.items.size());
+        assertTrue(pub.estimateMaximumLag() >= 8);
+        pub.close();
+    }
+
+    @Test
+    public void testBadCharacterSignalsError() throws Exception {
+        MachineProcessor<String> proc =
+            MachineProcessor.forText(navalMachine());
+        Collector<String> out = new Collector<>(Long.MAX_VALUE);
+        proc.subscribe(out);
+        try (SubmissionPublisher<String> pub = new SubmissionPublisher<>()) {
+            pub.subscribe(proc);
+            pub.submit("FROM");
+            pub.submit("from");
+        }
+        assertTrue(out.done.await(2, TimeUnit.SECONDS));
+        assertTrue(out.failure instanceof EnigmaException);
+        assertEquals(1, out.items.size());
+    }
+
+    @Test
+    public void testBadRequestIsTerminal() {
+        MachineProcessor<String> proc =
+            MachineProcessor.forText(navalMachine());
+        Collector<String> out = new Collector<>(Long.MAX_VALUE);
+        proc.subscribe(out);
+        List<Long> requests = new ArrayList<>();
+        proc.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requests.add(n);
+            }
+
+            @Override
+            public void cancel() {
+                requests.add(0L);
+            }
+        });
+        out._subscription.request(0);
+        assertTrue(out.failure instanceof IllegalArgumentException);
+        proc.onNext("FROM");
+        proc.onComplete();
+        proc.onError(new IllegalStateException());
+        assertFalse(out.completed);
+        assertTrue(out.failure instanceof IllegalArgumentException);
+        assertEquals(0, out.items.size());
+        assertEquals(List.of(1L, 0L), requests);
+    }
+
+    @Test
+    public void testConvertFailureIsTerminal() {
+        MachineProcessor<String> proc =
+            new MachineProcessor<String>(navalMachine()) {
+                @Override
+                String convert(Machine m, String chunk) {
+                    if (chunk.isEmpty()) {
+                        throw new ArrayIndexOutOfBoundsException(0);
+                    }
+                    return m.convert(chunk);
+                }
+            };
+        Collector<String> out = new Collector<>(Long.MAX_VALUE);
+        proc.subscribe(out);
+        List<Long> requests = new ArrayList<>();
+        proc.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requests.add(n);
+            }
+
+            @Override
+            public void cancel() {
+                requests.add(0L);
+            }
+        });
+        proc.onNext("FROM");
+        proc.onNext("");
+        proc.onNext("FROM");
+        assertTrue(out.failure instanceof ArrayIndexOutOfBoundsException);
+        assertEquals(1, out.items.size());
+        assertEquals(List.of(1L, 1L, 0L), requests);
+    }
+
+    @Test
+    public void testTerminalBeforeSubscriber() {
+        Flow.Subscription idle = new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        };
+        MachineProcessor<String> proc =
+            MachineProcessor.forText(navalMachine());
+        proc.onSubscribe(idle);
+        proc.onComplete();
+        Collector<String> out = new Collector<>(Long.MAX_VALUE);
+        proc.subscribe(out);
+        assertTrue(out.completed);
+        assertNotNull(out._subscription);
+
+        proc = MachineProcessor.forText(navalMachine());
+        proc.onSubscribe(idle);
+        proc.onError(new IllegalStateException());
+        proc.onComplete();
+        out = new Collector<>(Long.MAX_VALUE);
+        proc.subscribe(out);
+        assertTrue(out.failure instanceof IllegalStateException);
+        assertFalse(out.completed);
+    }
+
+    @Test
+    public void testEmitsWithoutLock() throws Exception {
+        MachineProcessor<String> proc =
+            MachineProcessor.forText(navalMachine());
+        boolean[] locked = new boolean[1];
+        Collector<String> out = new Collector<String>(Long.MAX_VALUE) {
+            @Override
+            public void onNext(String item) {
+                locked[0] |= Thread.holdsLock(proc);
+                super.onNext(item);
+            }
+
+            @Override
+            public void onComplete() {
+                locked[0] |= Thread.holdsLock(proc);
+                super.onComplete();
+            }
+        };
+        proc.subscribe(out);
+        try (SubmissionPublisher<String> pub = new SubmissionPublisher<>()) {
+            pub.subscribe(proc);
+            pub.submit("FROM");
+        }
+        assertTrue(out.done.await(2, TimeUnit.SECONDS));
+        assertTrue(out.completed);
+        assertFalse(locked[0]);
+    }
+}
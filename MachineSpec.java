@@ -0,0 +1,124 @@
+package enigma;
+
+import java.util.Collection;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * An immutable description of a machine, as given by a configuration
+ * file: its alphabet, numbers of rotor slots and pawls, and available
+ * rotors.  Machines made from a spec never share rotor state with it or
+ * with each other, so one spec may serve any number of threads.
+ *
+ * @author Amy Stanley
+ */
+final class MachineSpec {
+
+    /**
+     * A spec for machines with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     * 0 <= PAWLS < NUMROTORS pawls, and the rotors ALLROTORS, whose names
+     * must be distinct.  ALLROTORS are used only as patterns, and are
+     * never inserted into a machine.
+     */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls,
+             RotorCatalog.ofPatterns(allRotors, alpha));
+    }
+
+    /**
+     * A spec for machines with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     * 0 <= PAWLS < NUMROTORS pawls, and the rotors in CATALOG, which must
+     * hand out copies.
+     */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                RotorCatalog catalog) {
+        this(alpha, numRotors, pawls, catalog, null);
+    }
+
+    /**
+     * A spec as for MachineSpec(ALPHA, NUMROTORS, PAWLS, CATALOG), whose
+     * machines use STRATEGY (see withStrategy).
+     */
+    private MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                        RotorCatalog catalog, Strategy strategy) {
+        if (numRotors <= 1) {
+            throw error("need more than one rotor slot");
+        }
+        if (pawls < 0 || pawls >= numRotors) {
+            throw error("bad number of pawls: %d", pawls);
+        }
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _catalog = catalog;
+        _strategy = strategy;
+    }
+
+    /**
+     * Return a spec like me whose machines convert runs of keystrokes
+     * with STRATEGY, or choose one if it is null (see
+     * Machine.setStrategy).
+     */
+    MachineSpec withStrategy(Strategy strategy) {
+        return new MachineSpec(_alphabet, _numRotors, _pawls, _catalog,
+                               strategy);
+    }
+
+    /**
+     * Return the strategy my machines use, or null if they choose.
+     */
+    Strategy strategy() {
+        return _strategy;
+    }
+
+    /**
+     * Return my alphabet.
+     */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /**
+     * Return the number of rotor slots.
+     */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /**
+     * Return the number of pawls.
+     */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /**
+     * Return the available rotors.
+     */
+    RotorCatalog rotors() {
+        return _catalog;
+    }
+
+    /**
+     * Return a new machine built to this spec, which gets its own copy
+     * of each rotor it uses.
+     */
+    Machine newMachine() {
+        Machine result =
+            new Machine(_alphabet, _numRotors, _pawls, _catalog);
+        result.setStrategy(_strategy);
+        return result;
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _pawls;
+    /** Available rotors, copied into each machine that uses them. */
+    private final RotorCatalog _catalog;
+    /** Strategy my machines use, or null. */
+    private final Strategy _strategy;
+}
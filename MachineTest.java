@@ -71,6 +71,31 @@ public class MachineTest {
         assertEquals(25, mach.convert(24));
     }
 
+    @Test
+    public void testSupplementaryAlphabet() {
+        Alphabet emoji =
+            new Alphabet("\uD83D\uDE00\uD83D\uDE01\uD83D\uDE02"
+                         + "\uD83D\uDE03\uD83D\uDE04\uD83D\uDE05");
+        String a = "\uD83D\uDE00", b = "\uD83D\uDE01",
+            c = "\uD83D\uDE02", d = "\uD83D\uDE03",
+            e = "\uD83D\uDE04", f = "\uD83D\uDE05";
+        java.util.ArrayList<Rotor> rotors = new java.util.ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(
+            "(" + a + b + ") (" + c + d + ") (" + e + f + ")", emoji)));
+        rotors.add(new MovingRotor("M", new Permutation(
+            "(" + a + c + e + b + ") (" + d + f + ")", emoji), b));
+        rotors.add(new MovingRotor("F", new Permutation(
+            "(" + a + f + e + d + c + b + ")", emoji), a));
+        String msg = a + b + c + " " + d + e + f + a + a + a;
+        Machine mach = new Machine(emoji, 3, 2, rotors);
+        mach.insertRotors(new String[] {"R", "M", "F"});
+        mach.setRotors(b + f);
+        String encoded = mach.convert(msg);
+        assertEquals(9, encoded.codePointCount(0, encoded.length()));
+        mach.setRotors(b + f);
+        assertEquals(msg.replace(" ", ""), mach.convert(encoded));
+    }
+
     @Test
     public void testConvertMsg() {
         Machine mach = mach1();
@@ -1,13 +1,27 @@
 package enigma;
 
-import java.io.File;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import ucb.util.CommandArgs;
 
@@ -20,6 +34,23 @@ import static enigma.EnigmaException.*;
  */
 public final class Main {
 
+    /**
+     * Suffix of file names whose contents are compressed with gzip.
+     */
+    static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * Size of the buffers used in compressing and decompressing files.
+     */
+    static final int GZIP_BUFFER = 1 << 16;
+
+    /**
+     * Least size of an input file, in bytes, for which the cost model is
+     * calibrated before converting it: large enough that the calibration
+     * costs a small part of the job.
+     */
+    static final long CALIBRATION_INPUT = 1 << 26;
+
     /**
      * Process a sequence of encryptions and decryptions, as
      * specified by ARGS, where 1 <= ARGS.length <= 3.
@@ -29,52 +60,210 @@ public final class Main {
      * input.  ARGS[2] is optional; when present, it names an output
      * file for processed messages.  Otherwise, output goes to the
      * standard output. Exits normally if there are no errors in the input;
-     * otherwise with code 1.
+     * otherwise with code 1.  Input and output files whose names end in
+     * GZIP_SUFFIX are decompressed and compressed on the fly.
+     * With --server=PORT, only ARGS[0] is given, and instead of processing
+     * files, Main serves sessions on local TCP port PORT (see Server)
+     * until killed.  With --watch, the configuration file is re-read
+     * whenever it changes, and each later settings line uses the new
+     * configuration (see ConfigWatcher).
+     * With --batch, ARGS are CONFIG INPUTS OUTDIR, and each file named by
+     * INPUTS (a directory or a glob such as texts/*.in) is processed as
+     * an INPUT into the file of the same name in OUTDIR, in parallel,
+     * with the configuration read only once (see Batch).  Exits with
+     * code 1 if any file fails.
+     * With --cache=SIZE, conversions of message lines are remembered in a
+     * cache of SIZE entries (kept at most --cache-ttl=SECONDS seconds if
+     * given) and reused when a message recurs in the same machine state
+     * (see ResultCache).  A summary of its use is printed on the standard
+     * error at the end.
+     * With --engine=KIND, message lines are converted by the strategy
+     * KIND (scalar, fused, parallel, cached or precomputed) rather than
+     * the one the cost model chooses (auto), and a report of the
+     * strategies used is printed on the standard error at the end (see
+     * Strategy).  Without it, a server, or a job whose input file has at
+     * least CALIBRATION_INPUT bytes, first spends a few hundred
+     * milliseconds calibrating the cost model.  With precomputed, a
+     * background thread tabulates each machine's coming substitutions
+     * while input is awaited (see Keystream).
+     * With --indexed, ARGS must name INPUT and OUTPUT files.  If neither
+     * is compressed and the configuration's alphabet is ASCII (see
+     * Blocks.fits), the input is memory-mapped, its settings lines are
+     * found by a parallel scan, and the blocks of lines they begin are
+     * converted in parallel, each written at its own offset in OUTPUT
+     * (see Blocks).  Otherwise the files are processed as usual.
      */
     public static void main(String... args) {
         try {
-            CommandArgs options =
-                    new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
-                throw error("Usage: java enigma.Main [--verbose] "
-                        + "[INPUT [OUTPUT]]");
-            }
-
-            _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            run(Charset.defaultCharset(), args);
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
+        } finally {
+            if (_cache != null) {
+                System.err.println(_cache.report());
+            }
+            if (_reportEngines) {
+                System.err.println(Strategy.report());
+            }
         }
         System.exit(1);
     }
 
+    /**
+     * Process ARGS as main does, reading and writing files in CHARSET,
+     * but reporting errors by throwing an EnigmaException rather than
+     * exiting.  Options of an earlier call do not carry over.
+     */
+    static void run(Charset charset, String... args) {
+        CommandArgs options =
+                new CommandArgs("--verbose --watch --server=(\\d+) "
+                                + "--batch --cache=(\\d+) "
+                                + "--cache-ttl=(\\d+) --engine=(\\w+) "
+                                + "--indexed "
+                                + "--=(.*){1,3}",
+                                args);
+        if (!options.ok()
+            || (options.contains("--server")
+                && options.get("--").size() != 1)
+            || (options.contains("--batch")
+                && (options.get("--").size() != 3
+                    || options.contains("--server")))
+            || (options.contains("--cache-ttl")
+                && !options.contains("--cache"))
+            || (options.contains("--indexed")
+                && (options.get("--").size() != 3
+                    || options.contains("--server")
+                    || options.contains("--batch")
+                    || options.contains("--watch")
+                    || options.contains("--cache")))) {
+            throw error("Usage: java enigma.Main [--verbose] [--watch] "
+                    + "[--cache=SIZE [--cache-ttl=SECONDS]] "
+                    + "[--engine=KIND] "
+                    + "[--server=PORT] CONFIG [INPUT [OUTPUT]]\n"
+                    + "   or: java enigma.Main --batch [--watch] "
+                    + "[--cache=SIZE [--cache-ttl=SECONDS]] "
+                    + "[--engine=KIND] CONFIG INPUTS OUTDIR\n"
+                    + "   or: java enigma.Main --indexed "
+                    + "[--engine=KIND] CONFIG INPUT OUTPUT");
+        }
+
+        _charset = charset;
+        _verbose = options.contains("--verbose");
+        _watch = options.contains("--watch");
+        _indexed = options.contains("--indexed");
+        _engine = null;
+        _reportEngines = options.contains("--engine");
+        if (_reportEngines) {
+            _engine = Strategy.named(options.getFirst("--engine"));
+        }
+        _cache = null;
+        if (options.contains("--cache")) {
+            _cache = newCache(options.getFirst("--cache"),
+                              options.getFirst("--cache-ttl"));
+        }
+        if (_engine == null && worthCalibrating(options)) {
+            Strategy.calibrate();
+        }
+        if (options.contains("--server")) {
+            int port;
+            try {
+                port = Integer.parseInt(options.getFirst("--server"));
+            } catch (NumberFormatException excp) {
+                throw error("port %s is not between 0 and %d",
+                            options.getFirst("--server"), Server.MAX_PORT);
+            }
+            new Main(options.get("--")).serve(port);
+        } else if (options.contains("--batch")) {
+            List<String> files = options.get("--");
+            new Main(files.subList(0, 1)).batch(files.get(1),
+                                                files.get(2));
+        } else {
+            new Main(options.get("--")).process();
+        }
+    }
+
+    /**
+     * Return true iff the job described by OPTIONS is long enough to
+     * repay calibrating the cost model (see Strategy.calibrate): a
+     * server, or an input file of at least CALIBRATION_INPUT bytes.
+     */
+    private static boolean worthCalibrating(CommandArgs options) {
+        if (options.contains("--server")) {
+            return true;
+        }
+        if (options.contains("--batch")) {
+            return false;
+        }
+        List<String> files = options.get("--");
+        try {
+            return files.size() > 1
+                && Files.size(Paths.get(files.get(1))) >= CALIBRATION_INPUT;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Return a cache of SIZE entries, each kept for TTL seconds, or
+     * indefinitely if TTL is null.
+     */
+    private static ResultCache newCache(String size, String ttl) {
+        try {
+            int capacity = Integer.parseInt(size);
+            if (capacity <= 0) {
+                throw error("cache size must be positive");
+            }
+            long lifetime =
+                ttl == null ? 0 : TimeUnit.SECONDS.toNanos(Long.parseLong(ttl));
+            return new ResultCache(capacity, lifetime);
+        } catch (NumberFormatException excp) {
+            throw error("bad cache option");
+        }
+    }
+
     /**
      * Open the necessary files for non-option arguments ARGS (see comment
      * on main).
      */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        _configName = args.get(0);
+        _config = readFile(_configName);
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            _inputName = args.get(1);
+            _input = getReader(_inputName);
         } else {
-            _input = new Scanner(System.in);
+            _input = new InputStreamReader(System.in, _charset);
         }
 
         if (args.size() > 2) {
-            _output = getOutput(args.get(2));
+            _outputName = args.get(2);
+            _output = getOutput(_outputName);
         } else {
             _output = System.out;
         }
     }
 
     /**
-     * Return a Scanner reading from the file named NAME.
+     * Return the contents of the file named NAME, in charset().
+     */
+    static String readFile(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)),
+                              _charset);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a Reader reading from the file named NAME.
      */
-    private Scanner getInput(String name) {
+    private Reader getReader(String name) {
         try {
-            return new Scanner(new File(name));
+            return new InputStreamReader(openInput(Paths.get(name)),
+                                         _charset);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -85,78 +274,204 @@ public final class Main {
      */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new PrintStream(openOutput(Paths.get(name)), false,
+                                   _charset);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /**
+     * Return a stream reading FILE, decompressing it if its name ends in
+     * GZIP_SUFFIX.
+     */
+    static InputStream openInput(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.toString().endsWith(GZIP_SUFFIX)) {
+            try {
+                return new GZIPInputStream(in, GZIP_BUFFER);
+            } catch (IOException excp) {
+                in.close();
+                throw excp;
+            }
+        }
+        return in;
+    }
+
+    /**
+     * Return a stream writing FILE, compressing what is written if its
+     * name ends in GZIP_SUFFIX.  The stream must be closed to complete a
+     * compressed file.
+     */
+    static OutputStream openOutput(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (file.toString().endsWith(GZIP_SUFFIX)) {
+            return new GZIPOutputStream(out, GZIP_BUFFER);
+        }
+        return out;
+    }
+
     /**
      * Configure an Enigma machine from the contents of configuration
      * file _config and apply it to the messages in _input, sending the
-     * results to _output.
+     * results to _output.  Reading, conversion and writing run
+     * concurrently (see Pipeline), so that decompressing a compressed
+     * input and compressing a compressed output each get a thread of
+     * their own.
      */
     private void process() {
-        Machine enigma = readConfig();
-        String msg = "";
-        boolean checkStar = false;
-        while (_input.hasNextLine()) {
-            String first = _input.nextLine();
-            if (first.startsWith("*")) {
-                setUp(enigma, first);
-                checkStar = true;
-            } else {
-                if (!checkStar) {
-                    throw error("Invalid Config");
-                }
-                String encoded = enigma.convert(first);
-                printMessageLine(encoded);
+        Supplier<MachineSpec> specs = specs();
+        if (_indexed && !_inputName.endsWith(GZIP_SUFFIX)
+            && !_outputName.endsWith(GZIP_SUFFIX)
+            && Blocks.fits(specs.get())) {
+            processBlocks(specs.get());
+            return;
+        }
+        Writer output =
+            new BufferedWriter(new OutputStreamWriter(_output, _charset));
+        try {
+            new Pipeline(specs, _input, output, _cache).run();
+        } finally {
+            if (_output != System.out) {
+                _output.close();
             }
         }
     }
 
     /**
-     * Return an Enigma machine configured from the contents of configuration
-     * file _config.
+     * Apply machines built to SPEC to the messages in the input file
+     * named _inputName, block by block in parallel, writing the results
+     * to the file named _outputName (see Blocks).
      */
-    private Machine readConfig() {
+    private void processBlocks(MachineSpec spec) {
         try {
-            String alphabet = _config.next();
-            if (alphabet.equals("")) {
-                throw new EnigmaException("No characters in config");
-            }
-            boolean asterisk = alphabet.contains("*");
-            boolean closedParen = alphabet.contains(")");
-            boolean openParen = alphabet.contains("(");
-            if (asterisk || closedParen || openParen) {
-                throw new EnigmaException("Invalid characters in config");
-            }
-            _alphabet = new Alphabet(alphabet);
-            int numRotors = _config.nextInt();
-            int pawls = _config.nextInt();
-            ArrayList<Rotor> allRotors = new ArrayList<>();
-            while (_config.hasNext()) {
-                allRotors.add(readRotor());
+            _input.close();
+        } catch (IOException excp) {
+            /* Nothing was read from it. */
+        }
+        _output.close();
+        new Blocks(spec, Paths.get(_inputName), Paths.get(_outputName))
+            .run();
+    }
+
+    /**
+     * Configure an Enigma machine from the contents of configuration
+     * file _config and serve sessions with it on local port PORT.
+     */
+    private void serve(int port) {
+        Supplier<MachineSpec> specs = specs();
+        try (Server server = new Server(specs, port, _cache)) {
+            server.start();
+            System.err.printf("Listening on port %d%n", server.port());
+            server.awaitClose();
+        } catch (IOException excp) {
+            throw error("could not serve on port %d: %s", port,
+                        excp.getMessage());
+        }
+    }
+
+    /**
+     * Process each file named by INPUTS into the file of the same name in
+     * directory OUTDIR, using the configuration in file _config.
+     */
+    private void batch(String inputs, String outDir) {
+        List<Path> files = Batch.inputs(inputs);
+        int failed =
+            new Batch(specs(), files, Paths.get(outDir), _cache).run();
+        if (failed > 0) {
+            throw error("%d of %d files failed", failed, files.size());
+        }
+    }
+
+    /**
+     * Return a source of the machine spec in configuration file _config:
+     * the spec read now, or with --watch, the latest valid one.
+     */
+    private Supplier<MachineSpec> specs() {
+        if (!_watch) {
+            MachineSpec spec = readConfig(_config).withStrategy(_engine);
+            return () -> spec;
+        }
+        ConfigWatcher watcher =
+            new ConfigWatcher(Paths.get(_configName), _engine);
+        try {
+            watcher.start();
+        } catch (IOException excp) {
+            throw error("could not watch %s", _configName);
+        }
+        return watcher;
+    }
+
+    /**
+     * Return the machine spec given by the contents of configuration
+     * CONFIG.  Rotor descriptions are only indexed, and are compiled
+     * when first used (see RotorCatalog).  Unlike the original reader,
+     * this rejects a configuration that names two rotors alike, or whose
+     * number of pawls is negative or not less than its number of slots;
+     * a rotor whose description is bad is reported when first used.
+     */
+    static MachineSpec readConfig(String config) {
+        Events.ConfigLoad event = null;
+        if (Events.ConfigLoad.TYPE.isEnabled()) {
+            event = new Events.ConfigLoad();
+            event.begin();
+        }
+        String[] header = new String[3];
+        int p = 0;
+        for (int i = 0; i < header.length; i += 1) {
+            p = RotorCatalog.skipSpace(config, p);
+            int end = RotorCatalog.tokenEnd(config, p);
+            if (p == end) {
+                throw error("configuration file truncated");
             }
-            return new Machine(_alphabet, numRotors, pawls, allRotors);
-        } catch (NoSuchElementException excp) {
+            header[i] = config.substring(p, end);
+            p = end;
+        }
+        String alphabet = header[0];
+        if (alphabet.equals("")) {
+            throw new EnigmaException("No characters in config");
+        }
+        boolean asterisk = alphabet.contains("*");
+        boolean closedParen = alphabet.contains(")");
+        boolean openParen = alphabet.contains("(");
+        if (asterisk || closedParen || openParen) {
+            throw new EnigmaException("Invalid characters in config");
+        }
+        Alphabet alpha = new Alphabet(alphabet);
+        int numRotors, pawls;
+        try {
+            numRotors = Integer.parseInt(header[1]);
+            pawls = Integer.parseInt(header[2]);
+        } catch (NumberFormatException excp) {
             throw error("configuration file truncated");
         }
+        MachineSpec spec =
+            new MachineSpec(alpha, numRotors, pawls,
+                            RotorCatalog.index(config, p, alpha));
+        if (event != null) {
+            event.length = config.length();
+            event.alphabetSize = alpha.size();
+            event.numRotors = numRotors;
+            event.pawls = pawls;
+            event.rotors = spec.rotors().size();
+            event.commit();
+        }
+        return spec;
     }
 
     /**
-     * Return a rotor, reading its description from _config.
+     * Return a rotor over ALPHA, reading its description from CONFIG.
      */
-    private Rotor readRotor() {
+    static Rotor readRotor(Scanner config, Alphabet alpha) {
         try {
-            String rotorName = _config.next();
-            String rotorSpec = _config.next();
+            String rotorName = config.next();
+            String rotorSpec = config.next();
             String cycles = "";
             String notches = "";
-            while (_config.hasNext("\\(.+\\)")) {
-                cycles += _config.next();
+            while (config.hasNext("\\(.+\\)")) {
+                cycles += config.next();
             }
-            Permutation permutation = new Permutation(cycles, _alphabet);
+            Permutation permutation = Permutation.intern(cycles, alpha);
             if (rotorSpec.charAt(0) == 'M') {
                 notches += rotorSpec.substring(1);
                 return new MovingRotor(rotorName, permutation, notches);
@@ -176,7 +491,12 @@ public final class Main {
      * Set M according to the specification given on SETTINGS,
      * which must have the format specified in the assignment.
      */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
+        Events.Settings event = null;
+        if (Events.Settings.TYPE.isEnabled()) {
+            event = new Events.Settings();
+            event.begin();
+        }
         try {
             String[] myRotors = new String[M.numRotors()];
             String plug = "";
@@ -190,8 +510,14 @@ public final class Main {
             while (setup.hasNext("\\(.+\\)")) {
                 plug += setup.next();
             }
-            Permutation perm = new Permutation(plug, _alphabet);
+            Permutation perm = Permutation.intern(plug, M.alphabet());
             M.setPlugboard(perm);
+            if (event != null) {
+                event.rotors = String.join(" ", myRotors);
+                event.plugboardCycles =
+                    (int) plug.chars().filter(c -> c == '(').count();
+                event.commit();
+            }
         } catch (NoSuchElementException excp) {
             throw error("settings poorly formatted");
         }
@@ -205,41 +531,101 @@ public final class Main {
     }
 
     /**
-     * Print MSG in groups of five (except that the last group may
+     * Return the charset in which files are read and written.
+     */
+    static Charset charset() {
+        return _charset;
+    }
+
+    /**
+     * Print MSG on OUT in groups of five (except that the last group may
      * have fewer letters).
      */
-    private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i += 1) {
-            _output.print(msg.charAt(i));
-            if (((i + 1) % 5 == 0)) {
-                _output.print(" ");
+    static void printMessageLine(PrintStream out, String msg) {
+        out.print(messageLine(msg));
+    }
+
+    /**
+     * Return MSG as printMessageLine prints it, including the line end.
+     */
+    static String messageLine(String msg) {
+        StringBuilder result = new StringBuilder(msg.length() * 6 / 5 + 2);
+        int count = 0;
+        for (int i = 0; i < msg.length(); ) {
+            int cp = msg.codePointAt(i);
+            result.append(msg, i, i + Character.charCount(cp));
+            i += Character.charCount(cp);
+            count += 1;
+            if (count % 5 == 0) {
+                result.append(' ');
             }
         }
-        _output.print("\n");
+        return result.append('\n').toString();
     }
 
     /**
-     * Alphabet used in this machine.
+     * Name of the configuration file.
      */
-    private Alphabet _alphabet;
+    private String _configName;
 
     /**
      * Source of input messages.
      */
-    private Scanner _input;
+    private Reader _input;
+
+    /**
+     * Name of the input file, or null for the standard input.
+     */
+    private String _inputName;
 
     /**
-     * Source of machine configuration.
+     * Name of the output file, or null for the standard output.
      */
-    private Scanner _config;
+    private String _outputName;
+
+    /**
+     * Text of machine configuration.
+     */
+    private String _config;
 
     /**
      * File for encoded/decoded messages.
      */
     private PrintStream _output;
 
+    /**
+     * Charset of files read and written: the platform's unless set by
+     * run.
+     */
+    private static Charset _charset = Charset.defaultCharset();
+
     /**
      * True if --verbose specified.
      */
     private static boolean _verbose;
+
+    /**
+     * True if --watch specified.
+     */
+    private static boolean _watch;
+
+    /**
+     * True if --indexed specified.
+     */
+    private static boolean _indexed;
+
+    /**
+     * Cache of conversions if --cache specified, and otherwise null.
+     */
+    private static ResultCache _cache;
+
+    /**
+     * Strategy named by --engine, or null.
+     */
+    private static Strategy _engine;
+
+    /**
+     * True if --engine specified.
+     */
+    private static boolean _reportEngines;
 }
@@ -18,6 +18,12 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _atNotch = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); ) {
+            int cp = notches.codePointAt(i);
+            _atNotch[alphabet().toInt(cp)] = true;
+            i += Character.charCount(cp);
+        }
     }
 
     @Override
@@ -35,15 +41,22 @@ class MovingRotor extends Rotor {
         return _notches;
     }
 
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), permutation(), _notches);
+    }
+
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toInt(_notches.charAt(i)) == setting()) {
-                return true;
-            }
-        }
-        return false;
+        return _atNotch[setting()];
+    }
+
+    @Override
+    boolean atNotch(int posn) {
+        return _atNotch[posn];
     }
     /** Notches for machine. */
     private String _notches;
+    /** Whether each setting is at a notch. */
+    private final boolean[] _atNotch;
 
 }
@@ -1,10 +1,15 @@
 package enigma;
 
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
 import static enigma.EnigmaException.*;
 
 /**
  * Represents a permutation of a range of integers starting at 0 corresponding
- * to the characters of an alphabet.
+ * to the characters of an alphabet.  The permutation and its inverse are
+ * kept as dense tables indexed by alphabet position.
  *
  * @author Amy Stanley
  */
@@ -17,15 +22,71 @@ class Permutation<Count> {
      * alphabet that are not included in any cycle map to themselves.
      * Whitespace is ignored.
      */
-    private String[] _cycles;
-
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        if (cycles == "") {
-            _cycles = new String[]{""};
-        } else {
-            String curr = cycles.substring(1, cycles.length() - 1);
-            _cycles = curr.split("\\)\\(|\\)\\s\\(");
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = _inverse[i] = -1;
+        }
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                if (start >= 0) {
+                    throw error("nested '(' in cycles %s", cycles);
+                }
+                start = i + 1;
+            } else if (c == ')') {
+                if (start < 0) {
+                    throw error("unmatched ')' in cycles %s", cycles);
+                }
+                addCycle(cycles.substring(start, i));
+                start = -1;
+            } else if (start < 0 && !Character.isWhitespace(c)) {
+                throw error("character outside cycle in %s", cycles);
+            }
+        }
+        if (start >= 0) {
+            throw error("unmatched '(' in cycles %s", cycles);
+        }
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == -1) {
+                _forward[i] = _inverse[i] = i;
+            }
+        }
+    }
+
+    /**
+     * Return a permutation equal to new Permutation(CYCLES, ALPHABET),
+     * shared with every caller asking for the same mapping over an
+     * alphabet of the same characters, however its cycles are written.
+     * Permutations are immutable, so machines and rotors built from the
+     * same descriptions may share one, along with its tables.  The shared
+     * permutation is held weakly, and is forgotten once nothing else
+     * refers to it.
+     */
+    static Permutation intern(String cycles, Alphabet alphabet) {
+        Permutation perm = new Permutation(cycles, alphabet);
+        InternKey key = new InternKey(alphabet, perm._forward);
+        synchronized (INTERNED) {
+            WeakReference<Permutation> ref = INTERNED.get(key);
+            Permutation shared = ref == null ? null : ref.get();
+            if (shared != null) {
+                return shared;
+            }
+            perm._internKey = key;
+            INTERNED.put(key, new WeakReference<>(perm));
+        }
+        return perm;
+    }
+
+    /**
+     * Return the number of interned permutations still in use.
+     */
+    static int interned() {
+        synchronized (INTERNED) {
+            return INTERNED.size();
         }
     }
 
@@ -34,6 +95,23 @@ class Permutation<Count> {
      * c0c1...cm.
      */
     private void addCycle(String cycle) {
+        int[] members = cycle.codePoints()
+            .filter(cp -> !Character.isWhitespace(cp)).toArray();
+        for (int i = 0; i < members.length; i += 1) {
+            if (!_alphabet.contains(members[i])) {
+                throw error("character in cycle not in alphabet");
+            }
+            members[i] = _alphabet.toInt(members[i]);
+        }
+        for (int i = 0; i < members.length; i += 1) {
+            int from = members[i];
+            int to = members[(i + 1) % members.length];
+            if (_forward[from] != -1) {
+                throw error("character appears in two cycles");
+            }
+            _forward[from] = to;
+            _inverse[to] = from;
+        }
     }
 
     /**
@@ -51,7 +129,7 @@ class Permutation<Count> {
      * Returns the size of the alphabet I permute.
      */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /**
@@ -59,10 +137,7 @@ class Permutation<Count> {
      * alphabet size.
      */
     int permute(int p) {
-        int index = wrap(p);
-        char cp = _alphabet.toChar(index);
-        char permuted = permute(cp);
-        return alphabet().toInt(permuted);
+        return _forward[wrap(p)];
     }
 
     /**
@@ -70,10 +145,7 @@ class Permutation<Count> {
      * to  C modulo the alphabet size.
      */
     int invert(int c) {
-        int index = wrap(c);
-        char cc = _alphabet.toChar(index);
-        char inverted = invert(cc);
-        return alphabet().toInt(inverted);
+        return _inverse[wrap(c)];
     }
 
     /**
@@ -81,44 +153,14 @@ class Permutation<Count> {
      * in ALPHABET, and converting the result to a character of ALPHABET.
      */
     char permute(char p) {
-        char result = p;
-        for (int i = 0; i < _cycles.length; i++) {
-            int index = _cycles[i].indexOf(p);
-            if (index == -1) {
-                continue;
-            } else {
-                if (index + 1 >= _cycles[i].length()) {
-                    index = 0;
-                    result = _cycles[i].charAt(index);
-                } else {
-                    result = _cycles[i].charAt(index + 1);
-                }
-            }
-            break;
-        }
-        return result;
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /**
      * Return the result of applying the inverse of this permutation to C.
      */
     char invert(char c) {
-        char result = c;
-        for (int i = 0; i < _cycles.length; i++) {
-            int index = _cycles[i].indexOf(c);
-            if (index == -1) {
-                continue;
-            } else {
-                if (index - 1 < 0) {
-                    index = _cycles[i].length() - 1;
-                    result = _cycles[i].charAt(index);
-                } else {
-                    result = _cycles[i].charAt(index - 1);
-                }
-            }
-            break;
-        }
-        return result;
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /**
@@ -134,15 +176,113 @@ class Permutation<Count> {
      */
     boolean derangement() {
         for (int i = 0; i < alphabet().size(); i++) {
-            if (wrap(permute(i)) == i) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Return a table whose entry S * size() + P is the image of P under
+     * this permutation (its inverse iff INVERSE) as seen through a rotor
+     * at setting S: permute(P + S) - S modulo size(), as an unsigned
+     * byte.  Returns null if size() exceeds SHIFTED_LIMIT.  The table is
+     * built on first use and then shared, and must not be modified.
+     */
+    byte[] shiftedTable(boolean inverse) {
+        if (size() > SHIFTED_LIMIT) {
+            return null;
+        }
+        byte[] table = inverse ? _shiftedInverse : _shiftedForward;
+        if (table == null) {
+            int[] images = inverse ? _inverse : _forward;
+            int n = size();
+            table = new byte[n * n];
+            for (int s = 0; s < n; s += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    table[s * n + p] =
+                        (byte) wrap(images[wrap(p + s)] - s);
+                }
+            }
+            if (inverse) {
+                _shiftedInverse = table;
+            } else {
+                _shiftedForward = table;
+            }
+        }
+        return table;
+    }
+
+    /** The identity of an interned permutation: its alphabet's
+     *  characters and its mapping. */
+    private static final class InternKey {
+        /** The key of the mapping FORWARD over ALPHABET. */
+        InternKey(Alphabet alphabet, int[] forward) {
+            _alphabet = alphabet;
+            _forward = forward;
+            _hash = alphabet.lettersHash() * 31 + Arrays.hashCode(forward);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof InternKey)) {
+                return false;
+            }
+            InternKey other = (InternKey) obj;
+            return _hash == other._hash
+                && Arrays.equals(_forward, other._forward)
+                && _alphabet.sameLetters(other._alphabet);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The alphabet permuted. */
+        private final Alphabet _alphabet;
+        /** Image of each alphabet index. */
+        private final int[] _forward;
+        /** My hash code. */
+        private final int _hash;
+    }
+
+    /**
+     * Interned permutations, each held weakly under its key, which it
+     * refers to so that the entry lasts exactly as long as it does.
+     */
+    private static final WeakHashMap<InternKey, WeakReference<Permutation>>
+        INTERNED = new WeakHashMap<>();
+
+    /**
+     * Largest alphabet for which shiftedTable gives a table, which has
+     * the square of the alphabet size in entries, each fitting a byte.
+     */
+    static final int SHIFTED_LIMIT = Engine.BYTE_LIMIT;
+
     /**
      * Alphabet of this permutation.
      */
     private Alphabet _alphabet;
+
+    /**
+     * Image of each alphabet index under this permutation.
+     */
+    private final int[] _forward;
+
+    /**
+     * Image of each alphabet index under the inverse permutation.
+     */
+    private final int[] _inverse;
+
+    /**
+     * Shifted tables of this permutation and its inverse, once built.
+     */
+    private volatile byte[] _shiftedForward, _shiftedInverse;
+
+    /**
+     * My key among the interned permutations, if I am one.
+     */
+    private InternKey _internKey;
 }
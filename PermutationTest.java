@@ -57,4 +57,43 @@ public class PermutationTest {
         perm = new Permutation("", UPPER);
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
+
+    @Test
+    public void checkNavalRotors() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+            perm = new Permutation(NAVALZ.get(name), UPPER);
+            checkPerm(name + " (Z)", UPPER_STRING, NAVALZ_MAP.get(name));
+        }
+    }
+
+    @Test
+    public void checkSupplementaryCycles() {
+        Alphabet alpha = new Alphabet("\uD83D\uDE00AB\uD834\uDD1E");
+        perm = new Permutation("(\uD83D\uDE00B) (A \uD834\uDD1E)", alpha);
+        assertEquals(2, perm.permute(0));
+        assertEquals(0, perm.permute(2));
+        assertEquals(3, perm.permute(1));
+        assertEquals(1, perm.invert(3));
+        assertTrue(perm.derangement());
+    }
+
+    @Test
+    public void checkIntern() {
+        perm = Permutation.intern("(AB) (CDE)", new Alphabet());
+        assertSame(perm, Permutation.intern("(ECD)(BA)", new Alphabet()));
+        assertSame(perm.alphabet(), Permutation.intern("(BA)(DEC)",
+                                                       UPPER).alphabet());
+        assertNotSame(perm, Permutation.intern("(AB) (CED)", UPPER));
+        assertNotSame(perm, Permutation.intern("(AB) (CDE)",
+                                               new Alphabet("EDCBA")));
+        checkPerm("interned", UPPER_STRING,
+                  "BADEC" + UPPER_STRING.substring(5));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadCycles() {
+        new Permutation("(AB) (BC)", UPPER);
+    }
 }
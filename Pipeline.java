@@ -0,0 +1,539 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Processes an input stream of settings and message lines with a machine,
+ * as Main does, using three threads: a reader that splits the input into
+ * lines, a converter that applies the machine, and a writer that prints
+ * the results.  The stages pass a fixed pool of reusable line buffers
+ * around through single-producer, single-consumer rings (reader to
+ * converter, converter to writer, and writer back to reader), so that
+ * disk and CPU work overlap and no memory is allocated per message line.
+ * A message line longer than WINDOW is passed on in several buffers, with
+ * the machine's state and the grouping of output carried from each to
+ * the next, so that lines of any length take bounded memory.
+ *
+ * @author Amy Stanley
+ */
+final class Pipeline {
+
+    /** Number of line buffers in circulation. */
+    static final int SLOTS = 64;
+
+    /** Capacity of each ring: with room for more than all the slots,
+     *  put() never has to wait, even while slots the consumer has taken
+     *  are still awaiting release. */
+    static final int RING = 2 * SLOTS;
+
+    /** Maximum number of lines handed off before publishing. */
+    static final int BATCH = 16;
+
+    /** Size of the reader's input buffer, in characters. */
+    static final int READ_SIZE = 1 << 16;
+
+    /** Number of characters of a message line handed on at once.  Longer
+     *  lines are split into windows of about this size, so that memory
+     *  use does not grow with line length. */
+    static final int WINDOW = 1 << 16;
+
+    /**
+     * A pipeline applying machines built to the specs from SPECS to lines
+     * from INPUT and writing the results to OUTPUT.  A new machine is
+     * built whenever a settings line finds that SPECS has a new spec.
+     */
+    Pipeline(Supplier<MachineSpec> specs, Reader input, Writer output) {
+        this(specs, input, output, null);
+    }
+
+    /**
+     * A pipeline as for Pipeline(SPECS, INPUT, OUTPUT) that looks message
+     * lines up in CACHE, if it is not null, before converting them, and
+     * records their conversions there.
+     */
+    Pipeline(Supplier<MachineSpec> specs, Reader input, Writer output,
+             ResultCache cache) {
+        _specs = specs;
+        _input = input;
+        _output = output;
+        _cache = cache;
+    }
+
+    /**
+     * Run all three stages to completion.  Any error is reported after
+     * all output preceding it has been written.
+     */
+    void run() {
+        for (int i = 0; i < SLOTS; i += 1) {
+            _free.offer(new Slot());
+        }
+        _free.publish();
+        Thread converter = new Thread(this::convertStage, "enigma-convert");
+        Thread writer = new Thread(this::writeStage, "enigma-write");
+        converter.setDaemon(true);
+        writer.setDaemon(true);
+        converter.start();
+        writer.start();
+        readStage();
+        try {
+            converter.join();
+            writer.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+        reportErrors();
+    }
+
+    /**
+     * Do the work of all three stages on the calling thread, one line
+     * buffer at a time, for use where many pipelines run at once (see
+     * Batch).  Errors are reported as for run().
+     */
+    void runSerially() {
+        _serial = new Slot();
+        readStage();
+        reportErrors();
+    }
+
+    /**
+     * Throw the first error recorded by any stage, if any.  An unexpected
+     * exception or error in the converter or writer is rethrown as is.
+     */
+    private void reportErrors() {
+        if (_failure instanceof RuntimeException) {
+            throw (RuntimeException) _failure;
+        }
+        if (_failure instanceof Error) {
+            throw (Error) _failure;
+        }
+        if (_convertError != null) {
+            throw _convertError;
+        }
+        if (_readError != null) {
+            throw error("could not read input: %s", _readError.getMessage());
+        }
+        if (_writeError != null) {
+            throw error("could not write output: %s",
+                        _writeError.getMessage());
+        }
+    }
+
+    /** Kinds of slot. */
+    private static final int MESSAGE = 0, SETTINGS = 1, SKIP = 2, END = 3;
+
+    /** A reusable buffer holding one input line, or one window of a long
+     *  message line, and its output. */
+    private static final class Slot {
+        /** The kind of line. */
+        private int kind;
+        /** True if output should be flushed after this line. */
+        private boolean flush;
+        /** True if this buffer continues the line in the previous one. */
+        private boolean continued;
+        /** True if the line continues in the next buffer. */
+        private boolean more;
+        /** The characters of the input line, excluding terminator. */
+        private char[] text = new char[INITIAL_LINE];
+        /** Number of valid characters in TEXT. */
+        private int length;
+        /** The characters to print for this line. */
+        private char[] out = new char[INITIAL_LINE];
+        /** Number of valid characters in OUT. */
+        private int outLength;
+
+        /** Append C to TEXT. */
+        void append(char c) {
+            if (length == text.length) {
+                text = Arrays.copyOf(text, 2 * length);
+            }
+            text[length++] = c;
+        }
+    }
+
+    /** Initial capacity of slot buffers. */
+    private static final int INITIAL_LINE = 256;
+
+    /**
+     * Return the next item from FROM.  If none is ready, first publish
+     * everything staged on TO, since the consumer of TO may be what FROM
+     * is waiting for.
+     */
+    private static <T> T next(RingBuffer<T> from, RingBuffer<?> to) {
+        T item = from.poll();
+        if (item == null) {
+            to.publish();
+            item = from.take();
+        }
+        return item;
+    }
+
+    /**
+     * Reader stage: split input into lines, handing them to the converter
+     * in batches, and finish with an END slot.
+     */
+    private void readStage() {
+        char[] buffer = new char[READ_SIZE];
+        Slot line = null;
+        boolean afterCR = false;
+        try {
+            int n;
+            while (!_stopped && (n = _input.read(buffer)) >= 0) {
+                for (int i = 0; i < n; i += 1) {
+                    char c = buffer[i];
+                    if (c == '\n' && afterCR) {
+                        afterCR = false;
+                        continue;
+                    }
+                    afterCR = c == '\r';
+                    boolean end = c == '\n' || c == '\r';
+                    boolean continued = false;
+                    if (line != null && !end && line.length >= WINDOW
+                        && !Character.isLowSurrogate(c)
+                        && (line.continued || line.text[0] != '*')) {
+                        handOff(line, true);
+                        line = null;
+                        continued = true;
+                    }
+                    if (line == null) {
+                        line = _serial != null ? _serial : next(_free, _lines);
+                        line.length = 0;
+                        line.continued = continued;
+                    }
+                    if (end) {
+                        handOff(line, false);
+                        line = null;
+                    } else {
+                        line.append(c);
+                    }
+                }
+                _lines.publish();
+                _readBatched = 0;
+            }
+        } catch (IOException excp) {
+            _readError = excp;
+        }
+        if (line != null && _readError == null) {
+            handOff(line, false);
+        }
+        if (_serial != null) {
+            endConversion();
+            flush();
+            return;
+        }
+        Slot end = next(_free, _lines);
+        end.kind = END;
+        _lines.put(end);
+        _lines.publish();
+    }
+
+    /**
+     * Reader: hand LINE on to the converter as a message line, which
+     * continues in the next buffer iff MORE, publishing each BATCH of
+     * lines.  When running serially, convert and write it at once.
+     */
+    private void handOff(Slot line, boolean more) {
+        line.kind = MESSAGE;
+        line.more = more;
+        if (_serial != null) {
+            convertLine(line);
+            writeLine(line);
+            return;
+        }
+        _lines.put(line);
+        _readBatched += 1;
+        if (_readBatched == BATCH) {
+            _lines.publish();
+            _readBatched = 0;
+        }
+    }
+
+    /**
+     * Converter stage: apply settings lines to the machine and convert
+     * message lines into their printed form, handing them to the writer
+     * in batches.  Whenever input runs dry, the last line handed on is
+     * marked for flushing; since put() never has to wait (see RING), it
+     * never publishes on its own, so that line is still unpublished when it is
+     * marked.  After an error, pass remaining lines on unprinted.
+     */
+    private void convertStage() {
+        int batched = 0;
+        Slot last = null;
+        while (true) {
+            Slot line = _lines.poll();
+            if (line == null) {
+                if (last != null) {
+                    last.flush = true;
+                }
+                publishConverted();
+                batched = 0;
+                line = _lines.take();
+            } else if (batched == BATCH) {
+                publishConverted();
+                batched = 0;
+            }
+            line.flush = false;
+            if (line.kind == END) {
+                _converted.put(line);
+                publishConverted();
+                return;
+            }
+            convertLine(line);
+            _converted.put(line);
+            last = line;
+            batched += 1;
+        }
+    }
+
+    /**
+     * Converter: convert LINE, or after an error, mark it to be skipped.
+     * Unexpected exceptions are recorded rather than thrown, so that the
+     * converter goes on passing lines to the writer and no stage is left
+     * waiting for it.
+     */
+    private void convertLine(Slot line) {
+        if (_conversion == null && Events.Conversion.TYPE.isEnabled()) {
+            _conversion = new Events.Conversion();
+            _conversion.begin();
+        }
+        if (_convertError != null || _failure != null) {
+            line.kind = SKIP;
+        } else {
+            try {
+                _configured = convert(line, _configured);
+            } catch (EnigmaException excp) {
+                _convertError = excp;
+                _stopped = true;
+                line.kind = SKIP;
+            } catch (RuntimeException | Error excp) {
+                fail(excp);
+                line.kind = SKIP;
+            }
+        }
+    }
+
+    /**
+     * Converter: hand the lines converted so far on to the writer, ending
+     * the event recording their conversion, if any.
+     */
+    private void publishConverted() {
+        endConversion();
+        _converted.publish();
+    }
+
+    /**
+     * Converter: end the event recording conversion, if any.
+     */
+    private void endConversion() {
+        if (_conversion != null) {
+            _conversion.commit();
+            _conversion = null;
+        }
+    }
+
+    /**
+     * Process LINE, a settings line or a window of a message line, given
+     * that a settings line has been seen iff CONFIGURED, and return
+     * whether one has been seen now.
+     */
+    private boolean convert(Slot line, boolean configured) {
+        if (!line.continued && line.length > 0 && line.text[0] == '*') {
+            MachineSpec spec = _specs.get();
+            if (spec != _spec) {
+                _spec = spec;
+                _machine = spec.newMachine();
+                _alphabet = spec.alphabet();
+            }
+            _settings = new String(line.text, 0, line.length);
+            Main.setUp(_machine, _settings);
+            line.kind = SETTINGS;
+            return true;
+        }
+        if (!configured) {
+            throw error("Invalid Config");
+        }
+        if (_conversion != null) {
+            _conversion.lines += 1;
+            _conversion.chars += line.length;
+        }
+        int size = 2 * line.length + line.length / 5 + 2;
+        if (line.out.length < size) {
+            line.out = new char[Math.max(size, 2 * line.out.length)];
+        }
+        String message = null;
+        int[] before = null;
+        if (_cache != null && !line.continued && !line.more
+            && line.length <= ResultCache.MAX_MESSAGE) {
+            message = new String(line.text, 0, line.length);
+            before = _machine.positions();
+            ResultCache.Result hit =
+                _cache.get(_spec, _settings, before, message);
+            if (hit != null) {
+                _machine.setPositions(hit.positions());
+                String printed = hit.printed();
+                printed.getChars(0, printed.length(), line.out, 0);
+                line.outLength = printed.length();
+                return configured;
+            }
+        }
+        char[] text = line.text;
+        if (_indices.length < line.length) {
+            _indices = new int[Math.max(line.length, 2 * _indices.length)];
+        }
+        int[] indices = _indices;
+        int len = 0;
+        for (int i = 0; i < line.length; ) {
+            int c = Character.codePointAt(text, i, line.length);
+            i += Character.charCount(c);
+            if (!Machine.isSpace(c)) {
+                indices[len++] = _alphabet.toInt(c);
+            }
+        }
+        _machine.convert(indices, len);
+        char[] out = line.out;
+        int k = 0;
+        int count = line.continued ? _grouped : 0;
+        for (int i = 0; i < len; i += 1) {
+            int result = _alphabet.toCodePoint(indices[i]);
+            k += Character.toChars(result, out, k);
+            count += 1;
+            if (count % 5 == 0) {
+                out[k++] = ' ';
+            }
+        }
+        if (line.more) {
+            _grouped = count % 5;
+        } else {
+            out[k++] = '\n';
+        }
+        line.outLength = k;
+        if (message != null) {
+            _cache.put(_spec, _settings, before, message,
+                       new ResultCache.Result(new String(out, 0, k),
+                                              _machine.positions()));
+        }
+        return configured;
+    }
+
+    /**
+     * Writer stage: print converted lines and recycle every slot,
+     * flushing output whenever the converter has run out of input.
+     */
+    private void writeStage() {
+        int batched = 0;
+        while (true) {
+            Slot line = next(_converted, _free);
+            writeLine(line);
+            if (line.flush || line.kind == END) {
+                flush();
+            }
+            _free.put(line);
+            batched += 1;
+            if (line.kind == END) {
+                _free.publish();
+                return;
+            }
+            if (batched == BATCH) {
+                _free.publish();
+                batched = 0;
+            }
+        }
+    }
+
+    /**
+     * Writer: print LINE if it is a converted message line, recording
+     * any error.
+     */
+    private void writeLine(Slot line) {
+        if (line.kind == MESSAGE && _writeError == null && _failure == null) {
+            try {
+                _output.write(line.out, 0, line.outLength);
+            } catch (IOException excp) {
+                _writeError = excp;
+                _stopped = true;
+            } catch (RuntimeException | Error excp) {
+                fail(excp);
+            }
+        }
+    }
+
+    /**
+     * Flush my output, recording any error.
+     */
+    private void flush() {
+        if (_writeError == null && _failure == null) {
+            try {
+                Events.flush(_output, "pipeline");
+            } catch (IOException excp) {
+                _writeError = excp;
+                _stopped = true;
+            } catch (RuntimeException | Error excp) {
+                fail(excp);
+            }
+        }
+    }
+
+    /**
+     * Record EXCP, an unexpected exception or error in the converter or
+     * writer, unless one has already been recorded, and stop reading.
+     */
+    private synchronized void fail(Throwable excp) {
+        if (_failure == null) {
+            _failure = excp;
+        }
+        _stopped = true;
+    }
+
+    /** Source of machine specs. */
+    private final Supplier<MachineSpec> _specs;
+    /** Converter: the spec of _machine. */
+    private MachineSpec _spec;
+    /** Converter: the machine converting messages. */
+    private Machine _machine;
+    /** Converter: the machine's alphabet. */
+    private Alphabet _alphabet;
+    /** Converter: the last settings line applied to _machine. */
+    private String _settings;
+    /** Converter: cache of conversions, or null. */
+    private final ResultCache _cache;
+    /** Converter: true once a settings line has been seen. */
+    private boolean _configured;
+    /** Converter: event recording the batch being converted, if any. */
+    private Events.Conversion _conversion;
+    /** Converter: characters in the last, incomplete output group of a
+     *  message line continued in the next buffer. */
+    private int _grouped;
+    /** Converter: alphabet indices of the line being converted. */
+    private int[] _indices = new int[0];
+    /** Reader: lines handed on since the last publish. */
+    private int _readBatched;
+    /** The only line buffer, when running serially; otherwise null. */
+    private Slot _serial;
+    /** Source of lines. */
+    private final Reader _input;
+    /** Destination of converted messages. */
+    private final Writer _output;
+    /** Empty slots, from writer to reader. */
+    private final RingBuffer<Slot> _free = new RingBuffer<>(RING);
+    /** Lines read, from reader to converter. */
+    private final RingBuffer<Slot> _lines = new RingBuffer<>(RING);
+    /** Lines converted, from converter to writer. */
+    private final RingBuffer<Slot> _converted = new RingBuffer<>(RING);
+    /** Set when a stage fails, so the reader stops early. */
+    private volatile boolean _stopped;
+    /** First error from conversion, if any. */
+    private volatile EnigmaException _convertError;
+    /** Error reading input, if any. */
+    private volatile IOException _readError;
+    /** Error writing output, if any. */
+    private volatile IOException _writeError;
+    /** First unexpected exception or error in the converter or writer,
+     *  if any. */
+    private volatile Throwable _failure;
+}
@@ -0,0 +1,150 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the Pipeline class.
+ *
+ * @author Amy Stanley
+ */
+public class PipelineTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings line of the standard test machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the output of a pipeline run over INPUT with a fresh naval
+     *  machine, appending any error message to the output. */
+    private String run(String input) {
+        StringWriter output = new StringWriter();
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        try {
+            new Pipeline(() -> spec, new StringReader(input), output).run();
+        } catch (EnigmaException excp) {
+            output.write("Error: " + excp.getMessage());
+        }
+        return output.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLines() {
+        assertEquals("QVPQS OKOIL PUBKJ \nZPISF XDW\n\n",
+                     run(SETTINGS + "\nFROM HIS SHOULDER\r\nHIAWATHA\r\n\n"));
+    }
+
+    @Test
+    public void testUnterminatedLastLine() {
+        assertEquals("QVPQ\n", run(SETTINGS + "\nFROM"));
+    }
+
+    @Test
+    public void testManyLines() {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10 * Pipeline.SLOTS; i += 1) {
+            input.append(SETTINGS).append("\nFROM HIS\n");
+            expected.append("QVPQS OK\n");
+        }
+        assertEquals(expected.toString(), run(input.toString()));
+    }
+
+    @Test
+    public void testLongLines() {
+        for (int extra = 0; extra < 5; extra += 1) {
+            StringBuilder message = new StringBuilder();
+            for (int i = 0; i < 3 * Pipeline.WINDOW + extra; i += 1) {
+                message.append((char) ('A' + i % 26));
+                if (i % 7 == 0) {
+                    message.append(' ');
+                }
+            }
+            Machine M = navalMachine();
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(expected);
+            Main.printMessageLine(out, M.convert(message.toString()));
+            Main.printMessageLine(out, M.convert("FROM"));
+            assertEquals(expected.toString(),
+                         run(SETTINGS + "\n" + message + "\nFROM\n"));
+        }
+    }
+
+    @Test
+    public void testErrorsFollowOutput() {
+        assertEquals("QVPQ\nError: character not in alphabet",
+                     run(SETTINGS + "\nFROM\nfrom\nFROM\n"));
+        assertEquals("Error: Invalid Config", run("FROM\n" + SETTINGS));
+    }
+
+    @Test
+    public void testConverterFailureEndsRun() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 4 * Pipeline.SLOTS; i += 1) {
+            input.append(SETTINGS).append("\nFROM\n");
+        }
+        StringWriter output = new StringWriter();
+        Pipeline pipeline =
+            new Pipeline(() -> {
+                throw new IllegalStateException("no spec");
+            }, new StringReader(input.toString()), output);
+        try {
+            pipeline.run();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException excp) {
+            assertEquals("no spec", excp.getMessage());
+        }
+        assertEquals("", output.toString());
+    }
+
+    @Test
+    public void testWriterFailureEndsRun() {
+        StringBuilder input = new StringBuilder(SETTINGS + "\n");
+        for (int i = 0; i < 4 * Pipeline.SLOTS; i += 1) {
+            input.append("FROM\n");
+        }
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        Writer output = new Writer() {
+            @Override
+            public void write(char[] buf, int off, int len) {
+                throw new IllegalStateException("no room");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Pipeline pipeline =
+            new Pipeline(() -> spec, new StringReader(input.toString()),
+                         output);
+        try {
+            pipeline.run();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException excp) {
+            assertEquals("no room", excp.getMessage());
+        }
+    }
+}
@@ -17,6 +17,11 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    @Override
+    Rotor copy() {
+        return new Reflector(name(), permutation());
+    }
+
     @Override
     void set(int posn) {
         if (posn != 0) {
@@ -0,0 +1,199 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of converted message lines, for traffic that repeats
+ * the same messages under the same settings.  An entry is keyed by
+ * everything that determines a conversion: the machine spec, the
+ * settings line in force, the rotor positions when the message begins,
+ * and the message itself.  It holds the printed conversion and the rotor
+ * positions after it, so that a machine served from the cache can carry
+ * on exactly as if it had converted the message.  The least recently
+ * used entry is evicted when the cache is full, and entries older than
+ * the time to live are treated as absent.  All operations are
+ * thread-safe.
+ *
+ * @author Amy Stanley
+ */
+final class ResultCache {
+
+    /** Longest message line worth caching, in characters. */
+    static final int MAX_MESSAGE = 256;
+
+    /**
+     * A cache of at most CAPACITY > 0 entries, each kept at most TTL
+     * nanoseconds, or indefinitely if TTL is 0.
+     */
+    ResultCache(int capacity, long ttl) {
+        _capacity = capacity;
+        _ttl = ttl;
+        _entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Result> e) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** A cached conversion. */
+    static final class Result {
+        /** A conversion printed as PRINTED, after which the rotors are
+         *  at POSITIONS. */
+        Result(String printed, int[] positions) {
+            _printed = printed;
+            _positions = positions;
+            _time = System.nanoTime();
+        }
+
+        /** Return the printed conversion, including its line end. */
+        String printed() {
+            return _printed;
+        }
+
+        /** Return the rotor positions after the conversion (see
+         *  Machine.positions).  Must not be modified. */
+        int[] positions() {
+            return _positions;
+        }
+
+        /** Printed conversion. */
+        private final String _printed;
+        /** Rotor positions after the conversion. */
+        private final int[] _positions;
+        /** Time of creation, from System.nanoTime. */
+        private final long _time;
+    }
+
+    /**
+     * Return the cached conversion of MESSAGE by a machine built to SPEC,
+     * set up by the settings line SETTINGS and with its rotors now at
+     * POSITIONS, or null if there is none.
+     */
+    synchronized Result get(MachineSpec spec, String settings,
+                            int[] positions, String message) {
+        Key key = new Key(spec, settings, positions, message);
+        Result result = _entries.get(key);
+        if (result != null && _ttl > 0
+            && System.nanoTime() - result._time > _ttl) {
+            _entries.remove(key);
+            _expirations += 1;
+            result = null;
+        }
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /**
+     * Record RESULT as the conversion of MESSAGE by a machine built to
+     * SPEC, set up by SETTINGS and with its rotors at POSITIONS.
+     */
+    synchronized void put(MachineSpec spec, String settings,
+                          int[] positions, String message, Result result) {
+        _entries.put(new Key(spec, settings, positions, message), result);
+    }
+
+    /** Return the number of lookups that found a conversion. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that found none. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries evicted to make room. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** Return the number of entries dropped for age. */
+    synchronized long expirations() {
+        return _expirations;
+    }
+
+    /** Return the number of entries now held. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return a one-line summary of my use. */
+    synchronized String report() {
+        long lookups = _hits + _misses;
+        return String.format("cache: %d hits, %d misses (%.1f%% hit rate), "
+                             + "%d evicted, %d expired, %d held",
+                             _hits, _misses,
+                             lookups == 0 ? 0.0 : 100.0 * _hits / lookups,
+                             _evictions, _expirations, _entries.size());
+    }
+
+    /** The state and message determining a conversion. */
+    private static final class Key {
+        /** The key for MESSAGE converted by a machine built to SPEC,
+         *  set up by SETTINGS and with its rotors at POSITIONS. */
+        Key(MachineSpec spec, String settings, int[] positions,
+            String message) {
+            _spec = spec;
+            _settings = settings;
+            _positions = positions;
+            _message = message;
+            _hash = ((System.identityHashCode(spec) * 31
+                      + settings.hashCode()) * 31
+                     + Arrays.hashCode(positions)) * 31 + message.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return _hash == other._hash && _spec == other._spec
+                && _settings.equals(other._settings)
+                && Arrays.equals(_positions, other._positions)
+                && _message.equals(other._message);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The machine's spec. */
+        private final MachineSpec _spec;
+        /** The settings line in force. */
+        private final String _settings;
+        /** The rotor positions before the message. */
+        private final int[] _positions;
+        /** The message line. */
+        private final String _message;
+        /** My hash code. */
+        private final int _hash;
+    }
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+    /** Lifetime of entries in nanoseconds, or 0 for no limit. */
+    private final long _ttl;
+    /** Entries, least recently used first. */
+    private final LinkedHashMap<Key, Result> _entries;
+    /** Number of lookups that found a conversion. */
+    private long _hits;
+    /** Number of lookups that found none. */
+    private long _misses;
+    /** Number of entries evicted to make room. */
+    private long _evictions;
+    /** Number of entries dropped for age. */
+    private long _expirations;
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the ResultCache class.
+ *
+ * @author Amy Stanley
+ */
+public class ResultCacheTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings line of the standard test machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Input repeating the same messages under the same settings. */
+    private static final String INPUT;
+
+    static {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 20; i += 1) {
+            input.append(SETTINGS).append("\nFROM HIS\nSHOULDER\n")
+                .append("FROM HIS\n");
+        }
+        INPUT = input.toString();
+    }
+
+    /** Return the output of a pipeline run over INPUT with CACHE. */
+    private String run(ResultCache cache) {
+        StringWriter output = new StringWriter();
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        new Pipeline(() -> spec, new StringReader(INPUT), output, cache)
+            .run();
+        return output.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRepeatedMessages() {
+        ResultCache cache = new ResultCache(100, 0);
+        assertEquals(run(null), run(cache));
+        assertEquals(3, cache.misses());
+        assertEquals(57, cache.hits());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        ResultCache cache = new ResultCache(2, 0);
+        assertEquals(run(null), run(cache));
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.hits());
+        assertEquals(58, cache.evictions());
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        ResultCache cache = new ResultCache(100, 1);
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        int[] posns = { 0, 1, 2, 3, 4 };
+        cache.put(spec, SETTINGS, posns, "FROM",
+                  new ResultCache.Result("QVPQ\n", posns));
+        Thread.sleep(1);
+        assertNull(cache.get(spec, SETTINGS, posns, "FROM"));
+        assertEquals(1, cache.expirations());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,159 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free queue for exactly one producer thread and one
+ * consumer thread.  Items are handed off in batches: offer() stages an
+ * item and publish() makes all staged items visible to the consumer at
+ * once; likewise poll() takes items and their slots are returned to the
+ * producer a quarter of the ring at a time, or by release().  put() and
+ * take() are blocking forms that publish or release before they wait.
+ *
+ * @author Amy Stanley
+ */
+final class RingBuffer<T> {
+
+    /**
+     * A ring with room for at least CAPACITY items, which must be
+     * positive.
+     */
+    @SuppressWarnings("unchecked")
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        _items = (T[]) new Object[size];
+        _mask = size - 1;
+        _releaseMask = Math.max(1, size / 4) - 1;
+    }
+
+    /**
+     * Return the number of items I can hold.
+     */
+    int capacity() {
+        return _items.length;
+    }
+
+    /* Producer side. */
+
+    /**
+     * Stage ITEM for the consumer, returning false if I am full.  The
+     * item is not visible to the consumer until publish().
+     */
+    boolean offer(T item) {
+        long tail = _stagedTail;
+        if (tail - _headCache >= _items.length) {
+            _headCache = _head.get();
+            if (tail - _headCache >= _items.length) {
+                return false;
+            }
+        }
+        _items[(int) tail & _mask] = item;
+        _stagedTail = tail + 1;
+        return true;
+    }
+
+    /**
+     * Make all staged items visible to the consumer.
+     */
+    void publish() {
+        _tail.lazySet(_stagedTail);
+    }
+
+    /**
+     * Stage ITEM, publishing and waiting for room if I am full.
+     */
+    void put(T item) {
+        if (!offer(item)) {
+            publish();
+            for (int spins = 0; !offer(item); spins += 1) {
+                idle(spins);
+            }
+        }
+    }
+
+    /* Consumer side. */
+
+    /**
+     * Return the next published item, or null if there is none.
+     */
+    T poll() {
+        long head = _takenHead;
+        if (head >= _tailCache) {
+            _tailCache = _tail.get();
+            if (head >= _tailCache) {
+                return null;
+            }
+        }
+        int index = (int) head & _mask;
+        T item = _items[index];
+        _items[index] = null;
+        _takenHead = head + 1;
+        if ((_takenHead & _releaseMask) == 0) {
+            release();
+        }
+        return item;
+    }
+
+    /**
+     * Return the slots of all polled items to the producer.
+     */
+    void release() {
+        _head.lazySet(_takenHead);
+    }
+
+    /**
+     * Return the next item, releasing and waiting for one if none has
+     * been published.
+     */
+    T take() {
+        T item = poll();
+        if (item == null) {
+            release();
+            for (int spins = 0; (item = poll()) == null; spins += 1) {
+                idle(spins);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Wait briefly, the SPINS'th time in a row: first by spinning, then by
+     * yielding, then by parking.
+     */
+    private static void idle(int spins) {
+        if (spins < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (spins < YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** Number of busy-wait iterations before yielding. */
+    private static final int SPIN_LIMIT = 100;
+    /** Number of iterations before parking. */
+    private static final int YIELD_LIMIT = 200;
+    /** Length of a park, in nanoseconds. */
+    private static final long PARK_NANOS = 20_000;
+
+    /** The slots, indexed by sequence number modulo their length. */
+    private final T[] _items;
+    /** Mask reducing a sequence number to a slot index. */
+    private final int _mask;
+    /** Mask whose zero points are where poll() releases slots. */
+    private final int _releaseMask;
+    /** Sequence number of the next item to publish. */
+    private final AtomicLong _tail = new AtomicLong();
+    /** Sequence number of the next slot to release. */
+    private final AtomicLong _head = new AtomicLong();
+    /** Producer: sequence number of the next item to stage. */
+    private long _stagedTail;
+    /** Producer: last value read from _head. */
+    private long _headCache;
+    /** Consumer: sequence number of the next item to poll. */
+    private long _takenHead;
+    /** Consumer: last value read from _tail. */
+    private long _tailCache;
+}
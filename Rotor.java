@@ -16,6 +16,9 @@ class Rotor {
         _name = name;
         _permutation = perm;
         _setting = 0;
+        _size = perm.size();
+        _forwardTable = perm.shiftedTable(false);
+        _backwardTable = perm.shiftedTable(true);
     }
 
     /**
@@ -90,7 +93,10 @@ class Rotor {
     int convertForward(int p) {
         int result = 0;
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
+        }
+        if (_forwardTable != null) {
+            return _forwardTable[_setting * _size + p] & MASK;
         }
         int prePermute = _permutation.wrap(p + _setting);
         int contactExited = _permutation.permute(prePermute);
@@ -105,7 +111,10 @@ class Rotor {
     int convertBackward(int e) {
         int result = 0;
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
+        }
+        if (_backwardTable != null) {
+            return _backwardTable[_setting * _size + e] & MASK;
         }
         int prePermute = _permutation.wrap(e + _setting);
         int contactExited = _permutation.invert(prePermute);
@@ -113,6 +122,23 @@ class Rotor {
         return result;
     }
 
+    /**
+     * Return my conversions at every setting, or null if my alphabet is
+     * too large to tabulate: entry S * size() + P is convertForward(P)
+     * at setting S, as an unsigned byte.  Must not be modified.
+     */
+    byte[] forwardTable() {
+        return _forwardTable;
+    }
+
+    /**
+     * Return my inverse conversions at every setting, laid out as for
+     * forwardTable(), or null.  Must not be modified.
+     */
+    byte[] backwardTable() {
+        return _backwardTable;
+    }
+
     /**
      * Returns the positions of the notches, as a string giving the letters
      * on the ring at which they occur.
@@ -129,12 +155,28 @@ class Rotor {
         return false;
     }
 
+    /**
+     * Returns true iff I would be at a notch at setting POSN (see
+     * atNotch()).
+     */
+    boolean atNotch(int posn) {
+        return false;
+    }
+
     /**
      * Advance me one position, if possible. By default, does nothing.
      */
     void advance() {
     }
 
+    /**
+     * Return a new rotor like me, sharing my permutation but with its own
+     * setting, initially 0.
+     */
+    Rotor copy() {
+        return new Rotor(_name, _permutation);
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -152,4 +194,16 @@ class Rotor {
 
     /** Setting for each rotor at current moment. */
     private int _setting;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Mask recovering an unsigned table entry. */
+    private static final int MASK = 0xFF;
+
+    /** Conversions at each setting, shared with my permutation. */
+    private final byte[] _forwardTable;
+
+    /** Inverse conversions at each setting, shared with my permutation. */
+    private final byte[] _backwardTable;
 }
@@ -0,0 +1,228 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The rotors available to a machine, looked up by name.  A catalog built
+ * from configuration text only indexes each rotor description by name
+ * and offset, and compiles a description into a rotor the first time a
+ * machine asks for it, so that the cost of a catalog with thousands of
+ * rotors is paid only for the few that are used.  Errors in a rotor's
+ * cycles are consequently reported only when it is first used, or when
+ * the whole catalog is checked.
+ *
+ * @author Amy Stanley
+ */
+final class RotorCatalog {
+
+    /**
+     * Return a catalog that hands out ROTORS themselves, so that machines
+     * using it share their rotors' state.
+     */
+    static RotorCatalog of(Collection<Rotor> rotors) {
+        RotorCatalog catalog = new RotorCatalog(null, null, false);
+        catalog.addAll(rotors);
+        return catalog;
+    }
+
+    /**
+     * Return a catalog that hands out fresh copies of PATTERNS, which
+     * must all have the alphabet ALPHA.
+     */
+    static RotorCatalog ofPatterns(Collection<Rotor> patterns,
+                                   Alphabet alpha) {
+        RotorCatalog catalog = new RotorCatalog(null, alpha, true);
+        for (Rotor rotor : patterns) {
+            if (rotor.size() != alpha.size()) {
+                throw error("rotor %s has wrong alphabet", rotor.name());
+            }
+        }
+        catalog.addAll(patterns);
+        return catalog;
+    }
+
+    /**
+     * Return a catalog of the rotor descriptions in TEXT from offset
+     * START to the end, over alphabet ALPHA, handing out fresh copies.
+     * Each description is a name, a type (M followed by notches, N or R)
+     * and any number of cycles.  A name used twice is an error here,
+     * before either description is compiled, so any error in the
+     * repeated one's cycles goes unreported.
+     */
+    static RotorCatalog index(String text, int start, Alphabet alpha) {
+        RotorCatalog catalog = new RotorCatalog(text, alpha, true);
+        int p = skipSpace(text, start);
+        while (p < text.length()) {
+            int nameStart = p;
+            int nameEnd = tokenEnd(text, p);
+            String name = text.substring(nameStart, nameEnd);
+            p = skipSpace(text, nameEnd);
+            if (p == text.length()) {
+                throw error("bad rotor description");
+            }
+            char type = text.charAt(p);
+            if (type != 'M' && type != 'N' && type != 'R') {
+                throw new EnigmaException("Wrong rotor type");
+            }
+            int end = tokenEnd(text, p);
+            p = skipSpace(text, end);
+            while (isCycle(text, p, tokenEnd(text, p))) {
+                end = tokenEnd(text, p);
+                p = skipSpace(text, end);
+            }
+            catalog.add(name, new Entry(nameStart, end, null));
+        }
+        return catalog;
+    }
+
+    /**
+     * A catalog of descriptions in TEXT over ALPHA that hands out copies
+     * iff COPIES.
+     */
+    private RotorCatalog(String text, Alphabet alpha, boolean copies) {
+        _text = text;
+        _alphabet = alpha;
+        _copies = copies;
+    }
+
+    /**
+     * Return the number of rotors in this catalog.
+     */
+    int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Return the names of my rotors, in sorted order.
+     */
+    List<String> names() {
+        List<String> result = new ArrayList<>(_entries.keySet());
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Return the number of rotors compiled so far.
+     */
+    int compiled() {
+        int count = 0;
+        for (Entry entry : _entries.values()) {
+            if (entry.rotor != null) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the rotor named NAME to insert into a machine, compiling it
+     * if needed, or null if there is no such rotor.
+     */
+    Rotor get(String name) {
+        Entry entry = _entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        Rotor rotor = entry.rotor;
+        if (rotor == null) {
+            rotor = compile(entry);
+            entry.rotor = rotor;
+        }
+        return _copies ? rotor.copy() : rotor;
+    }
+
+    /**
+     * Compile every rotor not yet compiled, so that any error in the
+     * descriptions is reported now rather than when a machine first
+     * uses the rotor.
+     */
+    void check() {
+        for (Entry entry : _entries.values()) {
+            if (entry.rotor == null) {
+                entry.rotor = compile(entry);
+            }
+        }
+    }
+
+    /**
+     * Return the rotor described by ENTRY.  Concurrent callers may each
+     * compile it; the results are equivalent.
+     */
+    private Rotor compile(Entry entry) {
+        Scanner description =
+            new Scanner(_text.substring(entry.start, entry.end));
+        return Main.readRotor(description, _alphabet);
+    }
+
+    /** Add each of ROTORS under its name. */
+    private void addAll(Collection<Rotor> rotors) {
+        for (Rotor rotor : rotors) {
+            add(rotor.name(), new Entry(-1, -1, rotor));
+        }
+    }
+
+    /** Add ENTRY under NAME, which must be new. */
+    private void add(String name, Entry entry) {
+        if (_entries.put(name, entry) != null) {
+            throw error("duplicate rotor name %s", name);
+        }
+    }
+
+    /** Return true iff TEXT[P..END) is a cycle token, as Main.readRotor
+     *  recognizes them. */
+    private static boolean isCycle(String text, int p, int end) {
+        return end - p > 2 && text.charAt(p) == '('
+            && text.charAt(end - 1) == ')';
+    }
+
+    /** Return the offset of the first non-whitespace character in TEXT
+     *  at or after P, or TEXT's length if none. */
+    static int skipSpace(String text, int p) {
+        while (p < text.length() && Character.isWhitespace(text.charAt(p))) {
+            p += 1;
+        }
+        return p;
+    }
+
+    /** Return the offset just past the token in TEXT starting at P. */
+    static int tokenEnd(String text, int p) {
+        while (p < text.length() && !Character.isWhitespace(text.charAt(p))) {
+            p += 1;
+        }
+        return p;
+    }
+
+    /** A rotor description and, once compiled, its rotor. */
+    private static final class Entry {
+        /** An entry for the description at [START, END), whose rotor is
+         *  ROTOR if already built. */
+        Entry(int start, int end, Rotor rotor) {
+            this.start = start;
+            this.end = end;
+            this.rotor = rotor;
+        }
+
+        /** Offset of the description in the catalog text. */
+        private final int start;
+        /** Offset just past the description. */
+        private final int end;
+        /** The compiled rotor, or null. */
+        private volatile Rotor rotor;
+    }
+
+    /** Configuration text holding rotor descriptions, if any. */
+    private final String _text;
+    /** Alphabet of my rotors, if known. */
+    private final Alphabet _alphabet;
+    /** True iff I hand out copies rather than my rotors themselves. */
+    private final boolean _copies;
+    /** Entries by rotor name. */
+    private final HashMap<String, Entry> _entries = new HashMap<>();
+}
@@ -0,0 +1,83 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the RotorCatalog class.
+ *
+ * @author Amy Stanley
+ */
+public class RotorCatalogTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration whose rotor Z has an invalid cycle. */
+    private static final String CONFIG =
+        "ABCD 3 1\n R R (AB) (CD)\n M MA (ABCD)\n"
+        + " N N (ACBD)\n Z N (AE)\n";
+
+    /** Offset of the first rotor description in CONFIG. */
+    private static final int START = CONFIG.indexOf('\n');
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCompilesOnlyUsedRotors() {
+        Alphabet alpha = new Alphabet("ABCD");
+        RotorCatalog catalog = RotorCatalog.index(CONFIG, START, alpha);
+        assertEquals(4, catalog.size());
+        assertEquals(0, catalog.compiled());
+        Machine M = new Machine(alpha, 3, 1, catalog);
+        Main.setUp(M, "* R N M AA");
+        assertEquals(3, catalog.compiled());
+        assertEquals("DCBA", M.convert("ABCD"));
+    }
+
+    @Test
+    public void testCopiesAreIndependent() {
+        Alphabet alpha = new Alphabet("ABCD");
+        RotorCatalog catalog = RotorCatalog.index(CONFIG, START, alpha);
+        Rotor first = catalog.get("M");
+        first.set(2);
+        assertEquals(0, catalog.get("M").setting());
+        assertEquals("M", catalog.get("M").name());
+        assertNull(catalog.get("Y"));
+    }
+
+    @Test
+    public void testErrorsReportedOnUse() {
+        Alphabet alpha = new Alphabet("ABCD");
+        RotorCatalog catalog = RotorCatalog.index(CONFIG, START, alpha);
+        try {
+            catalog.get("Z");
+            fail("bad cycle not reported");
+        } catch (EnigmaException excp) {
+            assertEquals(0, catalog.compiled());
+        }
+    }
+
+    @Test
+    public void testDuplicateName() {
+        Alphabet alpha = new Alphabet("ABCD");
+        for (String again : new String[] {" M N (AB)\n", " R R (AE)\n"}) {
+            try {
+                RotorCatalog.index(CONFIG + again, START, alpha);
+                fail("duplicate rotor name accepted");
+            } catch (EnigmaException excp) {
+                assertEquals("duplicate rotor name "
+                             + again.trim().substring(0, 1),
+                             excp.getMessage());
+            }
+        }
+    }
+}
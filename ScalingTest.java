@@ -0,0 +1,214 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * Checks that work which should take time linear in its size does, so
+ * that an accidentally quadratic change fails the build rather than
+ * waiting for a large input to expose it.  Each operation is timed at
+ * sizes growing geometrically by FACTOR over STEPS steps, taking the
+ * best of REPEATS timings at each (each repeating the work for at least
+ * MIN_NANOS), and the time must grow no faster than
+ * the size raised to MAX_EXPONENT: linear work grows by FACTOR per step
+ * and quadratic work by its square, with a wide margin between for the
+ * noise of timing on a loaded machine.
+ *
+ * @author Amy Stanley
+ */
+public class ScalingTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(120);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Ratio of successive sizes. */
+    private static final int FACTOR = 4;
+
+    /** Number of times the size grows. */
+    private static final int STEPS = 2;
+
+    /** Runs timed at each size, of which the fastest counts. */
+    private static final int REPEATS = 5;
+
+    /** Times an operation is measured before it fails, so that one
+     *  disturbed measurement does not fail the build. */
+    private static final int ATTEMPTS = 3;
+
+    /** Largest tolerated exponent of growth in time with size. */
+    private static final double MAX_EXPONENT = 1.5;
+
+    /** Settings line of the standard test machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Least time over which a run is timed, in nanoseconds: shorter
+     *  work is repeated and its time averaged. */
+    private static final long MIN_NANOS = 2_000_000;
+
+    /** Return the least time, in nanoseconds, taken by WORK in REPEATS
+     *  timings. */
+    private static double time(Runnable work) {
+        double best = Double.MAX_VALUE;
+        for (int r = 0; r < REPEATS; r += 1) {
+            long start = System.nanoTime();
+            long elapsed;
+            int runs = 0;
+            do {
+                work.run();
+                runs += 1;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < MIN_NANOS);
+            best = Math.min(best, (double) elapsed / runs);
+        }
+        return best;
+    }
+
+    /**
+     * Assert that WHAT, done by WORK.apply(N) for sizes N from SIZE up
+     * by FACTOR, takes time growing no faster than N to the power
+     * MAX_EXPONENT in one of ATTEMPTS measurements.  The work is done
+     * once at the largest size first, so that it is compiled before it is
+     * timed.
+     */
+    private static void assertLinear(String what, IntFunction<Runnable> work,
+                                      int size) {
+        int largest = size;
+        for (int s = 0; s < STEPS; s += 1) {
+            largest *= FACTOR;
+        }
+        work.apply(largest).run();
+        List<String> report = new ArrayList<>();
+        double exponent = Double.MAX_VALUE;
+        for (int a = 0; a < ATTEMPTS && exponent > MAX_EXPONENT; a += 1) {
+            report.clear();
+            double first = 0;
+            double last = 0;
+            for (int n = size; n <= largest; n *= FACTOR) {
+                last = time(work.apply(n));
+                if (n == size) {
+                    first = last;
+                }
+                report.add(String.format("%d: %.2f ms", n, last / 1e6));
+            }
+            exponent = Math.log(last / first)
+                / Math.log((double) largest / size);
+        }
+        assertTrue(msg(what, "time grows as size^%.2f (%s)", exponent,
+                       String.join(", ", report)),
+                   exponent <= MAX_EXPONENT);
+    }
+
+    /** Return a string of the characters of an alphabet of SIZE
+     *  characters, all in the Basic Multilingual Plane if SIZE is at
+     *  most 1 << 14. */
+    private static String letters(int size) {
+        int[] letters = Workload.letters(size);
+        return new String(letters, 0, letters.length);
+    }
+
+    /** Return cycles pairing the characters of LETTERS, as in a
+     *  plugboard, leaving out any last odd one. */
+    private static String pairs(String letters) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i + 1 < letters.length(); i += 2) {
+            result.append('(').append(letters.charAt(i))
+                .append(letters.charAt(i + 1)).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a configuration text with a reflector and COUNT moving
+     *  rotors over UPPER. */
+    private static String config(int count) {
+        StringBuilder result =
+            new StringBuilder(UPPER_STRING + "\n5 3\n");
+        result.append(" B R ").append(NAVALA.get("B")).append('\n');
+        for (int i = 0; i < count; i += 1) {
+            result.append(String.format(" R%d MQ %s%n", i,
+                                        NAVALA.get("I")));
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertString() {
+        Machine machine = navalMachine();
+        Main.setUp(machine, SETTINGS);
+        assertLinear("Machine.convert(String)", n -> {
+            String message = "HELLO WORLD ".repeat(n / 12);
+            return () -> machine.convert(message);
+        }, 1 << 14);
+    }
+
+    @Test
+    public void testAlphabet() {
+        assertLinear("new Alphabet", n -> {
+            String chars = letters(n);
+            return () -> new Alphabet(chars);
+        }, 1 << 10);
+    }
+
+    @Test
+    public void testPermutation() {
+        assertLinear("new Permutation", n -> {
+            Alphabet alpha = new Alphabet(letters(n));
+            String cycles = pairs(letters(n));
+            return () -> new Permutation(cycles, alpha);
+        }, 1 << 10);
+        assertLinear("Permutation.permute(char)", n -> {
+            String chars = letters(n);
+            Alphabet alpha = new Alphabet(chars);
+            Permutation perm = new Permutation(pairs(chars), alpha);
+            return () -> {
+                for (int i = 0; i < chars.length(); i += 1) {
+                    perm.permute(chars.charAt(i));
+                }
+            };
+        }, 1 << 10);
+    }
+
+    @Test
+    public void testInsertRotors() {
+        assertLinear("Machine.insertRotors", n -> {
+            String config = config(n);
+            String[] names = new String[n + 1];
+            names[0] = "B";
+            for (int i = 1; i <= n; i += 1) {
+                names[i] = "R" + (i - 1);
+            }
+            return () -> {
+                Machine machine =
+                    new Machine(UPPER, n + 1, n,
+                                Main.readConfig(config).rotors());
+                machine.insertRotors(names);
+            };
+        }, 1 << 9);
+    }
+
+    @Test
+    public void testRotorCatalog() {
+        assertLinear("Main.readConfig", n -> {
+            String config = config(n);
+            return () -> Main.readConfig(config);
+        }, 1 << 10);
+        assertLinear("RotorCatalog.check", n -> {
+            String config = config(n);
+            return () -> Main.readConfig(config).rotors().check();
+        }, 1 << 10);
+    }
+}
@@ -0,0 +1,595 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A search for the keys under which a ciphertext decrypts to text that
+ * begins with a known plaintext, its crib, spread over worker processes
+ * on the local host.  Run with
+ *     java -cp .. enigma.Search [OPTIONS] CONFIG CIPHERTEXT CRIB
+ * The keys searched are every legal order of the rotors in the
+ * configuration file CONFIG (a reflector, then non-moving rotors, then a
+ * moving rotor for each pawl, all distinct) at every start position,
+ * under one plugboard.  The keys are cut into shards, one for each rotor
+ * order and setting of the rotor after the reflector.  A coordinator
+ * hands the shards out in turn to worker JVMs, which it starts on its
+ * own class path and speaks to through their standard input and output,
+ * so that the search needs nothing beyond the local host, and, the
+ * shards being independent, runs about as many times faster as there
+ * are workers, up to the number of processors.  Each key under which
+ * CIPHERTEXT converts to text beginning with CRIB is a candidate; once
+ * every shard is done, the candidates are printed as settings lines, in
+ * sorted order.  Its OPTIONS, with defaults, are
+ *     --workers=N        number of worker processes (default: the number
+ *                        of available processors)
+ *     --checkpoint=FILE  file recording the shards done and their
+ *                        candidates, as each is done; a search run again
+ *                        with the same file skips the shards it records
+ *     --plugboard=CYCLES plugboard cycles, as in a settings line, under
+ *                        which to search (default: none)
+ * A worker that dies has its shard retried by a replacement, up to
+ * ATTEMPTS times.  Whitespace in CIPHERTEXT and CRIB is ignored.  A
+ * worker (run with --worker and the same arguments) reads the number of
+ * a shard per line, and answers each with a line "found K SETTINGS" for
+ * each candidate in shard K, followed by "done K".
+ *
+ * @author Amy Stanley
+ */
+public class Search {
+
+    /** Options of a search. */
+    static final String OPTIONS =
+        "--workers=(\\d+) --checkpoint=(.+) --plugboard=(.*) --worker "
+        + "--=(.*){3}";
+
+    /** Times a shard is tried before the search fails. */
+    static final int ATTEMPTS = 3;
+
+    /** Search as directed by ARGS (see above). */
+    public static void main(String... args) {
+        try {
+            CommandArgs options = new CommandArgs(OPTIONS, args);
+            if (!options.ok() || options.get("--").size() != 3) {
+                throw error("Usage: java enigma.Search [--workers=N] "
+                            + "[--checkpoint=FILE] [--plugboard=CYCLES] "
+                            + "CONFIG CIPHERTEXT CRIB");
+            }
+            List<String> operands = options.get("--");
+            String plugboard = options.contains("--plugboard")
+                ? options.getFirst("--plugboard") : "";
+            Search search = new Search(Main.readFile(operands.get(0)),
+                                       plugboard, operands.get(1),
+                                       operands.get(2));
+            if (options.contains("--worker")) {
+                search.work(new BufferedReader(new InputStreamReader(
+                                System.in, StandardCharsets.UTF_8)),
+                            System.out);
+                return;
+            }
+            int workers = options.contains("--workers")
+                ? Integer.parseInt(options.getFirst("--workers"))
+                : Runtime.getRuntime().availableProcessors();
+            String checkpoint = options.getFirst("--checkpoint");
+            List<String> command =
+                workerCommand(operands.get(0), plugboard, operands.get(1),
+                              operands.get(2));
+            for (String candidate
+                     : search.coordinate(command, workers,
+                                         checkpoint == null ? null
+                                         : Paths.get(checkpoint))) {
+                System.out.println(candidate);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Return the command line of a worker for the search of CIPHERTEXT
+     * for CRIB under the configuration in the file named CONFIG and the
+     * plugboard cycles PLUGBOARD, running on my JVM and class path.
+     */
+    static List<String> workerCommand(String config, String plugboard,
+                                      String ciphertext, String crib) {
+        return List.of(Paths.get(System.getProperty("java.home"), "bin",
+                                 "java").toString(),
+                       "-cp", System.getProperty("java.class.path"),
+                       Search.class.getName(), "--worker",
+                       "--plugboard=" + plugboard, config, ciphertext,
+                       crib);
+    }
+
+    /**
+     * A search of CIPHERTEXT for CRIB under the configuration CONFIG (the
+     * text of a configuration file) and the plugboard cycles PLUGBOARD.
+     */
+    Search(String config, String plugboard, String ciphertext,
+           String crib) {
+        MachineSpec spec = Main.readConfig(config);
+        Alphabet alpha = spec.alphabet();
+        _alphabet = alpha;
+        _size = alpha.size();
+        _catalog = spec.rotors();
+        _plugboardText = plugboard.strip();
+        _plugboard = Permutation.intern(_plugboardText, alpha);
+        _ciphertext = indices(ciphertext, alpha);
+        _crib = indices(crib, alpha);
+        if (_crib.length > _ciphertext.length) {
+            throw error("crib is longer than the ciphertext");
+        }
+        _orders = orders(spec);
+        _shards = _orders.size() * _size;
+        _fingerprint = Integer.toHexString(
+            Objects.hash(config, _plugboardText,
+                         Arrays.hashCode(_ciphertext),
+                         Arrays.hashCode(_crib)));
+    }
+
+    /**
+     * Return the number of shards of my keys.
+     */
+    int shards() {
+        return _shards;
+    }
+
+    /**
+     * Return the settings lines of the candidates in shard SHARD, in the
+     * order searched.
+     */
+    List<String> search(int shard) {
+        if (shard < 0 || shard >= _shards) {
+            throw error("no shard %d", shard);
+        }
+        final int n = _size;
+        final int[] ciphertext = _ciphertext;
+        final int[] crib = _crib;
+        String[] order = _orders.get(shard / n);
+        Rotor[] rotors = new Rotor[order.length];
+        for (int k = 0; k < order.length; k += 1) {
+            rotors[k] = _catalog.get(order[k]);
+        }
+        Engine engine = Engine.compile(_plugboard, rotors);
+        int[] start = new int[order.length];
+        int[] posns = new int[order.length];
+        start[1] = shard % n;
+        List<String> result = new ArrayList<>();
+        do {
+            System.arraycopy(start, 0, posns, 0, posns.length);
+            int i;
+            for (i = 0; i < crib.length; i += 1) {
+                if (engine.step(ciphertext[i], posns) != crib[i]) {
+                    break;
+                }
+            }
+            if (i == crib.length) {
+                result.add(settings(order, start));
+            }
+        } while (next(start, n));
+        return result;
+    }
+
+    /**
+     * Serve as a worker: read shard numbers from IN until its end, and
+     * answer each on OUT (see above).
+     */
+    void work(BufferedReader in, PrintStream out) throws IOException {
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            int shard;
+            try {
+                shard = Integer.parseInt(line.strip());
+            } catch (NumberFormatException excp) {
+                throw error("bad shard number: %s", line);
+            }
+            for (String candidate : search(shard)) {
+                out.printf("found %d %s%n", shard, candidate);
+            }
+            out.printf("done %d%n", shard);
+            out.flush();
+        }
+    }
+
+    /**
+     * Search every shard not recorded as done in CHECKPOINT (if not
+     * null) with WORKERS worker processes, each started by COMMAND, and
+     * return the settings lines of all candidates, sorted.  CHECKPOINT
+     * is created if need be, and each shard is recorded in it as it is
+     * done.
+     */
+    List<String> coordinate(List<String> command, int workers,
+                            Path checkpoint) throws IOException {
+        _candidates.clear();
+        _pending.clear();
+        _failure = null;
+        boolean[] done = new boolean[_shards];
+        if (checkpoint != null) {
+            resume(checkpoint, done);
+        }
+        for (int shard = 0; shard < _shards; shard += 1) {
+            if (!done[shard]) {
+                _pending.add(shard);
+            }
+        }
+        try {
+            List<Thread> threads = new ArrayList<>();
+            for (int w = 0; w < Math.max(1, workers); w += 1) {
+                Thread thread = new Thread(() -> serve(command),
+                                           "enigma-search-" + w);
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                join(thread);
+            }
+        } finally {
+            if (_log != null) {
+                _log.close();
+                _log = null;
+            }
+        }
+        if (_failure != null) {
+            throw error("%s", _failure);
+        }
+        return new ArrayList<>(_candidates);
+    }
+
+    /**
+     * Read the record of shards done from CHECKPOINT, if it exists,
+     * marking them in DONE and adding their candidates, and open it to
+     * record more.  Only lines ended by a newline are trusted: a crash
+     * while writing a line may leave a prefix of it, such as "done 1"
+     * for "done 12", which is ignored.
+     */
+    private void resume(Path checkpoint, boolean[] done) throws IOException {
+        String header = "search " + _fingerprint;
+        if (Files.exists(checkpoint)) {
+            String text = new String(Files.readAllBytes(checkpoint),
+                                     StandardCharsets.UTF_8);
+            List<String> lines =
+                text.substring(0, text.lastIndexOf('\n') + 1).lines()
+                .collect(Collectors.toList());
+            if (lines.isEmpty() || !lines.get(0).equals(header)) {
+                throw error("checkpoint %s is for another search",
+                            checkpoint);
+            }
+            Map<Integer, List<String>> found = new HashMap<>();
+            for (String line : lines.subList(1, lines.size())) {
+                String[] words = line.split(" ", 3);
+                int shard = words.length < 2 ? -1 : shard(words[1]);
+                if (shard < 0) {
+                    continue;
+                } else if (words[0].equals("found") && words.length == 3) {
+                    found.computeIfAbsent(shard, k -> new ArrayList<>())
+                        .add(words[2]);
+                } else if (words[0].equals("done") && words.length == 2) {
+                    done[shard] = true;
+                    _candidates.addAll(found.getOrDefault(shard,
+                                                          List.of()));
+                }
+            }
+            _log = Files.newBufferedWriter(checkpoint,
+                                           StandardCharsets.UTF_8,
+                                           StandardOpenOption.APPEND);
+            _log.newLine();
+        } else {
+            _log = Files.newBufferedWriter(checkpoint,
+                                           StandardCharsets.UTF_8);
+            _log.write(header);
+            _log.newLine();
+        }
+        _log.flush();
+    }
+
+    /** Return the shard numbered by TEXT, or -1 if there is none. */
+    private int shard(String text) {
+        try {
+            int shard = Integer.parseInt(text);
+            return shard < _shards ? shard : -1;
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+    }
+
+    /**
+     * Hand pending shards to a worker process started by COMMAND, one at
+     * a time, until none are left, replacing the worker if it dies.
+     */
+    private void serve(List<String> command) {
+        Worker worker = null;
+        try {
+            for (Integer shard = take(); shard != null; shard = take()) {
+                List<String> found = null;
+                for (int tries = 0; found == null; tries += 1) {
+                    if (tries == ATTEMPTS) {
+                        fail(String.format("worker failed on shard %d",
+                                           shard));
+                        return;
+                    }
+                    if (worker == null) {
+                        worker = Worker.start(command);
+                    }
+                    found = worker == null ? null : worker.ask(shard);
+                    if (found == null && worker != null) {
+                        worker.kill();
+                        worker = null;
+                    }
+                }
+                finish(shard, found);
+            }
+        } catch (IOException excp) {
+            fail(String.format("could not write checkpoint: %s",
+                               excp.getMessage()));
+        } finally {
+            if (worker != null) {
+                worker.close();
+            }
+        }
+    }
+
+    /** Return the next pending shard, or null if there are no more or
+     *  the search has failed. */
+    private synchronized Integer take() {
+        return _failure != null ? null : _pending.poll();
+    }
+
+    /**
+     * Record that SHARD is done, with the candidates FOUND, in the
+     * results and the checkpoint.
+     */
+    private synchronized void finish(int shard, List<String> found)
+        throws IOException {
+        _candidates.addAll(found);
+        if (_log != null) {
+            for (String candidate : found) {
+                _log.write(String.format("found %d %s", shard, candidate));
+                _log.newLine();
+            }
+            _log.write(String.format("done %d", shard));
+            _log.newLine();
+            _log.flush();
+        }
+    }
+
+    /** Fail the search with the message MSG, unless it has failed. */
+    private synchronized void fail(String msg) {
+        if (_failure == null) {
+            _failure = msg;
+        }
+    }
+
+    /** Wait for THREAD to end. */
+    private static void join(Thread thread) {
+        while (true) {
+            try {
+                thread.join();
+                return;
+            } catch (InterruptedException excp) {
+                /* Ignore interrupt and keep waiting. */
+            }
+        }
+    }
+
+    /** Return the settings line of the key with rotors ORDER at START. */
+    private String settings(String[] order, int[] start) {
+        StringBuilder line = new StringBuilder("*");
+        for (String name : order) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int k = 1; k < start.length; k += 1) {
+            line.appendCodePoint(_alphabet.toCodePoint(start[k]));
+        }
+        if (!_plugboardText.isEmpty()) {
+            line.append(' ').append(_plugboardText);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Advance START, settings of the rotors of a machine over N
+     * characters, to the next with the same settings of rotors #0 and
+     * #1, returning false after the last.
+     */
+    private static boolean next(int[] start, int n) {
+        for (int k = start.length - 1; k > 1; k -= 1) {
+            start[k] += 1;
+            if (start[k] < n) {
+                return true;
+            }
+            start[k] = 0;
+        }
+        return false;
+    }
+
+    /** Return the alphabet indices of the non-whitespace characters of
+     *  TEXT, which must be in ALPHA. */
+    private static int[] indices(String text, Alphabet alpha) {
+        return text.codePoints().filter(c -> !Machine.isSpace(c))
+            .map(alpha::toInt).toArray();
+    }
+
+    /**
+     * Return every legal order of the rotors of machines built to SPEC:
+     * a reflector, non-moving rotors in the slots before the pawls and
+     * moving rotors in theirs, all distinct, each as an array of rotor
+     * names.
+     */
+    private static List<String[]> orders(MachineSpec spec) {
+        RotorCatalog catalog = spec.rotors();
+        List<String> reflectors = new ArrayList<>();
+        List<String> fixed = new ArrayList<>();
+        List<String> moving = new ArrayList<>();
+        for (String name : catalog.names()) {
+            Rotor rotor = catalog.get(name);
+            if (rotor.reflecting()) {
+                reflectors.add(name);
+            } else if (rotor.rotates()) {
+                moving.add(name);
+            } else {
+                fixed.add(name);
+            }
+        }
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[spec.numRotors()];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            arrange(order, 1, spec.numRotors() - spec.numPawls(), fixed,
+                    moving, result);
+        }
+        return result;
+    }
+
+    /**
+     * Fill ORDER[K ..] in every way with distinct names, from FIXED
+     * before slot FIRST and from MOVING from slot FIRST on, adding a copy
+     * of each result to RESULT.
+     */
+    private static void arrange(String[] order, int k, int first,
+                                List<String> fixed, List<String> moving,
+                                List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<String> used = Arrays.asList(order).subList(1, k);
+        for (String name : k < first ? fixed : moving) {
+            if (!used.contains(name)) {
+                order[k] = name;
+                arrange(order, k + 1, first, fixed, moving, result);
+            }
+        }
+    }
+
+    /** A worker process, spoken to through its standard streams. */
+    private static final class Worker {
+
+        /** Return a worker started by COMMAND, or null if it cannot be
+         *  started. */
+        static Worker start(List<String> command) {
+            try {
+                Process process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+                return new Worker(process);
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+
+        /** A worker that is PROCESS. */
+        private Worker(Process process) {
+            _process = process;
+            _in = new BufferedReader(new InputStreamReader(
+                         process.getInputStream(), StandardCharsets.UTF_8));
+            _out = new PrintStream(process.getOutputStream(), false,
+                                   StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Have me search SHARD, and return the settings lines of its
+         * candidates, or null if I die or answer wrongly first.
+         */
+        List<String> ask(int shard) {
+            _out.println(shard);
+            _out.flush();
+            if (_out.checkError()) {
+                return null;
+            }
+            String found = String.format("found %d ", shard);
+            String done = String.format("done %d", shard);
+            List<String> result = new ArrayList<>();
+            try {
+                for (String line = _in.readLine(); line != null;
+                     line = _in.readLine()) {
+                    if (line.equals(done)) {
+                        return result;
+                    } else if (line.startsWith(found)) {
+                        result.add(line.substring(found.length()));
+                    } else {
+                        return null;
+                    }
+                }
+            } catch (IOException excp) {
+                /* Treated as the death of the worker. */
+            }
+            return null;
+        }
+
+        /** End me at once. */
+        void kill() {
+            _process.destroyForcibly();
+        }
+
+        /** Tell me there is no more work, and wait for me to end. */
+        void close() {
+            _out.close();
+            try {
+                _process.waitFor();
+            } catch (InterruptedException excp) {
+                kill();
+            }
+        }
+
+        /** The worker process. */
+        private final Process _process;
+        /** Its standard output. */
+        private final BufferedReader _in;
+        /** Its standard input. */
+        private final PrintStream _out;
+    }
+
+    /** Alphabet of the machines searched. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Available rotors. */
+    private final RotorCatalog _catalog;
+    /** Plugboard cycles searched under, as given. */
+    private final String _plugboardText;
+    /** The plugboard searched under. */
+    private final Permutation _plugboard;
+    /** Alphabet indices of the ciphertext. */
+    private final int[] _ciphertext;
+    /** Alphabet indices of the crib. */
+    private final int[] _crib;
+    /** Legal rotor orders, reflector first. */
+    private final List<String[]> _orders;
+    /** Number of shards: rotor orders times alphabet size. */
+    private final int _shards;
+    /** Identifies this search in checkpoint files. */
+    private final String _fingerprint;
+    /** Candidates found, as settings lines. */
+    private final TreeSet<String> _candidates = new TreeSet<>();
+    /** Shards not yet handed to a worker. */
+    private final ArrayDeque<Integer> _pending = new ArrayDeque<>();
+    /** Checkpoint being written, or null. */
+    private BufferedWriter _log;
+    /** Why the search failed, or null. */
+    private String _failure;
+}
@@ -0,0 +1,164 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the key search, Search.
+ *
+ * @author Amy Stanley
+ */
+public class SearchTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The key of the test ciphertext. */
+    private static final String KEY = "* B II III QX (AB)";
+
+    /** The plaintext of the test ciphertext. */
+    private static final String PLAIN = "THEWEATHERTODAYISFINE";
+
+    /** Known start of PLAIN. */
+    private static final String CRIB = "THEWEATHER";
+
+    /** Return a configuration of three-slot machines with rotors B, I,
+     *  II and III over UPPER. */
+    private static String config() {
+        StringBuilder result = new StringBuilder(UPPER_STRING + "\n3 2\n");
+        result.append(String.format(" B R %s%n", NAVALA.get("B")));
+        for (String name : new String[] {"I", "II", "III"}) {
+            result.append(String.format(" %s M%s %s%n", name,
+                                        NAVAL_NOTCHES.get(name),
+                                        NAVALA.get(name)));
+        }
+        return result.toString();
+    }
+
+    /** Return the encryption of PLAIN under KEY. */
+    private static String ciphertext() {
+        return Enigma.parse(config()).convert(Enigma.Settings.parse(KEY),
+                                              PLAIN);
+    }
+
+    /** Return a new search for CRIB in the test ciphertext. */
+    private static Search search() {
+        return new Search(config(), "(AB)", ciphertext(), CRIB);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testShards() {
+        Search search = search();
+        assertEquals(6 * 26, search.shards());
+        List<String> found = new ArrayList<>();
+        for (int shard = 0; shard < search.shards(); shard += 1) {
+            found.addAll(search.search(shard));
+        }
+        assertEquals(List.of(KEY), found);
+    }
+
+    @Test
+    public void testWorkers() throws Exception {
+        Path dir = Files.createTempDirectory("search");
+        Path config = dir.resolve("test.conf");
+        Path checkpoint = dir.resolve("search.log");
+        Files.write(config, config().getBytes(StandardCharsets.UTF_8));
+        Search search = search();
+        List<String> command =
+            Search.workerCommand(config.toString(), "(AB)", ciphertext(),
+                                 CRIB);
+        assertEquals(List.of(KEY), search.coordinate(command, 2,
+                                                     checkpoint));
+        List<String> lines = Files.readAllLines(checkpoint);
+        for (int shard = 0; shard < search.shards(); shard += 1) {
+            assertTrue(msg("testWorkers", "shard %d not recorded", shard),
+                       lines.contains("done " + shard));
+        }
+        List<String> broken = List.of(dir.resolve("no-such-java")
+                                      .toString());
+        assertEquals(List.of(KEY), search.coordinate(broken, 2,
+                                                     checkpoint));
+        Files.delete(checkpoint);
+        Files.delete(config);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testTruncatedCheckpoint() throws Exception {
+        Path dir = Files.createTempDirectory("search");
+        Path config = dir.resolve("test.conf");
+        Path checkpoint = dir.resolve("search.log");
+        Files.write(config, config().getBytes(StandardCharsets.UTF_8));
+        Search search = search();
+        int keyShard = 0;
+        while (search.search(keyShard).isEmpty()) {
+            keyShard += 1;
+        }
+        List<String> broken = List.of(dir.resolve("no-such-java")
+                                      .toString());
+        try {
+            search.coordinate(broken, 1, checkpoint);
+            fail("search without workers succeeded");
+        } catch (EnigmaException excp) {
+            /* Expected: leaves a checkpoint with only its header. */
+        }
+        String header = Files.readAllLines(checkpoint).get(0);
+        Files.write(checkpoint, (header + "\ndone " + keyShard)
+                    .getBytes(StandardCharsets.UTF_8));
+        List<String> command =
+            Search.workerCommand(config.toString(), "(AB)", ciphertext(),
+                                 CRIB);
+        assertEquals(List.of(KEY), search.coordinate(command, 2,
+                                                     checkpoint));
+        Files.delete(checkpoint);
+        Files.delete(config);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        Path dir = Files.createTempDirectory("search");
+        Path checkpoint = dir.resolve("search.log");
+        Search search = search();
+        List<String> broken = List.of(dir.resolve("no-such-java")
+                                      .toString());
+        try {
+            search.coordinate(broken, 1, checkpoint);
+            fail("search without workers succeeded");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("worker failed"));
+        }
+        Search other = new Search(config(), "", ciphertext(), CRIB);
+        try {
+            other.coordinate(broken, 1, checkpoint);
+            fail("checkpoint of another search accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("another search"));
+        }
+        try {
+            new Search(config(), "", CRIB, PLAIN);
+            fail("crib longer than ciphertext accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        Files.delete(checkpoint);
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,282 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static enigma.EnigmaException.*;
+
+/**
+ * A line-based encryption service on a local TCP port.  Each connection
+ * is a session with its own machine.  A line beginning with '*' sets the
+ * session up exactly as a settings line in an input file does, using the
+ * current machine spec, and produces no reply unless it is erroneous.
+ * Every other line is converted and answered with one line, grouped in
+ * fives as Main prints it.  Errors are answered with a line "Error: MSG",
+ * after which the session needs a new settings line.
+ *
+ * Each connection is handled on its own thread: a virtual thread when
+ * the runtime provides them, so that tens of thousands of mostly idle
+ * sessions are cheap, and otherwise a pooled platform thread.  Its
+ * machine state and buffers are a Session taken from a pool, and
+ * returned to it when the connection closes, so that a busy server
+ * reuses them, and the settings lines they remember, instead of
+ * rebuilding them for each connection.
+ *
+ * @author Amy Stanley
+ */
+final class Server implements Closeable {
+
+    /** Size of the per-connection input and output buffers. */
+    static final int BUFFER_SIZE = 1024;
+
+    /** Length of the queue of pending connections. */
+    static final int BACKLOG = 4096;
+
+    /** Most idle sessions kept for reuse. */
+    static final int POOL_SIZE = 256;
+
+    /** Number of sessions created in advance. */
+    static final int PRESTARTED = 16;
+
+    /** Largest TCP port number. */
+    static final int MAX_PORT = 0xFFFF;
+
+    /**
+     * A server for sessions using machines built to the specs supplied
+     * by SPECS, listening on the local port PORT (0 for any free port)
+     * once started.
+     */
+    Server(Supplier<MachineSpec> specs, int port) {
+        this(specs, port, null);
+    }
+
+    /**
+     * A server as for Server(SPECS, PORT) whose sessions look message
+     * lines up in CACHE, if it is not null, before converting them, and
+     * record their conversions there.
+     */
+    Server(Supplier<MachineSpec> specs, int port, ResultCache cache) {
+        if (port < 0 || port > MAX_PORT) {
+            throw error("port %d is not between 0 and %d", port, MAX_PORT);
+        }
+        _specs = specs;
+        _requestedPort = port;
+        _cache = cache;
+    }
+
+    /**
+     * Bind my port and start accepting connections in the background.
+     */
+    void start() throws IOException {
+        _listener = new ServerSocket(_requestedPort, BACKLOG,
+                                     InetAddress.getLoopbackAddress());
+        _workers = newPerTaskExecutor();
+        Thread acceptor = new Thread(this::acceptLoop, "enigma-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Return the port I listen on.  Only valid after start().
+     */
+    int port() {
+        return _listener.getLocalPort();
+    }
+
+    /**
+     * Wait until I am closed.
+     */
+    void awaitClose() {
+        try {
+            _closed.await();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop accepting connections and close every open one.
+     */
+    @Override
+    public void close() throws IOException {
+        if (_listener != null) {
+            _listener.close();
+        }
+        for (Socket socket : _connections) {
+            closeQuietly(socket);
+        }
+        if (_workers != null) {
+            _workers.shutdownNow();
+        }
+        _closed.countDown();
+    }
+
+    /**
+     * Accept connections until my listener is closed, handing each one
+     * to its own worker.  Each connection is recorded until its session
+     * ends, so that close() can close it; one accepted as I close is
+     * closed here.
+     */
+    private void acceptLoop() {
+        while (!_listener.isClosed()) {
+            Socket socket;
+            try {
+                socket = _listener.accept();
+            } catch (IOException excp) {
+                break;
+            }
+            _connections.add(socket);
+            if (_listener.isClosed()) {
+                _connections.remove(socket);
+                closeQuietly(socket);
+                break;
+            }
+            try {
+                _workers.execute(() -> session(socket));
+            } catch (RuntimeException excp) {
+                _connections.remove(socket);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Run one session over SOCKET until the client closes it.
+     */
+    private void session(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(), UTF_8),
+                 BUFFER_SIZE);
+             Writer out = new BufferedWriter(
+                 new OutputStreamWriter(socket.getOutputStream(), UTF_8),
+                 BUFFER_SIZE)) {
+            Session session = _sessions.acquire();
+            try {
+                serve(session, in, out);
+            } finally {
+                _sessions.release(session);
+            }
+        } catch (IOException excp) {
+            return;
+        } finally {
+            _connections.remove(socket);
+        }
+    }
+
+    /**
+     * Answer the lines from IN on OUT, using SESSION.
+     */
+    private void serve(Session session, BufferedReader in, Writer out)
+        throws IOException {
+        String settings = null;
+        String line;
+        while ((line = in.readLine()) != null) {
+            try {
+                if (line.startsWith("*")) {
+                    settings = null;
+                    session.setUp(_specs.get(), line);
+                    settings = line;
+                } else if (settings == null) {
+                    throw error("no settings line for message");
+                } else if (_cache == null
+                           || line.length() > ResultCache.MAX_MESSAGE) {
+                    int length = session.convert(line);
+                    out.write(session.output(), 0, length);
+                } else {
+                    out.write(convertCached(settings, session, line));
+                }
+            } catch (EnigmaException excp) {
+                settings = null;
+                out.write(String.format("Error: %s%n", excp.getMessage()));
+            }
+            if (!in.ready()) {
+                Events.flush(out, "server");
+            }
+        }
+    }
+
+    /**
+     * Return the printed conversion of MESSAGE by SESSION, set up by
+     * SETTINGS, taking it from my cache if possible.
+     */
+    private String convertCached(String settings, Session session,
+                                 String message) {
+        MachineSpec spec = session.spec();
+        int[] before = session.positions();
+        ResultCache.Result hit = _cache.get(spec, settings, before, message);
+        if (hit != null) {
+            session.setPositions(hit.positions());
+            return hit.printed();
+        }
+        int length = session.convert(message);
+        String printed = new String(session.output(), 0, length);
+        _cache.put(spec, settings, before, message,
+                   new ResultCache.Result(printed, session.positions()));
+        return printed;
+    }
+
+    /**
+     * Close SOCKET, ignoring errors.
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /**
+     * Return an executor that runs each task on a new virtual thread if
+     * this runtime supports them, and otherwise on a cached pool of
+     * daemon platform threads.
+     */
+    private static ExecutorService newPerTaskExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "enigma-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Source of the spec for new settings. */
+    private final Supplier<MachineSpec> _specs;
+    /** Port requested at construction. */
+    private final int _requestedPort;
+    /** Cache of conversions shared by all sessions, or null. */
+    private final ResultCache _cache;
+    /** Sessions not in use by a connection. */
+    private final SessionPool _sessions =
+        new SessionPool(POOL_SIZE, PRESTARTED);
+    /** Socket accepting connections. */
+    private ServerSocket _listener;
+    /** Connections accepted and not yet ended. */
+    private final Set<Socket> _connections = ConcurrentHashMap.newKeySet();
+    /** Executor running one task per session. */
+    private ExecutorService _workers;
+    /** Released when I am closed. */
+    private final CountDownLatch _closed = new CountDownLatch(1);
+}
@@ -0,0 +1,135 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the Server class.
+ *
+ * @author Amy Stanley
+ */
+public class ServerTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings line of the standard test machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** A client connection to a running server. */
+    private static class Client implements AutoCloseable {
+        Client(Server server) throws Exception {
+            _socket = new Socket(InetAddress.getLoopbackAddress(),
+                                 server.port());
+            _in = new BufferedReader(
+                new InputStreamReader(_socket.getInputStream(), UTF_8));
+            _out = new PrintStream(_socket.getOutputStream(), true, UTF_8);
+        }
+
+        void send(String line) {
+            _out.print(line + "\n");
+        }
+
+        String receive() throws Exception {
+            return _in.readLine();
+        }
+
+        @Override
+        public void close() throws Exception {
+            _socket.close();
+        }
+
+        private final Socket _socket;
+        private final BufferedReader _in;
+        private final PrintStream _out;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testIndependentSessions() throws Exception {
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        try (Server server = new Server(() -> spec, 0)) {
+            server.start();
+            try (Client a = new Client(server);
+                 Client b = new Client(server)) {
+                a.send(SETTINGS);
+                b.send(SETTINGS);
+                a.send("FROM HIS SHOULDER");
+                assertEquals("QVPQS OKOIL PUBKJ ", a.receive());
+                b.send("FROM");
+                assertEquals("QVPQ", b.receive());
+                a.send("HIAWATHA");
+                assertEquals("ZPISF XDW", a.receive());
+                b.send("HISSHOULDERHIAWATHA");
+                assertEquals("SOKOI LPUBK JZPIS FXDW", b.receive());
+            }
+        }
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        try (Server server = new Server(() -> spec, 0)) {
+            server.start();
+            try (Client a = new Client(server)) {
+                a.send("FROM");
+                assertTrue(a.receive().startsWith("Error: "));
+                a.send("* B Beta III IV Nonesuch AXLE");
+                assertTrue(a.receive().startsWith("Error: "));
+                a.send(SETTINGS);
+                a.send("FROM");
+                assertEquals("QVPQ", a.receive());
+            }
+        }
+    }
+
+    @Test
+    public void testCloseEndsSessions() throws Exception {
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        Server server = new Server(() -> spec, 0);
+        server.start();
+        try (Client a = new Client(server)) {
+            a.send(SETTINGS);
+            a.send("FROM");
+            assertEquals("QVPQ", a.receive());
+            server.close();
+            try {
+                assertNull(a.receive());
+            } catch (SocketException excp) {
+                /* A reset connection is closed too. */
+            }
+        }
+    }
+
+    @Test
+    public void testPortRange() {
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        for (int port : new int[] {-1, Server.MAX_PORT + 1, 99999}) {
+            try {
+                new Server(() -> spec, port);
+                fail("port " + port + " accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+}
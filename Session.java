@@ -0,0 +1,237 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A reusable machine session for high rates of short messages, handed
+ * out by a SessionPool.  Setting up a machine from a settings line
+ * (inserting rotors, setting them and building a plugboard) costs far
+ * more than converting a short message, so a session remembers the
+ * compiled form of the last KEYS settings lines it has applied: setting
+ * it up again from one of them copies a few rotor positions and
+ * allocates nothing.  Conversion runs on the compiled engine with the
+ * session's own position array and scratch buffers, which grow to the
+ * longest message seen and are then reused.  A session is used by one
+ * thread at a time.
+ *
+ * @author Amy Stanley
+ */
+final class Session {
+
+    /** Number of settings lines remembered. */
+    static final int KEYS = 32;
+
+    /**
+     * Set me up from settings line SETTINGS, using a machine built to
+     * SPEC, as Main.setUp does.  Only a settings line not remembered is
+     * applied by Main.setUp and recorded as an Events.Settings event.
+     */
+    void setUp(MachineSpec spec, CharSequence settings) {
+        _engine = null;
+        _ready = false;
+        if (spec != _spec) {
+            _spec = spec;
+            _machine = spec.newMachine();
+            _alphabet = spec.alphabet();
+            _positions = new int[_machine.numRotors()];
+            for (int i = 0; i < KEYS; i += 1) {
+                _keys[i] = null;
+            }
+        }
+        if (Main.verbose()) {
+            Main.setUp(_machine, settings.toString());
+            _ready = true;
+            return;
+        }
+        Key key = find(settings);
+        if (key == null) {
+            String text = settings.toString();
+            Main.setUp(_machine, text);
+            key = new Key(text, _machine.engine(), _machine.positions());
+            _keys[_next] = key;
+            _next = (_next + 1) % KEYS;
+        }
+        _engine = key.engine;
+        System.arraycopy(key.positions, 0, _positions, 0, _positions.length);
+        _ready = true;
+    }
+
+    /**
+     * Convert MSG as Main prints a message line, grouped in fives and
+     * followed by a line end, into output(), returning the number of
+     * characters written there.  Whitespace in MSG is ignored.  I must
+     * have been set up since I was last cleared.  If MSG holds a
+     * character outside the alphabet, nothing is converted.
+     */
+    int convert(CharSequence msg) {
+        if (!_ready) {
+            throw error("no settings line for message");
+        }
+        int len = msg.length();
+        int[] indices = indices(len);
+        int n = 0;
+        for (int i = 0; i < len; ) {
+            int c = Character.codePointAt(msg, i);
+            i += Character.charCount(c);
+            if (!Machine.isSpace(c)) {
+                indices[n++] = _alphabet.toInt(c);
+            }
+        }
+        convert(indices, n);
+        int size = 2 * n + n / 5 + 1;
+        if (_output.length < size) {
+            _output = new char[Math.max(size, 2 * _output.length)];
+        }
+        char[] out = _output;
+        int k = 0;
+        for (int i = 0; i < n; i += 1) {
+            k += Character.toChars(_alphabet.toCodePoint(indices[i]), out,
+                                   k);
+            if ((i + 1) % 5 == 0) {
+                out[k++] = ' ';
+            }
+        }
+        out[k++] = '\n';
+        return k;
+    }
+
+    /**
+     * Convert the alphabet indices MSG[0 .. LEN-1] in place, as the next
+     * LEN keystrokes.  I must have been set up since I was last cleared.
+     */
+    void convert(int[] msg, int len) {
+        if (!_ready) {
+            throw error("no settings line for message");
+        }
+        if (_engine == null) {
+            for (int i = 0; i < len; i += 1) {
+                msg[i] = _machine.convert(msg[i]);
+            }
+        } else {
+            Engine engine = _engine;
+            int[] posns = _positions;
+            for (int i = 0; i < len; i += 1) {
+                msg[i] = engine.step(msg[i], posns);
+            }
+        }
+    }
+
+    /**
+     * Return my scratch buffer of alphabet indices, grown to hold at
+     * least LEN.  Its contents are overwritten by my next conversion of
+     * a CharSequence.
+     */
+    int[] indices(int len) {
+        if (_indices.length < len) {
+            _indices = new int[Math.max(len, 2 * _indices.length)];
+        }
+        return _indices;
+    }
+
+    /**
+     * Return the buffer holding my last conversion.  It is overwritten by
+     * the next.
+     */
+    char[] output() {
+        return _output;
+    }
+
+    /**
+     * Return the spec of my machine, or null if I have not been set up.
+     */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /**
+     * Return my current rotor positions (see Machine.positions).
+     */
+    int[] positions() {
+        return _engine == null ? _machine.positions() : _positions.clone();
+    }
+
+    /**
+     * Set my rotor positions to POSNS, as returned by positions().
+     */
+    void setPositions(int[] posns) {
+        if (_engine == null) {
+            _machine.setPositions(posns);
+        } else {
+            System.arraycopy(posns, 0, _positions, 0, _positions.length);
+        }
+    }
+
+    /**
+     * Forget my current settings, so that I need a settings line before
+     * converting again.  Remembered settings lines are kept.
+     */
+    void clear() {
+        _engine = null;
+        _ready = false;
+    }
+
+    /** Return the remembered settings line equal to SETTINGS, or null. */
+    private Key find(CharSequence settings) {
+        int hash = hash(settings);
+        for (Key key : _keys) {
+            if (key != null && key.hash == hash
+                && key.text.contentEquals(settings)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /** Return the hash code of TEXT, as String.hashCode computes it. */
+    private static int hash(CharSequence text) {
+        int h = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h;
+    }
+
+    /** A remembered settings line and its compiled form. */
+    private static final class Key {
+        /** The settings line TEXT, after which the machine has ENGINE and
+         *  its rotors are at POSITIONS. */
+        Key(String text, Engine engine, int[] positions) {
+            this.text = text;
+            this.hash = text.hashCode();
+            this.engine = engine;
+            this.positions = positions;
+        }
+
+        /** The settings line. */
+        final String text;
+        /** Its hash code. */
+        final int hash;
+        /** The compiled plugboard and rotors it sets up. */
+        final Engine engine;
+        /** The rotor positions it sets. */
+        final int[] positions;
+    }
+
+    /** True iff I have been set up since I was last cleared. */
+    private boolean _ready;
+    /** Spec of my machine, or null. */
+    private MachineSpec _spec;
+    /** Machine used to apply new settings lines, and to convert in
+     *  verbose mode. */
+    private Machine _machine;
+    /** Alphabet of my machine. */
+    private Alphabet _alphabet;
+    /** Engine of my current settings, or null if I am not set up or am
+     *  converting with _machine. */
+    private Engine _engine;
+    /** Current rotor positions, when converting with _engine. */
+    private int[] _positions;
+    /** Remembered settings lines, replaced in turn. */
+    private final Key[] _keys = new Key[KEYS];
+    /** Index of the next entry of _keys to replace. */
+    private int _next;
+    /** Scratch buffer of alphabet indices. */
+    private int[] _indices = new int[0];
+    /** Buffer of converted output. */
+    private char[] _output = new char[1];
+}
@@ -0,0 +1,54 @@
+package enigma;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A pool of reusable Sessions.  A thread acquires a session, uses it
+ * alone, and releases it, so that its buffers and remembered settings
+ * serve the next user instead of being rebuilt.  The idle sessions are
+ * held in a bounded array-backed queue, so that acquiring and releasing
+ * allocate nothing once the pool is warm; sessions are created when it
+ * runs dry, and dropped when it is full.
+ *
+ * @author Amy Stanley
+ */
+final class SessionPool {
+
+    /**
+     * A pool holding at most CAPACITY > 0 idle sessions, starting with
+     * PRESTARTED of them.
+     */
+    SessionPool(int capacity, int prestarted) {
+        _idle = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < Math.min(capacity, prestarted); i += 1) {
+            _idle.offer(new Session());
+        }
+    }
+
+    /**
+     * Return an idle session, or a new one if there is none.  It must be
+     * set up before it converts anything.
+     */
+    Session acquire() {
+        Session session = _idle.poll();
+        return session == null ? new Session() : session;
+    }
+
+    /**
+     * Return SESSION, acquired from me and no longer used, to the pool.
+     */
+    void release(Session session) {
+        session.clear();
+        _idle.offer(session);
+    }
+
+    /**
+     * Return the number of idle sessions.
+     */
+    int idle() {
+        return _idle.size();
+    }
+
+    /** Idle sessions. */
+    private final ArrayBlockingQueue<Session> _idle;
+}
@@ -0,0 +1,141 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for Session and SessionPool.
+ *
+ * @author Amy Stanley
+ */
+public class SessionTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines of the standard test machine. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C Gamma I II V ZZZZ (AB)",
+    };
+
+    /** Message lines. */
+    private static final String[] MESSAGES = {
+        "FROM HIS SHOULDER HIAWATHA",
+        "TOOK THE CAMERA OF ROSEWOOD",
+        "MADE OF SLIDING FOLDING ROSEWOOD",
+    };
+
+    /** Return the spec of the standard test machine. */
+    private static MachineSpec spec() {
+        return new MachineSpec(UPPER, 5, 3, navalRotors());
+    }
+
+    /** Return what S writes for MSG. */
+    private static String convert(Session s, String msg) {
+        int length = s.convert(msg);
+        return new String(s.output(), 0, length);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        MachineSpec spec = spec();
+        Session session = new Session();
+        for (int round = 0; round < 3; round += 1) {
+            for (String settings : SETTINGS) {
+                Machine M = spec.newMachine();
+                Main.setUp(M, settings);
+                session.setUp(spec, settings);
+                for (String msg : MESSAGES) {
+                    assertEquals(Main.messageLine(M.convert(msg)),
+                                 convert(session, msg));
+                }
+                assertArrayEquals(M.positions(), session.positions());
+            }
+        }
+        session.setUp(spec, SETTINGS[0]);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n",
+                     convert(session, MESSAGES[0]));
+    }
+
+    @Test
+    public void testPositions() {
+        Session session = new Session();
+        session.setUp(spec(), SETTINGS[0]);
+        int[] start = session.positions();
+        String first = convert(session, MESSAGES[0]);
+        session.setPositions(start);
+        assertEquals(first, convert(session, MESSAGES[0]));
+        int[] before = session.positions();
+        try {
+            session.convert("FROM his");
+            fail("character outside alphabet accepted");
+        } catch (EnigmaException excp) {
+            assertArrayEquals(before, session.positions());
+        }
+    }
+
+    @Test
+    public void testNeedsSettings() {
+        Session session = new Session();
+        try {
+            session.convert(MESSAGES[0]);
+            fail("converted without settings");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        session.setUp(spec(), SETTINGS[0]);
+        session.convert(MESSAGES[0]);
+        session.clear();
+        try {
+            session.convert(MESSAGES[0]);
+            fail("converted after clear");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            session.setUp(spec(), "* B Beta III IV X AXLE");
+            fail("bad settings accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            session.convert(MESSAGES[0]);
+            fail("converted after bad settings");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testPool() {
+        SessionPool pool = new SessionPool(2, 1);
+        assertEquals(1, pool.idle());
+        Session a = pool.acquire(), b = pool.acquire(), c = pool.acquire();
+        assertEquals(0, pool.idle());
+        a.setUp(spec(), SETTINGS[0]);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals(2, pool.idle());
+        Session again = pool.acquire();
+        assertSame(a, again);
+        try {
+            again.convert(MESSAGES[0]);
+            fail("released session kept its settings");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
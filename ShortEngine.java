@@ -0,0 +1,72 @@
+package enigma;
+
+/**
+ * An Engine for alphabets of at most 65536 characters, whose tables hold
+ * two bytes per entry, as unsigned chars.
+ *
+ * @author Amy Stanley
+ */
+final class ShortEngine extends Engine {
+
+    /**
+     * An engine applying PLUGBOARD and ROTORS, whose alphabet has at most
+     * SHORT_LIMIT characters.
+     */
+    ShortEngine(Permutation plugboard, Rotor[] rotors) {
+        super(rotors);
+        _size = plugboard.size();
+        _last = rotors.length - 1;
+        _plugboard = narrow(plugboardTable(plugboard));
+        _forward = narrow(forwardTables(rotors));
+        _backward = narrow(backwardTables(rotors));
+    }
+
+    @Override
+    int convert(int c, int[] posns) {
+        final int n = _size;
+        c = _plugboard[c];
+        for (int k = _last; k >= 0; k -= 1) {
+            int s = posns[k];
+            int x = c + s;
+            if (x >= n) {
+                x -= n;
+            }
+            c = (_forward[k * n + x]) - s;
+            if (c < 0) {
+                c += n;
+            }
+        }
+        for (int k = 1; k <= _last; k += 1) {
+            int s = posns[k];
+            int x = c + s;
+            if (x >= n) {
+                x -= n;
+            }
+            c = (_backward[k * n + x]) - s;
+            if (c < 0) {
+                c += n;
+            }
+        }
+        return _plugboard[c];
+    }
+
+    /** Return TABLE with each entry stored in a char. */
+    private static char[] narrow(int[] table) {
+        char[] result = new char[table.length];
+        for (int i = 0; i < table.length; i += 1) {
+            result[i] = (char) table[i];
+        }
+        return result;
+    }
+
+    /** Size of my alphabet. */
+    private final int _size;
+    /** Index of my last (fast) rotor. */
+    private final int _last;
+    /** Plugboard table. */
+    private final char[] _plugboard;
+    /** Concatenated forward rotor tables. */
+    private final char[] _forward;
+    /** Concatenated backward rotor tables. */
+    private final char[] _backward;
+}
@@ -0,0 +1,368 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The ways a machine can convert a run of keystrokes (see
+ * Machine.convert(int[], int)), and the cost model that chooses among
+ * them.  The model estimates each strategy's time from per-character and
+ * fixed costs, which are typical values unless calibrate() has replaced
+ * them with those measured by a short self-benchmark on a sample
+ * machine.  Main calibrates once, before it converts anything, only for
+ * jobs long enough to repay it, so that the benchmark never competes
+ * with the work it guides.  Every strategy gives the same
+ * result, so the choice affects only speed.  The number of runs and
+ * characters converted by each strategy is counted for report().
+ *
+ * @author Amy Stanley
+ */
+enum Strategy {
+
+    /** One keystroke at a time through the Rotor objects, as in verbose
+     *  mode.  Needs no compiled engine. */
+    SCALAR,
+    /** One keystroke at a time through the machine's Engine. */
+    FUSED,
+    /** The rotor positions at the start of each of several chunks found
+     *  by stepping alone, then the chunks converted by engines on the
+     *  common fork/join pool. */
+    PARALLEL,
+    /** Lookups in the Codebook for the key the machine was set to, then
+     *  FUSED for any keystrokes beyond it. */
+    CACHED,
+    /** Lookups in tables filled ahead by the background thread of a
+     *  Keystream, falling back to FUSED while it lags.  Chosen only by
+     *  name: it pays off when keystrokes arrive more slowly than the
+     *  machine could convert them, which the model cannot see. */
+    PRECOMPUTED;
+
+    /**
+     * Return the strategy named NAME in lower case, or null if NAME is
+     * "auto", meaning that the cost model chooses.
+     */
+    static Strategy named(String name) {
+        if (name.equals("auto")) {
+            return null;
+        }
+        for (Strategy strategy : values()) {
+            if (strategy.name().toLowerCase().equals(name)) {
+                return strategy;
+            }
+        }
+        throw error("unknown engine %s", name);
+    }
+
+    /**
+     * Return the number of threads that would share a PARALLEL
+     * conversion started by this thread: none but this one if it is
+     * itself a fork/join worker, whose pool is taken to be busy.
+     */
+    static int workers() {
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            return 1;
+        }
+        return ForkJoinPool.getCommonPoolParallelism() + 1;
+    }
+
+    /**
+     * Return the cheapest strategy for converting LEN keystrokes on a
+     * machine with NUMROTORS rotors over an alphabet of SIZE characters.
+     * If the machine's engine is not compiled, VOLUME is the number of
+     * keystrokes it has converted since its rotors or plugboard last
+     * changed, including these, and otherwise 0; compiling is charged
+     * to these keystrokes in proportion, so that a run of short messages
+     * is converted without an engine only until the engine would have
+     * paid for itself.  If the machine is at a known key, BOOKED is the
+     * number of the keystrokes that its codebook covers, or if it has
+     * none, SIGHTINGS is the number of times the machine has been set to
+     * that key; both are otherwise 0.
+     */
+    static Strategy choose(int len, int size, int numRotors, long volume,
+                           int booked, int sightings) {
+        return choose(_costs, len, size, numRotors, volume, booked,
+                      sightings);
+    }
+
+    /**
+     * Return the cheapest strategy for the conversion described by LEN,
+     * SIZE, NUMROTORS, VOLUME, BOOKED and SIGHTINGS, as for choose
+     * above, assuming COSTS.
+     */
+    static Strategy choose(Costs costs, int len, int size, int numRotors,
+                           long volume, int booked, int sightings) {
+        double compile = volume == 0 ? 0
+            : costs.entryNs * numRotors * size
+              * (size <= Engine.BYTE_LIMIT ? size : 1) * len / volume;
+        Strategy best = SCALAR;
+        double least = len * costs.scalarNs;
+        double fused = compile + len * costs.fusedNs;
+        if (fused < least) {
+            best = FUSED;
+            least = fused;
+        }
+        if (workers() > 1) {
+            double parallel = compile + costs.forkNs + len * costs.parallelNs;
+            if (parallel < least) {
+                best = PARALLEL;
+                least = parallel;
+            }
+        }
+        double cached = Double.MAX_VALUE;
+        if (booked > 0) {
+            cached = compile + booked * costs.lookupNs
+                + (len - booked) * costs.fusedNs
+                + Codebook.SNAPSHOT * costs.advanceNs;
+        } else if (sightings > 1 && size <= Engine.BYTE_LIMIT) {
+            int length = Codebook.length(len);
+            int covered = Math.min(len, length);
+            double build = (double) length * size * costs.fusedNs;
+            cached = compile + build / (sightings - 1)
+                + covered * costs.lookupNs + (len - covered) * costs.fusedNs;
+        }
+        if (cached < least) {
+            best = CACHED;
+        }
+        return best;
+    }
+
+    /**
+     * Measure the costs on a sample machine and assume them from now on,
+     * unless they have been measured already.  Takes a few hundred
+     * milliseconds, using the common fork/join pool.
+     */
+    static void calibrate() {
+        if (CALIBRATED.compareAndSet(false, true)) {
+            Calibration.run();
+        }
+    }
+
+    /** Record that STRATEGY converted LEN keystrokes. */
+    static void record(Strategy strategy, int len) {
+        RUNS[strategy.ordinal()].increment();
+        CHARS[strategy.ordinal()].add(len);
+    }
+
+    /**
+     * Return a summary of the strategies used so far, and of the costs
+     * that the model assumes.
+     */
+    static String report() {
+        StringBuilder result = new StringBuilder("engines:");
+        for (Strategy strategy : values()) {
+            result.append(String.format(" %s %d runs (%d chars),",
+                                        strategy.name().toLowerCase(),
+                                        RUNS[strategy.ordinal()].sum(),
+                                        CHARS[strategy.ordinal()].sum()));
+        }
+        Costs costs = _costs;
+        result.append(String.format("%n  %s costs: scalar %.1f, fused %.1f, "
+                                    + "parallel %.2f, lookup %.2f, "
+                                    + "advance %.1f ns/char; fork %.1f us; "
+                                    + "compile %.2f ns/entry; %d workers",
+                                    costs == DEFAULTS ? "default"
+                                    : "calibrated",
+                                    costs.scalarNs, costs.fusedNs,
+                                    costs.parallelNs, costs.lookupNs,
+                                    costs.advanceNs, costs.forkNs / 1000,
+                                    costs.entryNs, workers()));
+        return result.toString();
+    }
+
+    /** Estimated costs, in nanoseconds. */
+    static final class Costs {
+        /** Per keystroke with SCALAR. */
+        double scalarNs;
+        /** Per keystroke with FUSED. */
+        double fusedNs;
+        /** Per keystroke with PARALLEL. */
+        double parallelNs;
+        /** Per keystroke looked up in a codebook. */
+        double lookupNs;
+        /** Per step of the rotor positions alone. */
+        double advanceNs;
+        /** Per PARALLEL conversion, beyond its keystrokes. */
+        double forkNs;
+        /** Per table entry of a compiled engine. */
+        double entryNs;
+
+        /** Lower each of my costs to that in OTHER, if it is less, so
+         *  that the costs least disturbed by other work win. */
+        void least(Costs other) {
+            scalarNs = Math.min(scalarNs, other.scalarNs);
+            fusedNs = Math.min(fusedNs, other.fusedNs);
+            parallelNs = Math.min(parallelNs, other.parallelNs);
+            lookupNs = Math.min(lookupNs, other.lookupNs);
+            advanceNs = Math.min(advanceNs, other.advanceNs);
+            forkNs = Math.min(forkNs, other.forkNs);
+            entryNs = Math.min(entryNs, other.entryNs);
+        }
+    }
+
+    /** Costs assumed unless calibrated: typical of a current machine. */
+    static final Costs DEFAULTS = new Costs();
+
+    static {
+        DEFAULTS.scalarNs = 60;
+        DEFAULTS.fusedNs = 25;
+        DEFAULTS.parallelNs = 8;
+        DEFAULTS.lookupNs = 2;
+        DEFAULTS.advanceNs = 5;
+        DEFAULTS.forkNs = 100_000;
+        DEFAULTS.entryNs = 1;
+    }
+
+    /** Costs now assumed. */
+    private static volatile Costs _costs = DEFAULTS;
+
+    /** Number of runs per strategy, by ordinal. */
+    private static final LongAdder[] RUNS = new LongAdder[values().length];
+    /** Number of keystrokes converted per strategy, by ordinal. */
+    private static final LongAdder[] CHARS = new LongAdder[values().length];
+
+    static {
+        for (int i = 0; i < RUNS.length; i += 1) {
+            RUNS[i] = new LongAdder();
+            CHARS[i] = new LongAdder();
+        }
+    }
+
+    /** The self-benchmark, measuring each strategy on a five-rotor
+     *  machine over the upper-case alphabet. */
+    private static final class Calibration {
+        /** Keystrokes per timed conversion. */
+        static final int KEYSTROKES = 1 << 14;
+        /** Keystrokes per timed PARALLEL conversion. */
+        static final int PARALLEL_KEYSTROKES = 1 << 16;
+        /** Number of rounds, each cost being the least measured. */
+        static final int ROUNDS = 5;
+        /** Number of engines compiled per timing. */
+        static final int COMPILES = 32;
+
+        /** Measure the costs and install them. */
+        static void run() {
+            Machine machine = sample();
+            int[] msg = new int[PARALLEL_KEYSTROKES];
+            Costs costs = new Costs();
+            for (int round = 0; round < ROUNDS; round += 1) {
+                Costs sample = new Costs();
+                sample.scalarNs = time(machine, msg, KEYSTROKES, SCALAR);
+                sample.fusedNs = time(machine, msg, KEYSTROKES, FUSED);
+                time(machine, msg, Codebook.LIMIT, CACHED);
+                sample.lookupNs =
+                    time(machine, msg, Codebook.LIMIT, CACHED);
+                double small = time(machine, msg, KEYSTROKES, PARALLEL);
+                double large =
+                    time(machine, msg, PARALLEL_KEYSTROKES, PARALLEL);
+                sample.parallelNs =
+                    Math.max(0, (large * PARALLEL_KEYSTROKES
+                                 - small * KEYSTROKES)
+                             / (PARALLEL_KEYSTROKES - KEYSTROKES));
+                sample.forkNs = Math.max(0, (small - sample.parallelNs)
+                                         * KEYSTROKES);
+                measureEngine(machine, sample);
+                if (round == 0) {
+                    costs = sample;
+                } else {
+                    costs.least(sample);
+                }
+            }
+            _costs = costs;
+        }
+
+        /** Return the time per keystroke in nanoseconds for MACHINE, set
+         *  to its sample key, to convert the first LEN indices of MSG
+         *  with STRATEGY. */
+        static double time(Machine machine, int[] msg, int len,
+                           Strategy strategy) {
+            for (int i = 0; i < len; i += 1) {
+                msg[i] = i % machine.alphabet().size();
+            }
+            machine.setRotors(KEY);
+            long start = System.nanoTime();
+            machine.convert(msg, len, strategy);
+            return (double) (System.nanoTime() - start) / len;
+        }
+
+        /** Set the step and compilation costs in COSTS from the engine of
+         *  MACHINE. */
+        static void measureEngine(Machine machine, Costs costs) {
+            Rotor[] rotors = new Rotor[machine.numRotors()];
+            for (int k = 0; k < rotors.length; k += 1) {
+                rotors[k] = machine.getRotor(k);
+            }
+            long start = System.nanoTime();
+            Engine engine = null;
+            for (int i = 0; i < COMPILES; i += 1) {
+                engine = Engine.compile(machine.plugboard(), rotors);
+            }
+            int n = machine.alphabet().size();
+            costs.entryNs = (double) (System.nanoTime() - start)
+                / (COMPILES * rotors.length * n * n);
+            int[] posns = new int[rotors.length];
+            start = System.nanoTime();
+            for (int i = 0; i < KEYSTROKES; i += 1) {
+                engine.advance(posns);
+            }
+            costs.advanceNs = (double) (System.nanoTime() - start)
+                / KEYSTROKES;
+        }
+
+        /** Return the sample machine, set up with random rotors. */
+        static Machine sample() {
+            Alphabet alpha = new Alphabet();
+            Random random = new Random(SEED);
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            String[] names = { "R", "F", "M1", "M2", "M3" };
+            int[] order = shuffle(alpha.size(), random);
+            StringBuilder pairs = new StringBuilder();
+            for (int i = 0; i < order.length; i += 2) {
+                pairs.append('(').appendCodePoint(alpha.toCodePoint(order[i]))
+                    .appendCodePoint(alpha.toCodePoint(order[i + 1]))
+                    .append(')');
+            }
+            rotors.add(new Reflector(names[0],
+                                     new Permutation(pairs.toString(),
+                                                     alpha)));
+            for (int k = 1; k < names.length; k += 1) {
+                order = shuffle(alpha.size(), random);
+                StringBuilder cycle = new StringBuilder("(");
+                for (int p : order) {
+                    cycle.appendCodePoint(alpha.toCodePoint(p));
+                }
+                Permutation perm =
+                    new Permutation(cycle.append(')').toString(), alpha);
+                rotors.add(k == 1 ? new FixedRotor(names[k], perm)
+                           : new MovingRotor(names[k], perm, "AN"));
+            }
+            Machine machine = new Machine(alpha, names.length, 3, rotors);
+            machine.insertRotors(names);
+            return machine;
+        }
+
+        /** Return the numbers 0 .. N-1 in an order chosen by RANDOM. */
+        static int[] shuffle(int n, Random random) {
+            int[] result = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                int j = random.nextInt(i + 1);
+                result[i] = result[j];
+                result[j] = i;
+            }
+            return result;
+        }
+
+        /** Seed of the sample machine's rotors. */
+        static final long SEED = 0x5eedL;
+        /** Setting of the sample machine. */
+        static final String KEY = "AAAA";
+    }
+
+    /** True once calibrate() has been called. */
+    private static final AtomicBoolean CALIBRATED = new AtomicBoolean();
+}
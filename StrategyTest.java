@@ -0,0 +1,168 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the conversion strategies of Machine
+ * and their cost model.
+ *
+ * @author Amy Stanley
+ */
+public class StrategyTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Length of the test message, more than a codebook covers. */
+    private static final int LENGTH = 3 * Codebook.LIMIT + 17;
+
+    /** Return LEN random alphabet indices of the upper-case alphabet. */
+    private static int[] message(int len) {
+        Random random = new Random(len);
+        int[] result = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = random.nextInt(UPPER.size());
+        }
+        return result;
+    }
+
+    /** Return the conversion of MSG by M one keystroke at a time. */
+    private static int[] keyByKey(Machine M, int[] msg) {
+        int[] result = new int[msg.length];
+        for (int i = 0; i < msg.length; i += 1) {
+            result[i] = M.convert(msg[i]);
+        }
+        return result;
+    }
+
+    /** Assert that converting MSG[0 .. LEN-1] with STRATEGY on a fresh
+     *  standard machine matches converting it key by key, and leaves
+     *  the rotors in the same positions. */
+    private static void checkStrategy(Strategy strategy, int[] msg) {
+        Machine expected = navalMachine();
+        int[] want = keyByKey(expected, msg);
+        Machine M = navalMachine();
+        int[] got = msg.clone();
+        M.convert(got, got.length, strategy);
+        assertArrayEquals(strategy + " conversion", want, got);
+        assertArrayEquals(strategy + " positions", expected.positions(),
+                          M.positions());
+    }
+
+    /** Return the number of runs Strategy.report() gives for STRATEGY. */
+    private static long runs(Strategy strategy) {
+        String report = Strategy.report();
+        String label = " " + strategy.name().toLowerCase() + " ";
+        int start = report.indexOf(label) + label.length();
+        return Long.parseLong(report.substring(start,
+                                               report.indexOf(' ', start)));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSpecStrategy() {
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, navalRotors());
+        assertNull(spec.strategy());
+        MachineSpec scalar = spec.withStrategy(Strategy.SCALAR);
+        assertEquals(Strategy.SCALAR, scalar.strategy());
+        assertNull(spec.strategy());
+        Machine M = scalar.newMachine();
+        Main.setUp(M, "* B Beta III IV I AXLE");
+        int[] msg = message(4 * Codebook.LIMIT);
+        long before = runs(Strategy.SCALAR);
+        M.convert(msg, msg.length);
+        assertEquals(before + 1, runs(Strategy.SCALAR));
+    }
+
+    @Test
+    public void testStrategiesAgree() {
+        int[] msg = message(LENGTH);
+        for (Strategy strategy : Strategy.values()) {
+            checkStrategy(strategy, msg);
+            checkStrategy(strategy, Arrays.copyOf(msg, 7));
+        }
+    }
+
+    @Test
+    public void testCodebookReused() {
+        int[] msg = message(LENGTH);
+        Machine expected = navalMachine();
+        int[] want = keyByKey(expected, msg);
+        Machine M = navalMachine();
+        for (int round = 0; round < 3; round += 1) {
+            M.setRotors("AXLE");
+            int[] got = msg.clone();
+            int split = Codebook.LIMIT / 3;
+            assertEquals(Strategy.CACHED,
+                         M.convert(got, split, Strategy.CACHED));
+            int[] rest = Arrays.copyOfRange(got, split, got.length);
+            assertEquals(Strategy.CACHED,
+                         M.convert(rest, rest.length, Strategy.CACHED));
+            System.arraycopy(rest, 0, got, split, rest.length);
+            assertArrayEquals(want, got);
+            assertArrayEquals(expected.positions(), M.positions());
+        }
+        M.setPositions(M.positions());
+        assertEquals(Strategy.FUSED, M.convert(msg.clone(), 10,
+                                               Strategy.CACHED));
+    }
+
+    @Test
+    public void testAutomaticChoice() {
+        int[] msg = message(LENGTH);
+        Machine expected = navalMachine();
+        int[] want = keyByKey(expected, msg);
+        Machine M = navalMachine();
+        for (int round = 0; round < 40; round += 1) {
+            M.setRotors("AXLE");
+            int[] got = msg.clone();
+            M.convert(got, got.length);
+            assertArrayEquals(want, got);
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     navalMachine().convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void testChoose() {
+        Strategy.Costs costs = Strategy.DEFAULTS;
+        assertEquals(Strategy.SCALAR,
+                     Strategy.choose(costs, 1, Engine.BYTE_LIMIT, 10, 1,
+                                     0, 0));
+        assertTrue(Strategy.choose(costs, 1 << 20, 26, 5, 0, 0, 0)
+                   != Strategy.SCALAR);
+        assertTrue(Strategy.choose(costs, 1 << 10, 26, 5, 0, 0, 0)
+                   != Strategy.CACHED);
+        assertTrue(Strategy.choose(costs, 1 << 10, 26, 5, 0, 0, 1)
+                   != Strategy.CACHED);
+    }
+
+    @Test
+    public void testNamed() {
+        assertNull(Strategy.named("auto"));
+        assertEquals(Strategy.PARALLEL, Strategy.named("parallel"));
+        assertEquals(Strategy.SCALAR, Strategy.named("scalar"));
+        try {
+            Strategy.named("quantum");
+            fail("unknown engine accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        Strategy.record(Strategy.FUSED, 5);
+        assertTrue(Strategy.report().startsWith("engines: scalar "));
+    }
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -39,6 +40,57 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The notches of the moving naval rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return all the naval rotors in the A setting, over UPPER. */
+    static ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> result = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (name.equals("B") || name.equals("C")) {
+                result.add(new Reflector(name, perm));
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                result.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else {
+                result.add(new FixedRotor(name, perm));
+            }
+        }
+        return result;
+    }
+
+    /** Return a 5-rotor, 3-pawl naval machine with ROTORS inserted,
+     *  set to SETTING, and with plugboard cycles PLUGBOARD. */
+    static Machine navalMachine(String[] rotors, String setting,
+                                String plugboard) {
+        Machine mach = new Machine(UPPER, 5, 3, navalRotors());
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(plugboard, UPPER));
+        return mach;
+    }
+
+    /** The rotors of the standard test machine. */
+    static final String[] NAVAL_ROTORS = {"B", "Beta", "III", "IV", "I"};
+
+    /** Return the standard test machine: NAVAL_ROTORS at AXLE with
+     *  plugboard (HQ) (EX) (IP) (TR) (BY). */
+    static Machine navalMachine() {
+        return navalMachine(NAVAL_ROTORS, "AXLE",
+                            "(HQ) (EX) (IP) (TR) (BY)");
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
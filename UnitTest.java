@@ -14,9 +14,21 @@ public class UnitTest {
             System.exit(textui.runClasses(PermutationTest.class,
                     MovingRotorTest.class));
         }
-        System.exit(textui.runClasses(PermutationTest.class,
+        System.exit(textui.runClasses(AlphabetTest.class,
+                PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                MachineProcessorTest.class,
+                ServerTest.class,
+                PipelineTest.class,
+                EngineTest.class,
+                ConfigWatcherTest.class, RotorCatalogTest.class,
+                BatchTest.class, AllocationTest.class,
+                ResultCacheTest.class, StrategyTest.class,
+                WorkloadTest.class, SessionTest.class,
+                KeystreamTest.class, LanesTest.class,
+                EnigmaTest.class, SearchTest.class, BlocksTest.class,
+                ScalingTest.class, EventsTest.class));
     }
 
 }
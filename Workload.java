@@ -0,0 +1,459 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Generates synthetic configurations and inputs shaped like production
+ * traffic, and measures Main's throughput on them.  Run with
+ *     java -cp .. enigma.Workload generate [OPTIONS] CONFIG INPUT
+ *     java -cp .. enigma.Workload run [--runs=N] [MAIN OPTIONS] CONFIG
+ *         INPUT [OUTPUT]
+ * The first writes a configuration file CONFIG and an input file INPUT
+ * (compressed if its name ends in Main.GZIP_SUFFIX) in the formats that
+ * Main.readConfig and Main.setUp parse.  Its OPTIONS, with defaults, are
+ *     --seed=1         seed of all random choices; the same seed and
+ *                      options give the same files
+ *     --alphabet=26    number of characters in the alphabet
+ *     --slots=5        number of rotor slots
+ *     --pawls=3        number of pawls
+ *     --rotors=12      number of rotors in the catalog
+ *     --size=1m        approximate size of INPUT in bytes, with an
+ *                      optional suffix k, m or g
+ *     --keys=100       number of settings lines, spread evenly
+ *     --plugs=10       pairs of characters swapped by each plugboard
+ *     --length=60      mean number of characters per message line
+ *     --lengths=exponential
+ *                      distribution of line lengths: fixed, uniform
+ *                      (1 to twice the mean) or exponential
+ * Alphabets beyond the 62 ASCII letters and digits continue with
+ * non-space characters from U+0100 on, and files are written in UTF-8,
+ * which Main must then be run to read (as with -Dfile.encoding=UTF-8).
+ * The second runs Main on CONFIG and INPUT N times (default 3), in this
+ * process and reading and writing UTF-8, and reports the throughput of
+ * each run.  Its MAIN OPTIONS, such as --engine=KIND, --indexed or
+ * --cache=SIZE, are passed to Main; the output goes to OUTPUT if given
+ * (compressed if its name ends in Main.GZIP_SUFFIX; --indexed needs
+ * one), and is otherwise discarded.  This is a measurement tool, not a
+ * test, and is not part of UnitTest.
+ *
+ * @author Amy Stanley
+ */
+public class Workload {
+
+    /** Options of generate. */
+    static final String OPTIONS =
+        "--seed=(\\d+) --alphabet=(\\d+) --slots=(\\d+) --pawls=(\\d+) "
+        + "--rotors=(\\d+) --size=(\\d+[kmg]?) --keys=(\\d+) "
+        + "--plugs=(\\d+) --length=(\\d+) "
+        + "--lengths=(fixed|uniform|exponential) --=(.*){2}";
+
+    /** Generate or run a workload as directed by ARGS (see above). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1) {
+                throw error("Usage: java enigma.Workload generate [OPTIONS] "
+                            + "CONFIG INPUT\n"
+                            + "   or: java enigma.Workload run [--runs=N] "
+                            + "[MAIN OPTIONS] CONFIG INPUT [OUTPUT]");
+            }
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            if (args[0].equals("generate")) {
+                Workload workload = new Workload(rest);
+                workload.generate(Paths.get(workload._files.get(0)),
+                                  Paths.get(workload._files.get(1)));
+            } else if (args[0].equals("run")) {
+                run(rest, System.out);
+            } else {
+                throw error("unknown command %s", args[0]);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * A workload shaped by OPTIONS (see above), followed by the names of
+     * the configuration and input files.
+     */
+    Workload(String... options) {
+        CommandArgs args = new CommandArgs(OPTIONS, options);
+        if (!args.ok() || args.get("--").size() != 2) {
+            throw error("Usage: java enigma.Workload generate [OPTIONS] "
+                        + "CONFIG INPUT");
+        }
+        _files = args.get("--");
+        _random = new Random(number(args, "--seed", 1));
+        _letters = letters((int) number(args, "--alphabet", 26));
+        _slots = (int) number(args, "--slots", 5);
+        _pawls = (int) number(args, "--pawls", 3);
+        _rotors = (int) number(args, "--rotors", 12);
+        _size = number(args, "--size", 1 << 20);
+        _keys = Math.max(1, number(args, "--keys", 100));
+        _plugs = (int) Math.min(number(args, "--plugs", 10),
+                                _letters.length / 2);
+        _length = (int) Math.max(1, number(args, "--length", 60));
+        _lengths = args.contains("--lengths") ? args.getFirst("--lengths")
+            : "exponential";
+        if (_letters.length < 2 || _pawls < 0 || _pawls >= _slots
+            || _slots < 2) {
+            throw error("impossible machine");
+        }
+        _reflectors = Math.max(1, _rotors / 10);
+        _fixed = Math.max(_slots - _pawls - 1, _rotors / 5);
+        if (_rotors < _reflectors + _fixed + _pawls) {
+            throw error("need at least %d rotors",
+                        _reflectors + _fixed + _pawls);
+        }
+    }
+
+    /** Return the value of option NAME in ARGS, with any suffix k, m or
+     *  g, or DEFLT if it is absent. */
+    private static long number(CommandArgs args, String name, long deflt) {
+        String value = args.getFirst(name);
+        if (value == null) {
+            return deflt;
+        }
+        int shift = 0;
+        switch (value.charAt(value.length() - 1)) {
+        case 'k':
+            shift = 10;
+            break;
+        case 'm':
+            shift = 20;
+            break;
+        case 'g':
+            shift = 30;
+            break;
+        default:
+            break;
+        }
+        if (shift > 0) {
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Long.parseLong(value) << shift;
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", name);
+        }
+    }
+
+    /** Return the code points of an alphabet of SIZE characters. */
+    static int[] letters(int size) {
+        int[] result = new int[size];
+        int i;
+        for (i = 0; i < size && i < ASCII_LETTERS.length(); i += 1) {
+            result[i] = ASCII_LETTERS.charAt(i);
+        }
+        for (int cp = FIRST_EXTRA; i < size; cp += 1) {
+            if (cp > Character.MAX_CODE_POINT) {
+                throw error("alphabet too large");
+            }
+            if (!Character.isWhitespace(cp) && !Character.isSpaceChar(cp)
+                && Character.getType(cp) != Character.SURROGATE) {
+                result[i] = cp;
+                i += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Write my configuration to CONFIG and my input to INPUT. */
+    void generate(Path config, Path input) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                 Files.newOutputStream(config), StandardCharsets.UTF_8))) {
+            writeConfig(out);
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                 Main.openOutput(input), StandardCharsets.UTF_8),
+                 BUFFER_SIZE)) {
+            writeInput(out);
+        }
+    }
+
+    /**
+     * Write my configuration to OUT: the alphabet, the numbers of slots
+     * and pawls, and then the reflectors (named R1, R2, ...), fixed
+     * rotors (F1, ...) and moving rotors (M1, ...) of the catalog.
+     */
+    void writeConfig(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int cp : _letters) {
+            line.appendCodePoint(cp);
+        }
+        out.write(line.append('\n').toString());
+        out.write(String.format("%d %d%n", _slots, _pawls));
+        for (int k = 0; k < _rotors; k += 1) {
+            line.setLength(0);
+            int[] order = shuffle(_letters.length);
+            if (k < _reflectors) {
+                line.append('R').append(k + 1).append(" R");
+                for (int i = 0; i + 1 < order.length; i += 2) {
+                    line.append(" (").appendCodePoint(_letters[order[i]])
+                        .appendCodePoint(_letters[order[i + 1]]).append(')');
+                }
+            } else {
+                if (k < _reflectors + _fixed) {
+                    line.append('F').append(k - _reflectors + 1).append(" N");
+                } else {
+                    line.append('M').append(k - _reflectors - _fixed + 1)
+                        .append(" M");
+                    int notches = 1 + _random.nextInt(2);
+                    for (int i = 0; i < notches; i += 1) {
+                        line.appendCodePoint(_letters[order[i]]);
+                    }
+                }
+                appendCycles(line, shuffle(_letters.length));
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+
+    /** Append the permutation taking I to ORDER[I] to LINE in cycle
+     *  notation, omitting characters that map to themselves. */
+    private void appendCycles(StringBuilder line, int[] order) {
+        boolean[] done = new boolean[order.length];
+        for (int start = 0; start < order.length; start += 1) {
+            if (done[start] || order[start] == start) {
+                continue;
+            }
+            line.append(" (");
+            for (int i = start; !done[i]; i = order[i]) {
+                done[i] = true;
+                line.appendCodePoint(_letters[i]);
+            }
+            line.append(')');
+        }
+    }
+
+    /**
+     * Write my input to OUT: about _size bytes of message lines, with a
+     * settings line at the start and after each _size / _keys bytes.
+     */
+    void writeInput(Writer out) throws IOException {
+        long bytes = 0;
+        long perKey = Math.max(1, _size / _keys);
+        long nextKey = 0;
+        StringBuilder line = new StringBuilder();
+        while (bytes < _size) {
+            line.setLength(0);
+            if (bytes >= nextKey) {
+                settingsLine(line);
+                nextKey += perKey;
+            } else {
+                messageLine(line, lineLength());
+            }
+            line.append('\n');
+            out.write(line.toString());
+            bytes += utf8Length(line);
+        }
+    }
+
+    /** Append a random settings line to LINE. */
+    private void settingsLine(StringBuilder line) {
+        line.append('*');
+        line.append(" R").append(1 + _random.nextInt(_reflectors));
+        int movingFirst = _slots - _pawls;
+        int[] fixed = shuffle(_fixed);
+        for (int k = 1; k < movingFirst; k += 1) {
+            line.append(" F").append(fixed[k - 1] + 1);
+        }
+        int[] moving = shuffle(_rotors - _reflectors - _fixed);
+        for (int k = movingFirst; k < _slots; k += 1) {
+            line.append(" M").append(moving[k - movingFirst] + 1);
+        }
+        line.append(' ');
+        for (int k = 1; k < _slots; k += 1) {
+            line.appendCodePoint(_letters[_random.nextInt(_letters.length)]);
+        }
+        int[] order = shuffle(_letters.length);
+        for (int i = 0; i < _plugs; i += 1) {
+            line.append(" (").appendCodePoint(_letters[order[2 * i]])
+                .appendCodePoint(_letters[order[2 * i + 1]]).append(')');
+        }
+    }
+
+    /** Append a message line of LENGTH random characters to LINE, in
+     *  words of one to eight characters. */
+    private void messageLine(StringBuilder line, int length) {
+        int word = 0;
+        for (int i = 0; i < length; i += 1) {
+            if (word == 0) {
+                if (i > 0) {
+                    line.append(' ');
+                }
+                word = 1 + _random.nextInt(WORD);
+            }
+            line.appendCodePoint(_letters[_random.nextInt(_letters.length)]);
+            word -= 1;
+        }
+    }
+
+    /** Return the length of a message line, drawn from my distribution. */
+    private int lineLength() {
+        switch (_lengths) {
+        case "fixed":
+            return _length;
+        case "uniform":
+            return 1 + _random.nextInt(2 * _length - 1);
+        default:
+            double u = 1.0 - _random.nextDouble();
+            return 1 + (int) Math.min(Integer.MAX_VALUE / 2,
+                                      -Math.log(u) * (_length - 1));
+        }
+    }
+
+    /** Return the numbers 0 .. N-1 in a random order. */
+    private int[] shuffle(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = _random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Return the number of bytes in the UTF-8 encoding of TEXT. */
+    private static long utf8Length(CharSequence text) {
+        long result = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                result += 1;
+            } else if (c < 0x800) {
+                result += 2;
+            } else if (Character.isSurrogate(c)) {
+                result += 2;
+            } else {
+                result += 3;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Run Main on ARGS, which are as for the run command (see above),
+     * printing the throughput of each run on REPORT.
+     */
+    static void run(String[] args, PrintStream report) throws IOException {
+        int runs = RUNS;
+        List<String> options = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--runs=")) {
+                try {
+                    runs = Integer.parseInt(arg.substring(7));
+                } catch (NumberFormatException excp) {
+                    throw error("bad number of runs: %s", arg);
+                }
+            } else {
+                options.add(arg);
+                if (!arg.startsWith("--")) {
+                    files.add(arg);
+                }
+            }
+        }
+        if (files.size() < 2 || files.size() > 3) {
+            throw error("Usage: java enigma.Workload run [--runs=N] "
+                        + "[MAIN OPTIONS] CONFIG INPUT [OUTPUT]");
+        }
+        String[] mainArgs = options.toArray(new String[0]);
+        long inputBytes = Files.size(Paths.get(files.get(1)));
+        for (int run = 1; run <= runs; run += 1) {
+            CountingStream sink = new CountingStream();
+            PrintStream stdout = System.out;
+            long start = System.nanoTime();
+            try {
+                System.setOut(new PrintStream(sink));
+                Main.run(StandardCharsets.UTF_8, mainArgs);
+            } finally {
+                System.out.flush();
+                System.setOut(stdout);
+            }
+            long end = System.nanoTime();
+            long outputBytes = files.size() == 3
+                ? Files.size(Paths.get(files.get(2))) : sink._bytes;
+            double seconds = (end - start) / 1e9;
+            report.printf("run %d: %d bytes out in %.2f s; %.1f MB/s in, "
+                          + "%.1f MB/s out%n",
+                          run, outputBytes, seconds,
+                          inputBytes / seconds / (1 << 20),
+                          outputBytes / seconds / (1 << 20));
+        }
+    }
+
+    /** An OutputStream discarding its output, counting bytes. */
+    private static final class CountingStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            _bytes += 1;
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) {
+            _bytes += len;
+        }
+
+        /** Bytes written. */
+        private long _bytes;
+    }
+
+    /** Default number of runs. */
+    private static final int RUNS = 3;
+
+    /** Size of the input file's buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Longest word of a message line. */
+    private static final int WORD = 8;
+
+    /** The first characters of an alphabet. */
+    private static final String ASCII_LETTERS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    /** Code point from which alphabets continue after ASCII_LETTERS. */
+    private static final int FIRST_EXTRA = 0x100;
+
+    /** Names of the configuration and input files. */
+    private final List<String> _files;
+    /** Source of all random choices. */
+    private final Random _random;
+    /** Code points of the alphabet. */
+    private final int[] _letters;
+    /** Numbers of rotor slots and pawls. */
+    private final int _slots, _pawls;
+    /** Number of rotors in the catalog, and how many are reflectors and
+     *  fixed rotors; the rest move. */
+    private final int _rotors, _reflectors, _fixed;
+    /** Approximate input size in bytes. */
+    private final long _size;
+    /** Number of settings lines. */
+    private final long _keys;
+    /** Pairs of characters swapped by each plugboard. */
+    private final int _plugs;
+    /** Mean message line length. */
+    private final int _length;
+    /** Distribution of message line lengths. */
+    private final String _lengths;
+}
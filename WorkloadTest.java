@@ -0,0 +1,133 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the Workload generator.
+ *
+ * @author Amy Stanley
+ */
+public class WorkloadTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the configuration and input of the workload shaped by
+     *  OPTIONS. */
+    private static String[] generate(String... options) throws IOException {
+        String[] args = new String[options.length + 2];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = "config";
+        args[options.length + 1] = "input";
+        Workload workload = new Workload(args);
+        StringWriter config = new StringWriter(), input = new StringWriter();
+        workload.writeConfig(config);
+        workload.writeInput(input);
+        return new String[] { config.toString(), input.toString() };
+    }
+
+    /** Return the number of lines of TEXT that start with PREFIX, or do
+     *  not iff NOT. */
+    private static int lines(String text, String prefix, boolean not) {
+        int count = 0;
+        for (String line : text.split("\n")) {
+            if (line.startsWith(prefix) != not) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Assert that Main processes the workload shaped by OPTIONS, giving
+     *  one line of output per message line. */
+    private static void checkProcessed(String... options) throws IOException {
+        String[] files = generate(options);
+        MachineSpec spec = Main.readConfig(files[0]);
+        StringWriter output = new StringWriter();
+        new Pipeline(() -> spec, new StringReader(files[1]), output)
+            .runSerially();
+        assertEquals(lines(files[1], "*", true),
+                     lines(output.toString(), "", false));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDeterministic() throws IOException {
+        String[] first = generate("--seed=7", "--size=20k");
+        assertArrayEquals(first, generate("--seed=7", "--size=20k"));
+        assertFalse(first[1].equals(generate("--seed=8", "--size=20k")[1]));
+    }
+
+    @Test
+    public void testShape() throws IOException {
+        String[] files = generate("--size=50k", "--keys=25", "--rotors=30",
+                                  "--plugs=4", "--lengths=fixed",
+                                  "--length=40");
+        assertEquals(25, lines(files[1], "*", false));
+        assertEquals(32, files[0].split("\n").length);
+        for (String line : files[1].split("\n")) {
+            if (line.startsWith("*")) {
+                assertEquals(4, line.split("\\(").length - 1);
+            } else {
+                assertEquals(40, line.replace(" ", "").length());
+            }
+        }
+        int size = files[1].length();
+        assertTrue("size " + size, size >= 50 << 10 && size < 51 << 10);
+    }
+
+    @Test
+    public void testProcessed() throws IOException {
+        checkProcessed("--size=30k");
+        checkProcessed("--size=30k", "--alphabet=300", "--slots=7",
+                       "--pawls=4", "--lengths=uniform");
+        checkProcessed("--size=10k", "--alphabet=5", "--slots=3",
+                       "--pawls=1", "--rotors=4");
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        Path dir = Files.createTempDirectory("workload");
+        String config = dir.resolve("test.conf").toString();
+        String input = dir.resolve("test.in").toString();
+        String output = dir.resolve("test.out").toString();
+        Workload.main("generate", "--size=20k", "--alphabet=100", config,
+                      input);
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        Workload.run(new String[] {"--runs=2", "--engine=scalar", config,
+                                   input}, new PrintStream(report));
+        String[] runs = report.toString().split("\n");
+        assertEquals(2, runs.length);
+        assertTrue(runs[1], runs[1].startsWith("run 2: "));
+        Workload.run(new String[] {"--runs=1", config, input, output},
+                     new PrintStream(report));
+        String in = new String(Files.readAllBytes(dir.resolve("test.in")),
+                               StandardCharsets.UTF_8);
+        String out = new String(Files.readAllBytes(dir.resolve("test.out")),
+                                StandardCharsets.UTF_8);
+        assertEquals(lines(in, "*", true), lines(out, "", false));
+        for (String name : new String[] {config, input, output}) {
+            Files.delete(Path.of(name));
+        }
+        Files.delete(dir);
+    }
+}